@@ -1,8 +1,18 @@
 package clefdemo.simplehash;
 
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -12,8 +22,11 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import clefdemo.simplehash.db.Database;
 import clefdemo.simplehash.humdrum.KernSpine;
+import clefdemo.simplehash.humdrum.SpineView;
 
 /**
  * The main class of the Simplehash MIR algorithm server application.
@@ -25,6 +38,26 @@ import clefdemo.simplehash.humdrum.KernSpine;
 @RestController
 public class Application {
 	
+	private final ObjectMapper mapper = new ObjectMapper();
+	
+	/**
+	 * The coordinator to which queries are passed when PEERS is set, or null if this node answers them itself.
+	 */
+	private final Coordinator coordinator = Settings.peers().isEmpty() ? null : new Coordinator( Settings.peers(), Settings.peerTimeout() );
+	
+	/**
+	 * The index shared by every query, filled by {@link SimplehashInitializer} on startup.
+	 */
+	private final IndexContext index;
+	
+	/**
+	 * @since 1.1.0
+	 * @param index the index shared by every query
+	 */
+	public Application( IndexContext index ) {
+		this.index = index;
+	}
+	
 	public static void main(String[] args) {
 		SpringApplication.run( Application.class, args );
 	}
@@ -35,10 +68,143 @@ public class Application {
      *  
      * @since 1.0.0 
      * @param params the parameters present in the request URL.
-     * @return an object serializing to the JSON format specified for the Clef system.
+     * @return an object serializing to the JSON format specified for the Clef system, or to its columnar layout.
      */
     @RequestMapping( value = "/simplehash", method = RequestMethod.POST, consumes = MediaType.APPLICATION_XML_VALUE )
-    public Response simplehash( @RequestParam Map<String, String> params, @RequestBody String musicxml ) {
+    public Object simplehash( @RequestParam Map<String, String> params, @RequestBody String musicxml ) {
+    	Response response = this.search( params, musicxml, null );
+    	
+    	// With layout=columnar, lay out the results by column rather than by row.
+    	if ( "columnar".equals( params.get( "layout" ) ) ) {
+    		return ResponseEncoder.toTree( response, true );
+    	}
+    	return response;
+    }
+    
+    
+    /**
+     * The variant of the primary REST endpoint for clients that accept CBOR, a binary encoding of the same fields.
+     * 
+     * Selected by content negotiation, i.e. by a request header of {@code Accept: application/cbor}. Like the primary 
+     * endpoint, it lays out the results by column with layout=columnar.
+     * 
+     * @since 1.1.0
+     * @param params the parameters present in the request URL.
+     * @param musicxml the query, in MusicXML format
+     * @return the response, encoded as CBOR
+     */
+    @RequestMapping( value = "/simplehash", method = RequestMethod.POST, consumes = MediaType.APPLICATION_XML_VALUE, produces = ResponseEncoder.APPLICATION_CBOR_VALUE )
+    public byte[] simplehashCbor( @RequestParam Map<String, String> params, @RequestBody String musicxml ) {
+    	Response response = this.search( params, musicxml, null );
+    	return ResponseEncoder.toCbor( ResponseEncoder.toTree( response, "columnar".equals( params.get( "layout" ) ) ) );
+    }
+    
+    
+    /**
+     * The streaming variant of the primary REST endpoint, selected by the parameter stream=true.
+     * 
+     * The response is written with chunked transfer encoding as it is produced: the opening of the results array 
+     * before the query is even converted, then each result as soon as ranking makes it, then a trailer section of 
+     * the fields that are only known once every result has been found, i.e. totalResults, itemsSearched, status, 
+     * errors and warnings. A client can therefore start reading results before the last one is made, and the 
+     * server holds no more than a page of them. Without a limit parameter, only the first STREAM_LIMIT results are 
+     * sent. The body is the same JSON object as that of the primary endpoint, with its fields in that order.
+     * 
+     * @since 1.1.0
+     * @param params the parameters present in the request URL.
+     * @param musicxml the query, in MusicXML format
+     * @return a body that writes the response to the output stream
+     */
+    @RequestMapping( value = "/simplehash", method = RequestMethod.POST, consumes = MediaType.APPLICATION_XML_VALUE, params = "stream=true", produces = MediaType.APPLICATION_JSON_VALUE )
+    public StreamingResponseBody simplehashStream( @RequestParam Map<String, String> params, @RequestBody String musicxml ) {
+    	Map<String, String> paged = new HashMap<String, String>( params );
+    	paged.putIfAbsent( "limit", String.valueOf( Settings.streamLimit() ) );
+    	
+    	return out -> {
+    		JsonGenerator gen = this.mapper.getFactory().createGenerator( out );
+    		gen.writeStartObject();
+    		gen.writeArrayFieldStart( "results" );
+    		gen.flush();
+    		
+    		// Each result is written as soon as it is made; in coordinator mode, the merged results are returned instead.
+    		Response response = this.search( paged, musicxml, r -> this.writeResult( gen, r ) );
+    		for ( Result r : response.getResults() ) {
+    			this.writeResult( gen, r );
+    		}
+    		gen.writeEndArray();
+    		
+    		// The trailer section.
+    		gen.writeNumberField( "totalResults", response.getTotalResults() );
+    		gen.writeNumberField( "itemsSearched", response.getItemsSearched() );
+    		gen.writeStringField( "status", response.getStatus() );
+    		gen.writeObjectField( "errors", response.getErrors() );
+    		gen.writeObjectField( "warnings", response.getWarnings() );
+    		gen.writeEndObject();
+    		gen.close();
+    	};
+    }
+    
+    
+    /**
+     * Writes a result of a streamed response and flushes it to the client.
+     * 
+     * @since 1.1.0
+     * @param gen the generator writing the response
+     * @param r the result
+     * @throws UncheckedIOException thrown if the result could not be written, e.g. if the client has gone
+     */
+    private void writeResult( JsonGenerator gen, Result r ) {
+    	try {
+    		this.mapper.writeValue( gen, r );
+    		gen.flush();
+    	} catch ( IOException e ) {
+    		throw new UncheckedIOException( e );
+    	}
+    }
+    
+    
+    /**
+     * An admin endpoint listing the n-grams with the most postings, i.e. the hashes that make lookups slowest, and the 
+     * histogram of the lengths of the posting lists of each view and n-gram size, both as computed on ingestion.
+     * 
+     * Each n-gram has the fields hash, gramSize, view, gram, files, postings and stopGram; stop-grams, with more than 
+     * STOP_GRAM_POSTINGS postings, are answered from precomputed counts rather than from their postings.
+     * 
+     * @since 1.1.0
+     * @param limit the maximum number of n-grams to list, 20 by default
+     * @return an object with the fields "hottest" and "histogram"
+     */
+    @RequestMapping( value = "/simplehash/admin/hot", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE )
+    public Map<String, Object> hottest( @RequestParam( value = "limit", defaultValue = "20" ) int limit ) {
+    	Map<String, Object> body = new LinkedHashMap<String, Object>();
+    	try {
+    		Database db = new Database();
+    		body.put( "hottest", db.selectHotGrams( Math.max( 0, limit ) ) );
+    		body.put( "histogram", db.selectHistogram() );
+    	} catch ( Exception e ) {
+    		body.put( "errors", Collections.singletonList( e.getMessage() ) );
+    	}
+    	return body;
+    }
+    
+    
+    /**
+     * Converts a MusicXML query and searches for it, as directed by the parameters of a request.
+     * 
+     * In coordinator mode, the query is passed as is to the peers, and their responses are merged.
+     * 
+     * @since 1.1.0
+     * @param params the parameters present in the request URL.
+     * @param musicxml the query, in MusicXML format
+     * @param sink the action to which each result is passed as soon as it is made, rather than adding it to the 
+     * response; or null
+     * @return the response, with status "error" if the parameters were invalid or the search failed
+     */
+    private Response search( Map<String, String> params, String musicxml, Consumer<Result> sink ) {
+    	
+    	if ( this.coordinator != null ) {
+    		return this.coordinator.search( params, musicxml );
+    	}
     	
     	// Create a new response.
     	Response response = new Response();
@@ -54,8 +220,33 @@ public class Application {
     		staffIdx = Integer.parseInt( params.get( "staffIdx" ) );
     	}
     	
+    	// Get the optional view parameter from the URL, e.g. view=interval for a transposition-invariant search, or 
+    	// view=pitch or view=rhythm to match only the notes or only the rhythm of the query.
+    	SpineView view = SpineView.KERN;
+    	if ( params.get( "view" ) != null ) {
+    		view = SpineView.fromName( params.get( "view" ) );
+    		if ( view == null ) {
+    			response.setStatus( "error" );
+    			response.addError( "Error: unknown view " + params.get( "view" ) + "." );
+    			return response;
+    		}
+    	}
+    	
+    	// Get the optional numeric parameters from the URL, with an error for each that is not a number.
+    	int offset = intParam( params, "offset", 0, response );
+    	int limit = intParam( params, "limit", 0, response );
+    	int candidates = intParam( params, "candidates", Settings.contourCandidates(), response );
+    	int k = intParam( params, "k", Settings.approximateTopK(), response );
+    	Integer dateFrom = intParam( params, "dateFrom", null, response );
+    	Integer dateTo = intParam( params, "dateTo", null, response );
+    	if ( ! response.getErrors().isEmpty() ) {
+    		response.setStatus( "error" );
+    		return response;
+    	}
+    	
     	// The main algorithm class.
-    	Simplehash sh = new Simplehash();
+    	Simplehash sh = new Simplehash( this.index );
+    	sh.setSink( sink );
     	
     	// Write the MusicXML to a temp file so that it can be converted to Humdrum.
     	sh.writeQueryToTempFile( musicxml );
@@ -63,16 +254,43 @@ public class Application {
     	// Convert the MusicXML file to Humdrum using the specified staff index.
     	KernSpine ks = sh.xml2hum( staffIdx );
     	
-    	// Perform the hash-based lookup.
-    	List<Result> results = sh.lookup( ks );
+    	// Return only a page of the results if the optional limit and offset parameters are present.
+    	sh.setPage( offset, limit );
+    	
+    	// Search only the datasets listed in the optional datasets parameter, e.g. datasets=Bach,Chopin.
+    	if ( params.get( "datasets" ) != null ) {
+    		List<String> datasets = new ArrayList<String>();
+    		for ( String name : params.get( "datasets" ).split( "," ) ) {
+    			if ( ! name.trim().isEmpty() ) {
+    				datasets.add( name.trim() );
+    			}
+    		}
+    		sh.setScope( datasets );
+    	}
+    	
+    	// Search only the files whose metadata match the optional composer, catalog, dateFrom and dateTo parameters, 
+    	// e.g. composer=Bach&catalog=BWV, or dateFrom=1700&dateTo=1750 for composers living at some point in between.
+    	sh.setMetadataFilter( params.get( "composer" ), params.get( "catalog" ), dateFrom, dateTo );
+    	
+    	// Perform the hash-based lookup. With mode=approximate, rank the k files sharing the most sub-grams with the query. 
+    	// With mode=contour, verify the exact query only in the files whose contour is most similar to it.
+    	List<Result> results;
+    	if ( "contour".equals( params.get( "mode" ) ) ) {
+    		results = sh.lookupContour( ks, candidates );
+    	} else if ( "approximate".equals( params.get( "mode" ) ) ) {
+    		results = sh.lookupApproximate( ks, view, k );
+    	} else {
+    		results = sh.lookup( ks, view );
+    	}
     	
     	// Add the errors, if any, to the response; set the reponse status to error.
     	if ( sh.hasErrors() ) {
     		response.setErrors( sh.getErrors() );
     		response.setStatus( "error" );
     	} else {
-    		// Add the results, if any, to the response.
+    		// Add the results, if any, to the response, with the number of files matched across all pages.
     		response.setResults( results );
+    		response.setTotalResults( sh.getTotalResults() );
     	}
     	
     	// Include the number of files searched in the response (default is 0).
@@ -82,6 +300,30 @@ public class Application {
     }
     
     
+    /**
+     * Gets an optional integer parameter of a request, adding an error to the response if it is not an integer.
+     * 
+     * @since 1.1.0
+     * @param params the parameters present in the request URL.
+     * @param name the name of the parameter
+     * @param def the value if the parameter is absent or malformed
+     * @param response the response to which to add an error if the parameter is malformed
+     * @return the value of the parameter, or {@code def}
+     */
+    private static Integer intParam( Map<String, String> params, String name, Integer def, Response response ) {
+    	String value = params.get( name );
+    	if ( value == null ) {
+    		return def;
+    	}
+    	try {
+    		return Integer.valueOf( value.trim() );
+    	} catch ( NumberFormatException e ) {
+    		response.addError( "Error: invalid " + name + " " + value + "; an integer is required." );
+    		return def;
+    	}
+    }
+    
+    
    
     
 }
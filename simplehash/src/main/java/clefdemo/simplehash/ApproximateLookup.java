@@ -0,0 +1,201 @@
+package clefdemo.simplehash;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import clefdemo.simplehash.db.Posting;
+import clefdemo.simplehash.humdrum.Filters;
+import clefdemo.simplehash.humdrum.KernHasher;
+import clefdemo.simplehash.humdrum.KernSpine;
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.humdrum.TokenDictionary;
+import clefdemo.simplehash.index.LongIntCounter;
+import clefdemo.simplehash.index.RoaringBitmap;
+import clefdemo.simplehash.index.TopK;
+
+/**
+ * An approximate lookup, which ranks files by the number of the query's sub-grams they contain at their best 
+ * alignment. See {@link Simplehash#lookupApproximate(KernSpine, SpineView, int)}.
+ * 
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+class ApproximateLookup {
+	
+	private final Simplehash search;
+	private final IndexContext index;
+	
+	/**
+	 * @since 1.1.0
+	 * @param search the instance whose query this answers, with its scope, metadata filter, page and sink
+	 */
+	ApproximateLookup( Simplehash search ) {
+		this.search = search;
+		this.index = search.getIndex();
+	}
+	
+	
+	/**
+	 * Performs an approximate lookup, as the first stage of another lookup or for its own results.
+	 * 
+	 * @since 1.1.0
+	 * @param ks a KernSpine containing the symbolic music data to be hashed and searched for.
+	 * @param view the view of the tokens to search
+	 * @param k the maximum number of results
+	 * @param paged true to return only the requested page of the results
+	 * @return a list of at most {@code k} Result objects, best first, empty if no sub-gram was found
+	 */
+	List<Result> lookup( KernSpine ks, SpineView view, int k, boolean paged ) {
+		
+		List<Result> results = new LinkedList<Result>();
+		
+		if ( ! this.search.isSearchable( ks, view ) ) {
+			return results;
+		}
+		
+		KernHasher kh = new KernHasher();
+		List<String> queryTokens = Filters.trim( ks.applyFilters() );
+		
+		// Files seen in postings, numbered in order of appearance.
+		Map<String, Integer> fileIds = new HashMap<String, Integer>();
+		List<String[]> files = new ArrayList<String[]>();
+		
+		// Spines seen in postings, numbered in order of appearance, with their file number, spine index and part name.
+		Map<String, Integer> spineIds = new HashMap<String, Integer>();
+		List<Integer> spineFiles = new ArrayList<Integer>();
+		List<Integer> spineIndexes = new ArrayList<Integer>();
+		List<String> partnames = new ArrayList<String>();
+		
+		// Votes per alignment, keyed by spine number and start offset.
+		LongIntCounter votes = new LongIntCounter( 1024 );
+		LongIntCounter stopVotes = new LongIntCounter( 16 );
+		int subgrams = 0;
+		
+		try {
+			int[] values = this.search.encodeQuery( queryTokens, view );
+			int[] tokenOffsets = Simplehash.queryOffsets( queryTokens, view );
+			int span = Math.max( 1, view.span( Settings.querySizeMin() ) );
+			
+			System.out.println( "Submitting approximate " + view.getName() + " query: " + kh.printTokensAndHash( queryTokens, kh.hash( values, 0, values.length ) ) );
+			
+			List<Integer> found = new ArrayList<Integer>();
+			List<Integer> stops = new ArrayList<Integer>();
+			for ( int q = 0; q + span <= values.length; q++ ) {
+				subgrams++;
+				
+				// A sub-gram containing a token that does not occur in the source data cannot be found.
+				boolean known = true;
+				for ( int i = q; i < q + span; i++ ) {
+					known &= ! ( view == SpineView.KERN && values[i] == TokenDictionary.UNKNOWN );
+				}
+				int hash = kh.hash( values, q, q + span );
+				if ( known && this.index.mightContain( hash, span + view.overlap(), view ) ) {
+					( this.index.isStopGram( hash, span + view.overlap(), view ) ? stops : found ).add( q );
+				}
+			}
+			
+			// Every sub-gram is needed, so look them all up at once.
+			List<List<Posting>> postings = this.search.selectPostings( this.search.scopedIndexStore(), values, found, span, view );
+			for ( int f = 0; f < found.size(); f++ ) {
+				int q = found.get( f );
+				for ( Posting p : postings.get( f ) ) {
+					String fileKey = p.getDatasetName() + "\t" + p.getFilename();
+					Integer file = fileIds.get( fileKey );
+					if ( file == null ) {
+						file = files.size();
+						fileIds.put( fileKey, file );
+						files.add( new String[] { p.getDatasetName(), p.getFilename() } );
+					}
+					Integer spine = spineIds.get( fileKey + "\t" + p.getSpineIndex() );
+					if ( spine == null ) {
+						spine = spineFiles.size();
+						spineIds.put( fileKey + "\t" + p.getSpineIndex(), spine );
+						spineFiles.add( file );
+						spineIndexes.add( p.getSpineIndex() );
+						partnames.add( p.getPartname() );
+					}
+					votes.add( ( (long) spine << 32 ) | ( ( p.getOffset() - tokenOffsets[q] ) & 0xFFFFFFFFL ), 1 );
+				}
+			}
+			
+			// The occurrences of stop-grams are not stored, so each votes once for every file containing it.
+			if ( ! stops.isEmpty() ) {
+				int[] hashes = new int[ stops.size() ];
+				for ( int i = 0; i < hashes.length; i++ ) {
+					hashes[i] = kh.hash( values, stops.get( i ), stops.get( i ) + span );
+				}
+				Map<Integer, String> keys = this.index.fileKeys();
+				for ( RoaringBitmap bitmap : this.index.corpusStore().selectFileBitmaps( hashes, span + view.overlap(), view ) ) {
+					for ( int id : bitmap.toArray() ) {
+						String fileKey = keys.get( id );
+						if ( fileKey == null || ! this.search.inScope( fileKey, id ) ) {
+							continue;
+						}
+						Integer file = fileIds.get( fileKey );
+						if ( file == null ) {
+							file = files.size();
+							fileIds.put( fileKey, file );
+							files.add( fileKey.split( "\t", -1 ) );
+						}
+						stopVotes.add( file, 1 );
+					}
+				}
+			}
+		} catch ( Exception e ) {
+			this.search.getErrors().add( e.getMessage() );
+			return results;
+		}
+		
+		// Find the best alignment of each file, then add the votes of the stop-grams it contains.
+		int[] bestVotes = new int[ files.size() ];
+		long[] bestAlignment = new long[ files.size() ];
+		for ( int slot = 0; slot < votes.capacity(); slot++ ) {
+			if ( votes.isOccupied( slot ) ) {
+				long alignment = votes.keyAt( slot );
+				int file = spineFiles.get( (int) ( alignment >>> 32 ) );
+				if ( votes.countAt( slot ) > bestVotes[file] ) {
+					bestVotes[file] = votes.countAt( slot );
+					bestAlignment[file] = alignment;
+				}
+			}
+		}
+		boolean[] aligned = new boolean[ files.size() ];
+		for ( int file = 0; file < files.size(); file++ ) {
+			aligned[file] = bestVotes[file] > 0;
+			bestVotes[file] += stopVotes.get( file );
+		}
+		
+		// Keep the k files with the most votes, or as many of them as the page needs.
+		TopK<Integer> top = new TopK<Integer>( paged ? Math.min( k, this.search.pageEnd() ) : k );
+		for ( int file = 0; file < files.size(); file++ ) {
+			top.offer( file, bestVotes[file] );
+		}
+		
+		if ( paged ) {
+			this.search.setTotalResults( Math.min( k, files.size() ) );
+		}
+		int resultid = paged ? this.search.getOffset() + 1 : 1;
+		for ( int file : paged ? this.search.page( top ) : top.toList() ) {
+			long alignment = bestAlignment[file];
+			Result r = new Result( resultid, files.get( file )[0], files.get( file )[1] );
+			r.setProperty( "votes", bestVotes[file] );
+			r.setProperty( "score", subgrams == 0 ? 0.0 : (double) bestVotes[file] / subgrams );
+			if ( aligned[file] ) {
+				// A later sub-gram found near the start of a part aligns the query before it; the match starts with the part.
+				int spine = (int) ( alignment >>> 32 );
+				r.addPosition( partnames.get( spine ), spineIndexes.get( spine ), Math.max( 0, (int) alignment ), 1 );
+			}
+			if ( paged ) {
+				this.search.emit( r, results );
+			} else {
+				results.add( r );
+			}
+			resultid++;
+		}
+		
+		return results;
+	}
+}
@@ -0,0 +1,264 @@
+package clefdemo.simplehash;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import clefdemo.simplehash.db.IndexStore;
+import clefdemo.simplehash.db.Posting;
+import clefdemo.simplehash.db.SpineRecord;
+import clefdemo.simplehash.humdrum.KernHasher;
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.humdrum.TokenDictionary;
+import clefdemo.simplehash.index.RoaringBitmap;
+import clefdemo.simplehash.index.TopK;
+
+/**
+ * An exact lookup of a query longer than the smallest n-grams stored, which chains the postings of the sub-grams 
+ * covering it.
+ * 
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+class ChainedLookup {
+	
+	private final Simplehash search;
+	private final IndexContext index;
+	
+	/**
+	 * @since 1.1.0
+	 * @param search the instance whose query this answers, with its scope, metadata filter, page and sink
+	 */
+	ChainedLookup( Simplehash search ) {
+		this.search = search;
+		this.index = search.getIndex();
+	}
+	
+	
+	/**
+	 * Performs a lookup by intersecting the postings of consecutive sub-grams of the query.
+	 * 
+	 * The query is covered by sub-grams of {@code span} elements starting at query offsets 0, span, 2 * span, ... 
+	 * plus a final sub-gram ending on the last element. A match starts at offset s if every sub-gram taken at query 
+	 * offset q occurs in the same part at offset s + q. Postings hold token offsets, which are the offsets of the 
+	 * elements only in the KERN view; in the other views, which skip rests, the postings only find the parts 
+	 * containing every sub-gram, in which the whole query is then verified.
+	 * 
+	 * Before any posting list is read, the bitmaps of the files containing each sub-gram are intersected, so that a 
+	 * query one of whose sub-grams occurs nowhere near the others is answered without reading any postings. The 
+	 * postings of the rarest sub-grams are read first, and only within the files containing every sub-gram.
+	 * 
+	 * @since 1.1.0
+	 * @param queryTokens the filtered query tokens, for logging
+	 * @param queryValues the elements of the view of the filtered query tokens; must number at least {@code span}
+	 * @param span the number of elements of the smallest n-grams stored, which are stored with their offsets
+	 * @param view the view of the tokens to search
+	 * @param bitmaps the file bitmaps of the covering sub-grams, in order, if already read by the query planner; or 
+	 * null to read them
+	 * @return a list of Result objects, ordered by number of matches, empty if nothing matched
+	 */
+	List<Result> lookup( List<String> queryTokens, int[] queryValues, int span, SpineView view, RoaringBitmap[] bitmaps ) {
+		
+		List<Result> results = new LinkedList<Result>();
+		KernHasher kh = new KernHasher();
+		
+		// Collect the query offsets of the covering sub-grams.
+		List<Integer> queryOffsets = Simplehash.coveringOffsets( queryValues.length, span );
+		
+		System.out.println( "Submitting chained " + view.getName() + " query of " + queryOffsets.size() + " sub-grams: " + kh.printTokensAndHash( queryTokens, kh.hash( queryValues, 0, queryValues.length ) ) );
+		
+		// Candidate match starts, keyed by dataset, file, spine and part; or, where offsets cannot be aligned, empty.
+		Map<String, Set<Integer>> candidates = null;
+		Set<Integer> stops = new HashSet<Integer>();
+		boolean aligned = view == SpineView.KERN;
+		
+		try {
+			IndexStore store = this.search.scopedIndexStore();
+			
+			// The suffix array finds postings directly; otherwise narrow the search with the file bitmaps first.
+			RoaringBitmap files = null;
+			if ( ! ( view == SpineView.KERN && Settings.indexEngine().equals( Settings.INDEX_ENGINE_SUFFIX ) ) ) {
+				int[] hashes = new int[ queryOffsets.size() ];
+				for ( int i = 0; i < hashes.length; i++ ) {
+					hashes[i] = kh.hash( queryValues, queryOffsets.get( i ), queryOffsets.get( i ) + span );
+					if ( ! this.index.mightContain( hashes[i], span + view.overlap(), view ) ) {
+						System.out.println( "Bloom filter: definite miss." );
+						return results;
+					}
+				}
+				if ( bitmaps == null ) {
+					bitmaps = this.index.corpusStore().selectFileBitmaps( hashes, span + view.overlap(), view );
+				}
+				
+				Map<Integer, Integer> cardinalities = new HashMap<Integer, Integer>();
+				for ( int i = 0; i < bitmaps.length; i++ ) {
+					files = files == null ? bitmaps[i] : RoaringBitmap.and( files, bitmaps[i] );
+					cardinalities.put( queryOffsets.get( i ), bitmaps[i].cardinality() );
+					if ( this.index.isStopGram( hashes[i], span + view.overlap(), view ) ) {
+						stops.add( queryOffsets.get( i ) );
+					}
+				}
+				
+				if ( this.search.getFileFilter() != null ) {
+					files = RoaringBitmap.and( files, this.search.getFileFilter() );
+				}
+				if ( files.isEmpty() ) {
+					System.out.println( "No file contains every sub-gram of the query." );
+					return results;
+				}
+				queryOffsets.sort( ( a, b ) -> cardinalities.get( a ) - cardinalities.get( b ) );
+			}
+			
+			for ( int q : queryOffsets ) {
+				if ( stops.contains( q ) ) {
+					continue;
+				}
+				Map<String, Set<Integer>> starts = new HashMap<String, Set<Integer>>();
+				for ( Posting p : this.search.selectPostings( store, queryValues, q, span, view ) ) {
+					String key = String.join( "\t", p.getDatasetName(), p.getFilename(), String.valueOf( p.getSpineIndex() ), String.valueOf( p.getPartname() ) );
+					if ( candidates != null && ! candidates.containsKey( key ) ) {
+						continue;
+					}
+					if ( candidates == null && files != null && ! files.contains( this.index.fileIds().getOrDefault( p.getDatasetName() + "\t" + p.getFilename(), -1 ) ) ) {
+						continue;
+					}
+					Set<Integer> partStarts = starts.computeIfAbsent( key, k -> new TreeSet<Integer>() );
+					if ( aligned ) {
+						partStarts.add( p.getOffset() - q );
+					}
+				}
+				
+				if ( candidates == null ) {
+					candidates = starts;
+				} else {
+					// Keep only the starts at which every sub-gram seen so far lines up.
+					Iterator<Map.Entry<String, Set<Integer>>> it = candidates.entrySet().iterator();
+					while ( it.hasNext() ) {
+						Map.Entry<String, Set<Integer>> entry = it.next();
+						Set<Integer> next = starts.get( entry.getKey() );
+						if ( next == null ) {
+							it.remove();
+							continue;
+						}
+						entry.getValue().retainAll( next );
+						if ( aligned && entry.getValue().isEmpty() ) {
+							it.remove();
+						}
+					}
+				}
+				
+				// No need to look up the remaining sub-grams once nothing lines up.
+				if ( candidates.isEmpty() ) {
+					break;
+				}
+			}
+			
+			// The occurrences of stop-grams are not stored, so check the whole query where the other sub-grams line 
+			// up, or, if every sub-gram is a stop-gram, anywhere in the files containing them all. Check it too 
+			// wherever the offsets of the sub-grams could not be aligned.
+			if ( ( ! stops.isEmpty() || ! aligned ) && ( candidates == null || ! candidates.isEmpty() ) ) {
+				candidates = this.verify( candidates, files, queryValues, view );
+			}
+		} catch ( Exception e ) {
+			this.search.getErrors().add( e.getMessage() );
+			return results;
+		}
+		
+		// Count the matches per file, summing over its parts.
+		Map<String, Integer> matchesPerFile = new LinkedHashMap<String, Integer>();
+		Map<String, List<Map.Entry<String, Set<Integer>>>> partsPerFile = new HashMap<String, List<Map.Entry<String, Set<Integer>>>>();
+		for ( Map.Entry<String, Set<Integer>> entry : candidates.entrySet() ) {
+			String[] key = entry.getKey().split( "\t", -1 );
+			matchesPerFile.merge( key[0] + "\t" + key[1], entry.getValue().size(), Integer::sum );
+			partsPerFile.computeIfAbsent( key[0] + "\t" + key[1], k -> new ArrayList<Map.Entry<String, Set<Integer>>>() ).add( entry );
+		}
+		
+		TopK<Map.Entry<String, Integer>> top = new TopK<Map.Entry<String, Integer>>( this.search.pageEnd() );
+		for ( Map.Entry<String, Integer> entry : matchesPerFile.entrySet() ) {
+			top.offer( entry, entry.getValue() );
+		}
+		this.search.setTotalResults( matchesPerFile.size() );
+		
+		// Report where the matches start, up to MAX_MATCH_POSITIONS per result.
+		int cap = Settings.maxMatchPositions();
+		int resultid = this.search.getOffset() + 1;
+		for ( Map.Entry<String, Integer> entry : this.search.page( top ) ) {
+			String[] file = entry.getKey().split( "\t", -1 );
+			Result r = new Result( resultid, file[0], file[1] );
+			r.setProperty( "matches", entry.getValue() );
+			for ( Map.Entry<String, Set<Integer>> part : partsPerFile.get( entry.getKey() ) ) {
+				String[] key = part.getKey().split( "\t", -1 );
+				for ( int start : part.getValue() ) {
+					r.addPosition( key[3].equals( "null" ) ? null : key[3], Integer.parseInt( key[2] ), start, cap );
+				}
+			}
+			this.search.emit( r, results );
+			resultid++;
+		}
+		
+		return results;
+	}
+	
+	
+	/**
+	 * Finds the starts at which the whole query occurs in the stored spines, as a chained lookup would have found 
+	 * them from the postings of its sub-grams, were they all stored and aligned.
+	 * 
+	 * @since 1.1.0
+	 * @param candidates the token offsets at which the other sub-grams line up, keyed by dataset, file, spine and 
+	 * part, or none to check every start of the part; or null to check every start in the files containing every 
+	 * sub-gram
+	 * @param files the file ids of the files containing every sub-gram
+	 * @param queryValues the elements of the view of the query
+	 * @param view the view of the tokens to search
+	 * @return the token offsets at which the query occurs, keyed as {@code candidates}
+	 * @throws Exception thrown if the spines or the token dictionary could not be loaded
+	 */
+	private Map<String, Set<Integer>> verify( Map<String, Set<Integer>> candidates, RoaringBitmap files, int[] queryValues, SpineView view ) throws Exception {
+		Set<String> fileKeys = new HashSet<String>();
+		if ( candidates == null ) {
+			Map<Integer, String> keys = this.index.fileKeys();
+			for ( int id : files.toArray() ) {
+				String fileKey = keys.get( id );
+				if ( fileKey != null && this.search.inScope( fileKey, id ) ) {
+					fileKeys.add( fileKey );
+				}
+			}
+		} else {
+			for ( String key : candidates.keySet() ) {
+				String[] parts = key.split( "\t", -1 );
+				fileKeys.add( parts[0] + "\t" + parts[1] );
+			}
+		}
+		
+		System.out.println( "Verifying the query in the spines of " + fileKeys.size() + " files." );
+		
+		Map<String, Set<Integer>> verified = new HashMap<String, Set<Integer>>();
+		TokenDictionary dict = this.index.dictionary();
+		for ( SpineRecord spine : this.index.selectSpines( fileKeys ) ) {
+			String key = String.join( "\t", spine.getDatasetName(), spine.getFilename(), String.valueOf( spine.getSpineIndex() ), String.valueOf( spine.getPartname() ) );
+			if ( candidates != null && ! candidates.containsKey( key ) ) {
+				continue;
+			}
+			Set<Integer> starts = candidates == null ? null : candidates.get( key );
+			int[] values = view.derive( spine.getTokenIds(), dict );
+			int[] offsets = view.offsets( spine.getTokenIds(), dict );
+			for ( int start = 0; start + queryValues.length <= values.length; start++ ) {
+				if ( starts != null && ! starts.isEmpty() && ! starts.contains( offsets[start] ) ) {
+					continue;
+				}
+				if ( Simplehash.matchesAt( values, start, queryValues ) ) {
+					verified.computeIfAbsent( key, k -> new TreeSet<Integer>() ).add( offsets[start] );
+				}
+			}
+		}
+		return verified;
+	}
+}
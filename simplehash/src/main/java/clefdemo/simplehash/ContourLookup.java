@@ -0,0 +1,122 @@
+package clefdemo.simplehash;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import clefdemo.simplehash.db.SpineRecord;
+import clefdemo.simplehash.humdrum.Filters;
+import clefdemo.simplehash.humdrum.KernSpine;
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.humdrum.TokenDictionary;
+import clefdemo.simplehash.index.TopK;
+
+/**
+ * A two-stage lookup: a coarse filter on melodic contour, then verification of the exact tokens in the candidate 
+ * files. See {@link Simplehash#lookupContour(KernSpine, int)}.
+ * 
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+class ContourLookup {
+	
+	private final Simplehash search;
+	private final IndexContext index;
+	
+	/**
+	 * @since 1.1.0
+	 * @param search the instance whose query this answers, with its scope, metadata filter, page and sink
+	 */
+	ContourLookup( Simplehash search ) {
+		this.search = search;
+		this.index = search.getIndex();
+	}
+	
+	
+	/**
+	 * Performs the lookup, verifying the best {@code candidates} files of the contour stage.
+	 * 
+	 * @since 1.1.0
+	 * @param ks a KernSpine containing the symbolic music data to be hashed and searched for.
+	 * @param candidates the maximum number of files to verify
+	 * @return a list of Result objects, ordered by number of matches, empty if nothing matched
+	 */
+	List<Result> lookup( KernSpine ks, int candidates ) {
+		
+		List<Result> results = new LinkedList<Result>();
+		
+		// Stage one: narrow the search to the files with the most similar contour.
+		List<Result> filtered = new ApproximateLookup( this.search ).lookup( ks, SpineView.CONTOUR, candidates, false );
+		if ( this.search.hasErrors() || filtered.isEmpty() ) {
+			return results;
+		}
+		
+		List<String> queryTokens = Filters.trim( ks.applyFilters() );
+		List<String[]> files = new ArrayList<String[]>();
+		Map<String, Result> byFile = new HashMap<String, Result>();
+		for ( Result r : filtered ) {
+			files.add( new String[] { r.getDatasetName(), r.getFilename() } );
+			byFile.put( r.getDatasetName() + "\t" + r.getFilename(), r );
+		}
+		
+		System.out.println( "Verifying " + files.size() + " candidate files of contour query: " + String.join( " ", queryTokens ) );
+		
+		// Stage two: find the exact occurrences of the query in the spines of the candidate files.
+		Map<String, Result> matched = new HashMap<String, Result>();
+		Map<String, Integer> matches = new HashMap<String, Integer>();
+		try {
+			int[] query = this.search.encodeQuery( queryTokens, SpineView.KERN );
+			for ( int id : query ) {
+				if ( id == TokenDictionary.UNKNOWN ) {
+					return results;
+				}
+			}
+			
+			int cap = Settings.maxMatchPositions();
+			for ( SpineRecord spine : this.index.selectSpines( byFile.keySet() ) ) {
+				String fileKey = spine.getDatasetName() + "\t" + spine.getFilename();
+				int[] ids = spine.getTokenIds();
+				for ( int start = 0; start + query.length <= ids.length; start++ ) {
+					int i = 0;
+					while ( i < query.length && ids[ start + i ] == query[i] ) {
+						i++;
+					}
+					if ( i < query.length ) {
+						continue;
+					}
+					
+					Result r = matched.get( fileKey );
+					if ( r == null ) {
+						r = new Result( 0, spine.getDatasetName(), spine.getFilename() );
+						r.setProperty( "votes", byFile.get( fileKey ).getProperties().get( "votes" ) );
+						matched.put( fileKey, r );
+					}
+					r.setProperty( "matches", matches.merge( fileKey, 1, Integer::sum ) );
+					r.addPosition( spine.getPartname(), spine.getSpineIndex(), start, cap );
+				}
+			}
+		} catch ( Exception e ) {
+			this.search.getErrors().add( e.getMessage() );
+			return results;
+		}
+		
+		// Order by the number of matches; files with as many matches keep the order of their contour votes.
+		TopK<Result> top = new TopK<Result>( this.search.pageEnd() );
+		for ( Result f : filtered ) {
+			String fileKey = f.getDatasetName() + "\t" + f.getFilename();
+			if ( matched.containsKey( fileKey ) ) {
+				top.offer( matched.get( fileKey ), matches.get( fileKey ) );
+			}
+		}
+		this.search.setTotalResults( matched.size() );
+		int resultid = this.search.getOffset() + 1;
+		for ( Result r : this.search.page( top ) ) {
+			r.setId( resultid++ );
+			this.search.emit( r, results );
+		}
+		
+		return results;
+	}
+}
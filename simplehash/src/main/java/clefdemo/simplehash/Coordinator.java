@@ -0,0 +1,310 @@
+package clefdemo.simplehash;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * This class answers queries in coordinator mode, i.e. when PEERS is set, by sending them to every peer node and
+ * merging their responses.
+ *
+ * Each peer is a Simplehash node of its own holding a subset of the datasets, so their results never overlap: the
+ * results are merged by their number of matches (or votes, for approximate lookups), and totalResults and
+ * itemsSearched are summed. Each peer is asked for the first {@code offset + limit} results, so that the page
+ * requested of the coordinator can be cut from the merged results.
+ *
+ * Every peer must answer within PEER_TIMEOUT milliseconds. The response of a peer that is late, unreachable or
+ * fails is left out and noted in the warnings of the response, which then holds the partial results of the other
+ * peers; only if no peer answers is the status "error". Results are numbered by their rank in the merged results,
+ * from {@code offset + 1}, as the peers number them by their rank on each peer.
+ *
+ * An approximate lookup returns at most {@code k} files, and a contour lookup at most {@code candidates}, however
+ * many peers each return as many: the merged results, and totalResults, are cut to that number.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class Coordinator {
+
+	/**
+	 * The threads shared by every coordinator, started as peers are queried.
+	 */
+	private static ExecutorService executor;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final List<String> peers;
+	private final int timeout;
+
+
+	/**
+	 * @since 1.1.0
+	 * @param peers the base URLs of the peers, e.g. "http://node1:8080"
+	 * @param timeout the time allowed each peer to answer a query, in milliseconds
+	 */
+	public Coordinator( List<String> peers, int timeout ) {
+		this.peers = peers;
+		this.timeout = timeout;
+	}
+
+
+	/**
+	 * Gets the threads shared by every coordinator, starting them on first use.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	private static synchronized ExecutorService executor() {
+		if ( executor == null ) {
+			executor = Executors.newCachedThreadPool( r -> {
+				Thread t = new Thread( r, "simplehash-peer" );
+				t.setDaemon( true );
+				return t;
+			} );
+		}
+		return executor;
+	}
+
+
+	/**
+	 * Gets the number by which the results of the peers are merged: the number of matches of the result, or of
+	 * votes for an approximate lookup.
+	 *
+	 * @since 1.1.0
+	 * @param r a result
+	 * @return the number of matches or votes, or 0 if the result has neither
+	 */
+	private static long rank( Result r ) {
+		Object n = r.getProperties().get( "matches" );
+		if ( n == null ) {
+			n = r.getProperties().get( "votes" );
+		}
+		return n instanceof Number ? ( (Number) n ).longValue() : 0;
+	}
+
+
+	/**
+	 * Sends a query to a peer and reads its response.
+	 *
+	 * @since 1.1.0
+	 * @param peer the base URL of the peer
+	 * @param query the query string of the request
+	 * @param musicxml the query, in MusicXML format
+	 * @return the response of the peer, as decoded from JSON
+	 * @throws IOException thrown if the peer could not be reached or did not answer in time
+	 */
+	private Map<?, ?> ask( String peer, String query, String musicxml ) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) new URL( peer + "/simplehash?" + query ).openConnection();
+		conn.setConnectTimeout( this.timeout );
+		conn.setReadTimeout( this.timeout );
+		conn.setRequestMethod( "POST" );
+		conn.setRequestProperty( "Content-Type", "application/xml" );
+		conn.setRequestProperty( "Accept", "application/json" );
+		conn.setDoOutput( true );
+		try {
+			try ( OutputStream out = conn.getOutputStream() ) {
+				out.write( musicxml.getBytes( StandardCharsets.UTF_8 ) );
+			}
+			if ( conn.getResponseCode() != HttpURLConnection.HTTP_OK ) {
+				throw new IOException( "HTTP " + conn.getResponseCode() );
+			}
+			try ( InputStream in = conn.getInputStream() ) {
+				return this.mapper.readValue( in, Map.class );
+			}
+		} finally {
+			conn.disconnect();
+		}
+	}
+
+
+	/**
+	 * Builds the query string sent to every peer: that of the request, without the parameters that only concern the
+	 * layout of the response, and asking for every result up to the end of the requested page.
+	 *
+	 * @since 1.1.0
+	 * @param params the parameters present in the request URL
+	 * @param offset the index of the first result of the page
+	 * @param limit the number of results of the page, or 0 for every result
+	 * @return the query string
+	 * @throws UnsupportedEncodingException never, as UTF-8 is always supported
+	 */
+	private static String query( Map<String, String> params, int offset, int limit ) throws UnsupportedEncodingException {
+		StringBuilder sb = new StringBuilder();
+		for ( Map.Entry<String, String> param : params.entrySet() ) {
+			switch ( param.getKey() ) {
+			case "layout":
+			case "limit":
+			case "offset":
+			case "stream":
+				continue;
+			default:
+				break;
+			}
+			sb.append( URLEncoder.encode( param.getKey(), "UTF-8" ) ).append( '=' );
+			sb.append( URLEncoder.encode( param.getValue(), "UTF-8" ) ).append( '&' );
+		}
+		sb.append( "offset=0&limit=" ).append( limit > 0 ? offset + limit : 0 );
+		return sb.toString();
+	}
+
+
+	/**
+	 * Sends a query to every peer and merges their responses.
+	 *
+	 * @since 1.1.0
+	 * @param params the parameters present in the request URL
+	 * @param musicxml the query, in MusicXML format
+	 * @return the merged response, with a warning for every peer that did not answer in time
+	 */
+	public Response search( Map<String, String> params, String musicxml ) {
+		Response response = new Response();
+
+		int offset = 0;
+		int limit = 0;
+		int cap = Integer.MAX_VALUE;
+		String query;
+		try {
+			if ( params.get( "offset" ) != null ) {
+				offset = Integer.parseInt( params.get( "offset" ) );
+			}
+			if ( params.get( "limit" ) != null ) {
+				limit = Integer.parseInt( params.get( "limit" ) );
+			}
+			query = query( params, offset, limit );
+		} catch ( NumberFormatException | UnsupportedEncodingException e ) {
+			response.setStatus( "error" );
+			response.addError( "Error: invalid offset or limit." );
+			return response;
+		}
+		
+		// The number of files an approximate or contour lookup returns across every peer.
+		try {
+			if ( "approximate".equals( params.get( "mode" ) ) ) {
+				cap = params.get( "k" ) == null ? Settings.approximateTopK() : Integer.parseInt( params.get( "k" ) );
+			} else if ( "contour".equals( params.get( "mode" ) ) ) {
+				cap = params.get( "candidates" ) == null ? Settings.contourCandidates() : Integer.parseInt( params.get( "candidates" ) );
+			}
+		} catch ( NumberFormatException e ) {
+			response.setStatus( "error" );
+			response.addError( "Error: invalid k or candidates." );
+			return response;
+		}
+		cap = Math.max( 0, cap );
+
+		// Send the query to every peer at once; each must answer before the same deadline.
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( this.timeout );
+		List<Future<Map<?, ?>>> futures = new ArrayList<Future<Map<?, ?>>>();
+		for ( String peer : this.peers ) {
+			Callable<Map<?, ?>> task = () -> this.ask( peer, query, musicxml );
+			futures.add( executor().submit( task ) );
+		}
+
+		List<Result> results = new ArrayList<Result>();
+		List<String> failures = new ArrayList<String>();
+		int answered = 0;
+		for ( int i = 0; i < futures.size(); i++ ) {
+			String peer = this.peers.get( i );
+			Map<?, ?> answer;
+			try {
+				answer = futures.get( i ).get( Math.max( 0, deadline - System.nanoTime() ), TimeUnit.NANOSECONDS );
+			} catch ( TimeoutException te ) {
+				futures.get( i ).cancel( true );
+				failures.add( "Warning: peer " + peer + " did not answer within " + this.timeout + " ms; its results are missing." );
+				continue;
+			} catch ( InterruptedException | ExecutionException e ) {
+				Throwable cause = e.getCause() == null ? e : e.getCause();
+				failures.add( "Warning: peer " + peer + " could not be queried (" + cause.getMessage() + "); its results are missing." );
+				continue;
+			}
+
+			if ( ! "success".equals( answer.get( "status" ) ) ) {
+				failures.add( "Warning: peer " + peer + " answered with errors " + answer.get( "errors" ) + "; its results are missing." );
+				continue;
+			}
+			answered++;
+			results.addAll( toResults( answer.get( "results" ) ) );
+			response.setItemsSearched( response.getItemsSearched() + toInt( answer.get( "itemsSearched" ) ) );
+			response.setTotalResults( response.getTotalResults() + toInt( answer.get( "totalResults" ) ) );
+		}
+
+		// Without a single answer there are no results, partial or otherwise.
+		if ( answered == 0 && ! this.peers.isEmpty() ) {
+			response.setStatus( "error" );
+			response.setErrors( failures );
+			return response;
+		}
+		response.setWarnings( failures );
+
+		// Merge the results, best first; the sort is stable, so the order of each peer is kept among equals.
+		Collections.sort( results, Comparator.comparingLong( Coordinator::rank ).reversed() );
+		results = results.subList( 0, Math.min( cap, results.size() ) );
+		response.setTotalResults( Math.min( cap, response.getTotalResults() ) );
+		
+		// Cut the page and number its results by their merged rank.
+		int from = Math.min( Math.max( 0, offset ), results.size() );
+		int to = limit > 0 ? Math.min( from + limit, results.size() ) : results.size();
+		List<Result> page = new ArrayList<Result>( results.subList( from, to ) );
+		int resultid = from + 1;
+		for ( Result r : page ) {
+			r.setId( resultid++ );
+		}
+		response.setResults( page );
+
+		return response;
+	}
+
+
+	/**
+	 * Converts a number decoded from JSON to an int.
+	 *
+	 * @since 1.1.0
+	 * @param value a number, or null
+	 * @return the number as an int, or 0 if it is not a number
+	 */
+	private static int toInt( Object value ) {
+		return value instanceof Number ? ( (Number) value ).intValue() : 0;
+	}
+
+
+	/**
+	 * Converts the results of a response decoded from JSON to Result objects.
+	 *
+	 * @since 1.1.0
+	 * @param value the "results" field of a response, in the layout by row
+	 * @return the results
+	 */
+	@SuppressWarnings( "unchecked" )
+	private static List<Result> toResults( Object value ) {
+		List<Result> results = new ArrayList<Result>();
+		if ( ! ( value instanceof List ) ) {
+			return results;
+		}
+		for ( Object item : (List<?>) value ) {
+			Map<String, Object> fields = (Map<String, Object>) item;
+			Result r = new Result( toInt( fields.get( "id" ) ), (String) fields.get( "datasetName" ), (String) fields.get( "filename" ) );
+			Object properties = fields.get( "properties" );
+			r.setAllProperties( properties instanceof Map ? (Map<String, Object>) properties : new HashMap<String, Object>() );
+			results.add( r );
+		}
+		return results;
+	}
+}
@@ -0,0 +1,530 @@
+package clefdemo.simplehash;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.stereotype.Component;
+
+import clefdemo.simplehash.db.CorpusStore;
+import clefdemo.simplehash.db.Database;
+import clefdemo.simplehash.db.HashRecordBuffer;
+import clefdemo.simplehash.db.IndexStore;
+import clefdemo.simplehash.db.MemoryIndexStore;
+import clefdemo.simplehash.db.PartitionedIndexStore;
+import clefdemo.simplehash.db.Posting;
+import clefdemo.simplehash.db.ShardedIndexStore;
+import clefdemo.simplehash.db.SpineAlias;
+import clefdemo.simplehash.db.SpineRecord;
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.humdrum.TokenDictionary;
+import clefdemo.simplehash.index.BloomFilter;
+import clefdemo.simplehash.index.PostingTable;
+import clefdemo.simplehash.index.SpineIndex;
+
+/**
+ * The index shared by every query: the token dictionary, the Bloom filters, the stop-grams, the files, datasets and
+ * aliases, and the posting tables, catalog and suffix array held in memory.
+ *
+ * A single instance is a Spring bean, filled by {@link SimplehashInitializer} once the source data has been ingested,
+ * and passed to each {@link Simplehash} by {@link Application}. Anything not set on ingestion is loaded from the
+ * database on first use.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+@Component
+public class IndexContext {
+	
+	/**
+	 * The dictionary with which the source data was encoded.
+	 */
+	private TokenDictionary dictionary;
+	
+	/**
+	 * The suffix array over the stored spines, when INDEX_ENGINE is "suffix".
+	 */
+	private SpineIndex spineIndex;
+	
+	/**
+	 * The file ids of the stored files, keyed by dataset name and filename.
+	 */
+	private Map<String, Integer> fileIds;
+	
+	/**
+	 * The dataset name and filename of each stored file, separated by a tab, keyed by file id.
+	 */
+	private Map<Integer, String> fileKeys;
+	
+	/**
+	 * The Bloom filters of the stored hashes, keyed by view name and n-gram size.
+	 */
+	private Map<String, BloomFilter> bloomFilters;
+	
+	/**
+	 * The names of the datasets, in the order of their partitions of the index store.
+	 */
+	private List<String> datasetNames;
+	
+	/**
+	 * The posting lists of the stored n-grams when INDEX_STORE is not "sqlite", one per shard of each dataset.
+	 */
+	private Map<String, PostingTable[]> postingTables;
+	
+	/**
+	 * The spines that are aliases of indexed spines, keyed by the dataset name, filename and spine index of the
+	 * indexed spine.
+	 */
+	private Map<String, List<SpineAlias>> aliases;
+	
+	/**
+	 * The keys of the stop-grams, whose postings are not in the index store.
+	 */
+	private Set<Long> stopGrams;
+	
+	/**
+	 * The estimated number of tokens of the stored spines.
+	 */
+	private Long spineTokens;
+	
+	/**
+	 * The catalog of the files, bitmaps and spines when INDEX_STORE is not "sqlite", or null to read it from the 
+	 * database.
+	 */
+	private CorpusStore corpusStore;
+	
+	
+	/**
+	 * Gets the catalog of the files, bitmaps and spines: that held in memory, if set on ingestion, or else the 
+	 * database.
+	 * 
+	 * @since 1.1.0
+	 * @return the catalog
+	 * @throws Exception thrown if the database is not available
+	 */
+	synchronized CorpusStore corpusStore() throws Exception {
+		return this.corpusStore == null ? new Database() : this.corpusStore;
+	}
+	
+	
+	/**
+	 * Sets the catalog of the files, bitmaps and spines, for index stores held in memory.
+	 * 
+	 * @since 1.1.0
+	 * @param store the catalog
+	 */
+	synchronized void setCorpusStore( CorpusStore store ) {
+		this.corpusStore = store;
+	}
+	
+	
+	/**
+	 * Gets the dictionary with which the source data was encoded, loading it from the database on first use.
+	 *
+	 * @since 1.1.0
+	 * @return the token dictionary
+	 * @throws Exception thrown if the database is not available
+	 */
+	synchronized TokenDictionary dictionary() throws Exception {
+		if ( this.dictionary == null ) {
+			this.dictionary = new Database().selectTokens();
+		}
+		return this.dictionary;
+	}
+	
+	
+	/**
+	 * Sets the dictionary with which the source data was encoded.
+	 *
+	 * @since 1.1.0
+	 * @param dict the token dictionary
+	 */
+	synchronized void setDictionary( TokenDictionary dict ) {
+		this.dictionary = dict;
+	}
+	
+	
+	/**
+	 * Gets the Bloom filters of the stored hashes, loading them from the database on first use.
+	 *
+	 * @since 1.1.0
+	 * @return the filters, keyed by view name and n-gram size separated by a tab
+	 * @throws Exception thrown if the database is not available
+	 */
+	synchronized Map<String, BloomFilter> bloomFilters() throws Exception {
+		if ( this.bloomFilters == null ) {
+			this.bloomFilters = new Database().selectBloomFilters();
+		}
+		return this.bloomFilters;
+	}
+	
+	
+	/**
+	 * Sets the Bloom filters of the stored hashes.
+	 *
+	 * @since 1.1.0
+	 * @param filters the filters, keyed by view name and n-gram size separated by a tab
+	 */
+	synchronized void setBloomFilters( Map<String, BloomFilter> filters ) {
+		this.bloomFilters = filters;
+	}
+	
+	
+	/**
+	 * Gets the file ids of the stored files, loading them from the database on first use.
+	 *
+	 * @since 1.1.0
+	 * @return the file ids, keyed by dataset name and filename separated by a tab
+	 * @throws Exception thrown if the database is not available
+	 */
+	synchronized Map<String, Integer> fileIds() throws Exception {
+		if ( this.fileIds == null ) {
+			this.fileIds = this.corpusStore().selectFileIds();
+		}
+		return this.fileIds;
+	}
+	
+	
+	/**
+	 * Sets the file ids of the stored files.
+	 *
+	 * @since 1.1.0
+	 * @param ids the file ids, keyed by dataset name and filename separated by a tab
+	 */
+	synchronized void setFileIds( Map<String, Integer> ids ) {
+		this.fileIds = ids;
+		this.fileKeys = null;
+	}
+	
+	
+	/**
+	 * Gets the dataset name and filename of each stored file, from the file ids.
+	 *
+	 * @since 1.1.0
+	 * @return the dataset name and filename separated by a tab, keyed by file id
+	 * @throws Exception thrown if the database is not available
+	 */
+	synchronized Map<Integer, String> fileKeys() throws Exception {
+		if ( this.fileKeys == null ) {
+			Map<Integer, String> keys = new HashMap<Integer, String>();
+			for ( Map.Entry<String, Integer> entry : this.fileIds().entrySet() ) {
+				keys.put( entry.getValue(), entry.getKey() );
+			}
+			this.fileKeys = keys;
+		}
+		return this.fileKeys;
+	}
+	
+	
+	/**
+	 * Gets the keys of the stop-grams, loading them from the database on first use.
+	 *
+	 * @since 1.1.0
+	 * @return the keys of the stop-grams, as from {@link HashRecordBuffer#key(int, int, SpineView)}
+	 * @throws Exception thrown if the database is not available
+	 */
+	synchronized Set<Long> stopGrams() throws Exception {
+		if ( this.stopGrams == null ) {
+			this.stopGrams = new Database().selectStopGrams();
+		}
+		return this.stopGrams;
+	}
+	
+	
+	/**
+	 * Sets the keys of the stop-grams.
+	 *
+	 * @since 1.1.0
+	 * @param keys the keys of the stop-grams, as from {@link HashRecordBuffer#key(int, int, SpineView)}
+	 */
+	synchronized void setStopGrams( Set<Long> keys ) {
+		this.stopGrams = keys;
+	}
+	
+	
+	/**
+	 * Gets the spines that are aliases of indexed spines, loading them from the database on first use.
+	 *
+	 * @since 1.1.0
+	 * @return the aliases, keyed by the dataset name, filename and spine index of the indexed spine, separated by tabs
+	 * @throws Exception thrown if the database is not available
+	 */
+	synchronized Map<String, List<SpineAlias>> aliases() throws Exception {
+		if ( this.aliases == null ) {
+			this.setAliases( new Database().selectAliases() );
+		}
+		return this.aliases;
+	}
+	
+	
+	/**
+	 * Sets the spines that are aliases of indexed spines.
+	 *
+	 * @since 1.1.0
+	 * @param list the aliases
+	 */
+	synchronized void setAliases( List<SpineAlias> list ) {
+		Map<String, List<SpineAlias>> byCanonical = new HashMap<String, List<SpineAlias>>();
+		for ( SpineAlias alias : list ) {
+			byCanonical.computeIfAbsent( alias.canonicalKey(), k -> new ArrayList<SpineAlias>() ).add( alias );
+		}
+		this.aliases = byCanonical;
+	}
+	
+	
+	/**
+	 * Gets the names of the datasets, loading them from the database on first use.
+	 *
+	 * @since 1.1.0
+	 * @return the dataset names, in alphabetical order
+	 * @throws Exception thrown if the database is not available
+	 */
+	synchronized List<String> datasetNames() throws Exception {
+		if ( this.datasetNames == null ) {
+			this.datasetNames = new Database().selectDatasetNames();
+		}
+		return this.datasetNames;
+	}
+	
+	
+	/**
+	 * Sets the names of the datasets, which number the partitions of the index store.
+	 *
+	 * @since 1.1.0
+	 * @param names the dataset names, in alphabetical order
+	 */
+	synchronized void setDatasetNames( List<String> names ) {
+		this.datasetNames = names;
+	}
+	
+	
+	/**
+	 * Gets a new instance of the index store set by INDEX_STORE, over the stored n-grams of every dataset.
+	 *
+	 * @since 1.1.0
+	 * @return the index store; for stores held in memory, empty until the source data has been ingested
+	 * @throws Exception thrown if the database is not available
+	 */
+	synchronized PartitionedIndexStore indexStore() throws Exception {
+		return this.indexStore( this.datasetNames() );
+	}
+	
+	
+	/**
+	 * Gets a new instance of the index store set by INDEX_STORE, over the stored n-grams of the given datasets only.
+	 *
+	 * The store is partitioned by dataset. For SQLite, each partition is a database file of its own next to DB_PATH,
+	 * named after its dataset (see {@link PartitionedIndexStore#partitionPath(String, String)}). When INDEX_SHARDS is
+	 * more than 1, each partition is a {@link ShardedIndexStore} over that many stores; for SQLite, each shard is
+	 * again a database file of its own.
+	 *
+	 * @since 1.1.0
+	 * @param datasets the names of the datasets to include; names of datasets that are not stored are ignored
+	 * @return the index store; for stores held in memory, empty until the source data has been ingested
+	 * @throws Exception thrown if the database is not available
+	 */
+	synchronized PartitionedIndexStore indexStore( Collection<String> datasets ) throws Exception {
+		List<String> names = this.datasetNames();
+		Map<String, IndexStore> partitions = new LinkedHashMap<String, IndexStore>();
+		for ( int p = 0; p < names.size(); p++ ) {
+			if ( ! datasets.contains( names.get( p ) ) ) {
+				continue;
+			}
+			
+			String backend = Settings.indexStore();
+			int shards = Settings.indexShards();
+			IndexStore[] stores = new IndexStore[ shards ];
+			for ( int i = 0; i < shards; i++ ) {
+				if ( backend.equals( Settings.INDEX_STORE_SQLITE ) ) {
+					String dbPath = PartitionedIndexStore.partitionPath( new Database().getDbPath(), names.get( p ) );
+					stores[i] = new Database( shards == 1 ? dbPath : ShardedIndexStore.shardPath( dbPath, i ) );
+				} else if ( this.postingTables == null || ! this.postingTables.containsKey( names.get( p ) ) ) {
+					stores[i] = new MemoryIndexStore( backend );
+				} else {
+					stores[i] = new MemoryIndexStore( backend, this.postingTables.get( names.get( p ) )[i] );
+				}
+			}
+			partitions.put( names.get( p ), shards == 1 ? stores[0] : new ShardedIndexStore( stores ) );
+		}
+		return new PartitionedIndexStore( partitions );
+	}
+	
+	
+	/**
+	 * Sets the posting tables of the stored n-grams, for index stores held in memory.
+	 *
+	 * @since 1.1.0
+	 * @param tables the posting table of each shard, in order of hash range, keyed by dataset name
+	 */
+	synchronized void setPostingTables( Map<String, PostingTable[]> tables ) {
+		this.postingTables = tables;
+	}
+	
+	
+	/**
+	 * Gets the suffix array over the stored spines, building it from the database on first use.
+	 *
+	 * @since 1.1.0
+	 * @return the spine index
+	 * @throws Exception thrown if the database is not available
+	 */
+	synchronized SpineIndex spineIndex() throws Exception {
+		if ( this.spineIndex == null ) {
+			this.spineIndex = new SpineIndex( this.corpusStore().selectAllSpines() );
+		}
+		return this.spineIndex;
+	}
+	
+	
+	/**
+	 * Sets the suffix array over the stored spines.
+	 *
+	 * @since 1.1.0
+	 * @param index the spine index
+	 */
+	synchronized void setSpineIndex( SpineIndex index ) {
+		this.spineIndex = index;
+	}
+	
+	
+	/**
+	 * Gets the estimated number of tokens of the stored spines, counting them in the database on first use.
+	 *
+	 * @since 1.1.0
+	 * @return the number of tokens, as from {@link CorpusStore#numSpineTokens()}
+	 * @throws Exception thrown if the database is not available
+	 */
+	synchronized long spineTokens() throws Exception {
+		if ( this.spineTokens == null ) {
+			this.spineTokens = this.corpusStore().numSpineTokens();
+		}
+		return this.spineTokens;
+	}
+	
+	
+	/**
+	 * Sets the estimated number of tokens of the stored spines.
+	 *
+	 * @since 1.1.0
+	 * @param tokens the number of tokens, as from {@link CorpusStore#numSpineTokens()}
+	 */
+	synchronized void setSpineTokens( long tokens ) {
+		this.spineTokens = tokens;
+	}
+	
+	
+	/**
+	 * Adds the occurrences in the aliases of the spines in which n-grams were found, at the same offsets.
+	 *
+	 * @since 1.1.0
+	 * @param postings occurrences in indexed spines
+	 * @return the occurrences, each followed by those in the aliases of its spine
+	 * @throws Exception thrown if the aliases could not be loaded
+	 */
+	List<Posting> expand( List<Posting> postings ) throws Exception {
+		Map<String, List<SpineAlias>> all = this.aliases();
+		if ( all.isEmpty() ) {
+			return postings;
+		}
+		List<Posting> expanded = new ArrayList<Posting>( postings.size() );
+		for ( Posting p : postings ) {
+			expanded.add( p );
+			for ( SpineAlias alias : all.getOrDefault( p.getDatasetName() + "\t" + p.getFilename() + "\t" + p.getSpineIndex(), Collections.<SpineAlias>emptyList() ) ) {
+				expanded.add( new Posting( alias.getDatasetName(), alias.getFilename(), alias.getPartname(), alias.getSpineIndex(), p.getOffset() ) );
+			}
+		}
+		return expanded;
+	}
+	
+	
+	/**
+	 * Determines whether a hash is that of a stop-gram, whose postings are not in the index store.
+	 *
+	 * @since 1.1.0
+	 * @param hash a hashed n-gram
+	 * @param gramSize the size of the n-gram that was hashed, in tokens
+	 * @param view the view over which the n-gram was taken
+	 * @return true if the n-gram had more postings than STOP_GRAM_POSTINGS on ingestion
+	 * @throws Exception thrown if the stop-grams could not be loaded
+	 */
+	boolean isStopGram( int hash, int gramSize, SpineView view ) throws Exception {
+		if ( view == SpineView.KERN && Settings.indexEngine().equals( Settings.INDEX_ENGINE_SUFFIX ) ) {
+			return false;
+		}
+		return this.stopGrams().contains( HashRecordBuffer.key( hash, gramSize, view ) );
+	}
+	
+	
+	/**
+	 * Determines whether a hash may be stored, according to the Bloom filter of its view and n-gram size.
+	 *
+	 * @since 1.1.0
+	 * @param hash a hashed n-gram
+	 * @param gramSize the size of the n-gram that was hashed, in tokens
+	 * @param view the view over which the n-gram was taken
+	 * @return false if the hash is certainly not stored; true if it may be, or if there is no filter
+	 * @throws Exception thrown if the filters could not be loaded
+	 */
+	boolean mightContain( int hash, int gramSize, SpineView view ) throws Exception {
+		if ( view == SpineView.KERN && Settings.indexEngine().equals( Settings.INDEX_ENGINE_SUFFIX ) ) {
+			return true;
+		}
+		BloomFilter filter = this.bloomFilters().get( view.getName() + "\t" + gramSize );
+		return filter == null || filter.mightContain( hash );
+	}
+	
+	
+	/**
+	 * Selects the token ids of every spine of the given files.
+	 *
+	 * A spine that is an alias is stored only as the spine of which it is an alias, whose token ids are the same.
+	 *
+	 * @since 1.1.0
+	 * @param fileKeys the files, each its dataset name and filename separated by a tab
+	 * @return a list of {@code SpineRecord} objects, among them the aliases of the files
+	 * @throws Exception thrown if the database is not available
+	 */
+	List<SpineRecord> selectSpines( Set<String> fileKeys ) throws Exception {
+		List<SpineRecord> spines = new ArrayList<SpineRecord>();
+		for ( SpineRecord spine : this.corpusStore().selectSpines( this.storedFiles( fileKeys ) ) ) {
+			for ( Posting p : this.expand( Collections.singletonList( new Posting( spine.getDatasetName(), spine.getFilename(), spine.getPartname(), spine.getSpineIndex(), 0 ) ) ) ) {
+				if ( fileKeys.contains( p.getDatasetName() + "\t" + p.getFilename() ) ) {
+					spines.add( new SpineRecord( p.getDatasetName(), p.getFilename(), p.getPartname(), p.getSpineIndex(), spine.getTokenIds() ) );
+				}
+			}
+		}
+		return spines;
+	}
+	
+	
+	/**
+	 * Gets the files whose stored spines hold the spines of the given files, i.e. the files themselves and those of
+	 * which their spines are aliases.
+	 *
+	 * @since 1.1.0
+	 * @param fileKeys the files, each its dataset name and filename separated by a tab
+	 * @return the dataset name and filename of each file, as for {@link CorpusStore#selectSpines(List)}
+	 * @throws Exception thrown if the aliases could not be loaded
+	 */
+	List<String[]> storedFiles( Set<String> fileKeys ) throws Exception {
+		Set<String> stored = new LinkedHashSet<String>( fileKeys );
+		for ( List<SpineAlias> list : this.aliases().values() ) {
+			for ( SpineAlias alias : list ) {
+				if ( fileKeys.contains( alias.getDatasetName() + "\t" + alias.getFilename() ) ) {
+					stored.add( alias.getCanonicalDatasetName() + "\t" + alias.getCanonicalFilename() );
+				}
+			}
+		}
+		List<String[]> files = new ArrayList<String[]>();
+		for ( String fileKey : stored ) {
+			files.add( fileKey.split( "\t", -1 ) );
+		}
+		return files;
+	}
+}
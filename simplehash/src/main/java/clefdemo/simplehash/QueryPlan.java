@@ -0,0 +1,131 @@
+package clefdemo.simplehash;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import clefdemo.simplehash.index.RoaringBitmap;
+
+/**
+ * This class describes how an exact lookup is answered: the strategy chosen by the
+ * {@link QueryPlanner}, and the estimated cost of each strategy that was considered.
+ *
+ * Costs are estimates of the number of stored elements read, i.e. postings and spine tokens, plus a fixed cost for
+ * each read of the index by hash. A strategy that cannot answer the query, or whose cost could not be less than that
+ * of the cheapest strategy found before it, is not estimated.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class QueryPlan {
+
+	/**
+	 * The ways in which an exact lookup can be answered.
+	 */
+	public enum Strategy {
+
+		/**
+		 * Hash the whole query and read the postings of that one n-gram.
+		 */
+		DIRECT( "direct" ),
+
+		/**
+		 * Read the postings of the sub-grams of size QUERY_SIZE_MIN covering the query and chain them.
+		 */
+		CHAINED( "chained" ),
+
+		/**
+		 * Read no index, but compare the query with every stored spine to search, in parallel.
+		 */
+		SCAN( "scan" );
+
+		private final String name;
+
+		private Strategy( String name ) {
+			this.name = name;
+		}
+
+
+		/**
+		 * @since 1.1.0
+		 * @return the name of the strategy, as logged
+		 */
+		public String getName() {
+			return this.name;
+		}
+	}
+
+	private Map<Strategy, Long> costs = new EnumMap<Strategy, Long>( Strategy.class );
+	private Strategy strategy;
+	private RoaringBitmap[] bitmaps;
+
+
+	/**
+	 * Adds the estimated cost of a strategy, choosing it if it is the cheapest so far.
+	 *
+	 * @since 1.1.0
+	 * @param s the strategy
+	 * @param cost the estimated cost of answering the query with the strategy
+	 */
+	public void consider( Strategy s, long cost ) {
+		this.costs.put( s, cost );
+		if ( this.strategy == null || cost < this.getCost() ) {
+			this.strategy = s;
+		}
+	}
+
+
+	/**
+	 * Gets the file bitmaps of the sub-grams covering the query, read to estimate the cost of chaining them.
+	 *
+	 * @since 1.1.0
+	 * @return the bitmaps, in the order of the sub-grams in the query; null if they were not read
+	 */
+	public RoaringBitmap[] getBitmaps() {
+		return this.bitmaps;
+	}
+
+
+	/**
+	 * @since 1.1.0
+	 * @return the estimated cost of the chosen strategy
+	 */
+	public long getCost() {
+		return this.costs.get( this.strategy );
+	}
+
+
+	/**
+	 * @since 1.1.0
+	 * @return the chosen strategy
+	 */
+	public Strategy getStrategy() {
+		return this.strategy;
+	}
+
+
+	/**
+	 * @since 1.1.0
+	 * @param bitmaps the file bitmaps of the sub-grams covering the query, in order
+	 */
+	public void setBitmaps( RoaringBitmap[] bitmaps ) {
+		this.bitmaps = bitmaps;
+	}
+
+
+	/**
+	 * Describes the plan for the logs, e.g. "chained, cost 1200 (chained 1200, scan 48000)".
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder( this.strategy.getName() + ", cost " + this.getCost() + " (" );
+		String sep = "";
+		for ( Map.Entry<Strategy, Long> entry : this.costs.entrySet() ) {
+			sb.append( sep ).append( entry.getKey().getName() ).append( " " ).append( entry.getValue() );
+			sep = ", ";
+		}
+		return sb.append( ")" ).toString();
+	}
+}
@@ -0,0 +1,173 @@
+package clefdemo.simplehash;
+
+import java.util.List;
+import java.util.Map;
+
+import clefdemo.simplehash.humdrum.KernHasher;
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.index.RoaringBitmap;
+
+/**
+ * The query planner, which chooses the cheapest way to answer an exact lookup from estimates of the stored elements 
+ * each would read. See {@link QueryPlan}.
+ * 
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+class QueryPlanner {
+	
+	private final Simplehash search;
+	private final IndexContext index;
+	
+	/**
+	 * @since 1.1.0
+	 * @param search the instance whose query this answers, with its scope, metadata filter, page and sink
+	 */
+	QueryPlanner( Simplehash search ) {
+		this.search = search;
+		this.index = search.getIndex();
+	}
+	
+	
+	/**
+	 * The cost of a read of the index by hash, in the stored elements that could have been read instead, as 
+	 * estimated by the query planner.
+	 */
+	private static final long PROBE_COST = 64;
+	
+	/**
+	 * Chooses the cheapest way to answer an exact lookup of a query over a view.
+	 * 
+	 * A direct lookup is possible only if the whole query is an n-gram of a stored size, and chaining only if the 
+	 * query is longer than the smallest n-grams stored, so a query shorter than QUERY_SIZE_MIN can only be scanned 
+	 * for. 
+	 * 
+	 * A query of a stored size is always looked up directly, and nothing is read to plan it: every sub-gram occurs 
+	 * wherever the whole query does, so chaining never reads fewer postings, and a scan could only read fewer on a 
+	 * corpus of a few n-grams repeated everywhere, whose n-grams would be stop-grams answered from their counts. Its 
+	 * cost is logged as that of the probe alone. Otherwise the cost of each possible strategy is estimated:
+	 * 
+	 * - chaining reads the bitmap of every sub-gram, then the postings of those that are not stop-grams, at least one 
+	 *   per file containing each, then, if any are stop-grams or the view is not KERN, the spines of the files 
+	 *   containing every sub-gram;
+	 * - a scan reads every token of the spines to search, shared among the processors.
+	 * 
+	 * A hash that its Bloom filter shows is not stored costs nothing, as the lookup ends there. Chaining is not 
+	 * estimated if reading its bitmaps alone would cost more than a scan; the bitmaps it reads are kept in the plan, 
+	 * as the chained lookup needs them anyway.
+	 * 
+	 * @since 1.1.0
+	 * @param values the elements of the view of the filtered query tokens, at least one
+	 * @param view the view of the tokens to search
+	 * @return the plan, with the file bitmaps of the covering sub-grams if chaining was estimated
+	 * @throws Exception thrown if the database is not available
+	 */
+	QueryPlan plan( int[] values, SpineView view ) throws Exception {
+		QueryPlan plan = new QueryPlan();
+		int spanMin = Math.max( 1, view.span( Settings.querySizeMin() ) );
+		int spanMax = Settings.indexMode().equals( Settings.INDEX_MODE_CHAINED ) ? spanMin : view.span( Settings.querySizeMax() );
+		
+		if ( values.length >= spanMin && values.length <= spanMax ) {
+			int hash = new KernHasher().hash( values, 0, values.length );
+			plan.consider( QueryPlan.Strategy.DIRECT, this.index.mightContain( hash, values.length + view.overlap(), view ) ? PROBE_COST : 0 );
+			return plan;
+		}
+		
+		long scan = this.scanCost();
+		if ( values.length > spanMin ) {
+			List<Integer> queryOffsets = Simplehash.coveringOffsets( values.length, spanMin );
+			if ( queryOffsets.size() * PROBE_COST < scan ) {
+				plan.consider( QueryPlan.Strategy.CHAINED, this.chainedCost( values, queryOffsets, spanMin, view, plan ) );
+			}
+		}
+		
+		plan.consider( QueryPlan.Strategy.SCAN, scan );
+		return plan;
+	}
+	
+	
+	/**
+	 * Estimates the cost of chaining the sub-grams covering a query, as for {@link #plan(int[], SpineView)}, keeping 
+	 * their file bitmaps in the plan for the lookup.
+	 * 
+	 * @since 1.1.0
+	 * @param values the elements of the view of the query
+	 * @param queryOffsets the query offsets of the covering sub-grams
+	 * @param span the number of elements of each sub-gram
+	 * @param view the view of the tokens to search
+	 * @param plan the plan being made
+	 * @return the estimated cost
+	 * @throws Exception thrown if the database is not available
+	 */
+	private long chainedCost( int[] values, List<Integer> queryOffsets, int span, SpineView view, QueryPlan plan ) throws Exception {
+		KernHasher kh = new KernHasher();
+		int gramSize = span + view.overlap();
+		int[] hashes = new int[ queryOffsets.size() ];
+		for ( int i = 0; i < hashes.length; i++ ) {
+			hashes[i] = kh.hash( values, queryOffsets.get( i ), queryOffsets.get( i ) + span );
+			if ( ! this.index.mightContain( hashes[i], gramSize, view ) ) {
+				return 0;
+			}
+		}
+		RoaringBitmap[] bitmaps = this.index.corpusStore().selectFileBitmaps( hashes, gramSize, view );
+		plan.setBitmaps( bitmaps );
+		
+		long cost = hashes.length * PROBE_COST;
+		RoaringBitmap files = null;
+		boolean stops = false;
+		for ( int i = 0; i < bitmaps.length; i++ ) {
+			files = files == null ? bitmaps[i] : RoaringBitmap.and( files, bitmaps[i] );
+			if ( this.index.isStopGram( hashes[i], gramSize, view ) ) {
+				stops = true;
+			} else {
+				cost += PROBE_COST + bitmaps[i].cardinality();
+			}
+		}
+		if ( this.search.getFileFilter() != null ) {
+			files = RoaringBitmap.and( files, this.search.getFileFilter() );
+		}
+		if ( files.isEmpty() ) {
+			return hashes.length * PROBE_COST;
+		}
+		if ( stops || view != SpineView.KERN ) {
+			cost += this.tokensOf( files.cardinality() );
+		}
+		return cost;
+	}
+	
+	
+	/**
+	 * Estimates the cost of scanning the stored spines of the files to search, as for 
+	 * {@link #plan(int[], SpineView)}.
+	 * 
+	 * @since 1.1.0
+	 * @return the estimated cost
+	 * @throws Exception thrown if the database is not available
+	 */
+	private long scanCost() throws Exception {
+		long files = this.index.fileIds().size();
+		if ( this.search.getScope() != null || this.search.getFileFilter() != null ) {
+			files = 0;
+			for ( Map.Entry<String, Integer> entry : this.index.fileIds().entrySet() ) {
+				if ( this.search.inScope( entry.getKey(), entry.getValue() ) ) {
+					files++;
+				}
+			}
+		}
+		return this.tokensOf( files ) / Runtime.getRuntime().availableProcessors();
+	}
+	
+	
+	/**
+	 * Estimates the number of tokens of the stored spines of some number of files, from the average of every file.
+	 * 
+	 * @since 1.1.0
+	 * @param files the number of files
+	 * @return the estimated number of tokens
+	 * @throws Exception thrown if the database is not available
+	 */
+	private long tokensOf( long files ) throws Exception {
+		int total = this.index.fileIds().size();
+		return total == 0 ? 0 : this.index.spineTokens() * files / total;
+	}
+}
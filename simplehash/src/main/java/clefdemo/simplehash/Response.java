@@ -9,12 +9,15 @@ public class Response {
 	private int itemsSearched;
 	private List<Result> results;
 	private String status;
+	private int totalResults;
+	private List<String> warnings;
 	
 	public Response() {
 		this.errors = new ArrayList<String>();
 		this.results = new ArrayList<Result>();
 		this.itemsSearched = 0;
 		this.status = "success";
+		this.warnings = new ArrayList<String>();
 	}
 	
 	public void addError( String err ) {
@@ -37,6 +40,14 @@ public class Response {
 		return status;
 	}
 	
+	public int getTotalResults() {
+		return totalResults;
+	}
+	
+	public List<String> getWarnings() {
+		return warnings;
+	}
+	
 	public void setErrors( List<String> errors ) {
 		this.errors = errors;
 	}
@@ -52,4 +63,12 @@ public class Response {
 	public void setStatus( String s ) {
 		this.status = s;
 	}
+	
+	public void setTotalResults( int total ) {
+		this.totalResults = total;
+	}
+	
+	public void setWarnings( List<String> warnings ) {
+		this.warnings = warnings;
+	}
 }
@@ -0,0 +1,223 @@
+package clefdemo.simplehash;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class encodes a Response in the alternative layouts and formats offered by the Simplehash endpoint.
+ * 
+ * A Response can be laid out by row, as it is serialized to JSON by default, or by column: then "results" is a map 
+ * from each field of a result ("id", "datasetName", "filename" and each property name) to the list of its values, 
+ * one per result, in order, with null where a result lacks a property. The columnar layout names every field once 
+ * rather than once per result, and groups values of the same type together.
+ * 
+ * Either layout can be encoded as CBOR (RFC 7049), a binary encoding of the same data model as JSON, for callers 
+ * that do not need a human-readable response.
+ * 
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class ResponseEncoder {
+	
+	/**
+	 * The media type of CBOR.
+	 */
+	public static final String APPLICATION_CBOR_VALUE = "application/cbor";
+	
+	private static final int MAJOR_UNSIGNED = 0;
+	private static final int MAJOR_NEGATIVE = 1;
+	private static final int MAJOR_TEXT = 3;
+	private static final int MAJOR_ARRAY = 4;
+	private static final int MAJOR_MAP = 5;
+	
+	
+	/**
+	 * Lays out the results of a response by column.
+	 * 
+	 * @since 1.1.0
+	 * @param results the results of a response
+	 * @return the values of each field of the results, keyed by field name
+	 */
+	public static Map<String, List<Object>> columns( List<Result> results ) {
+		
+		// Collect the property names of every result, in order of first appearance.
+		Set<String> names = new LinkedHashSet<String>();
+		for ( Result r : results ) {
+			if ( r.getProperties() != null ) {
+				names.addAll( r.getProperties().keySet() );
+			}
+		}
+		
+		Map<String, List<Object>> columns = new LinkedHashMap<String, List<Object>>();
+		columns.put( "id", new ArrayList<Object>( results.size() ) );
+		columns.put( "datasetName", new ArrayList<Object>( results.size() ) );
+		columns.put( "filename", new ArrayList<Object>( results.size() ) );
+		for ( String name : names ) {
+			columns.put( name, new ArrayList<Object>( results.size() ) );
+		}
+		
+		for ( Result r : results ) {
+			columns.get( "id" ).add( r.getId() );
+			columns.get( "datasetName" ).add( r.getDatasetName() );
+			columns.get( "filename" ).add( r.getFilename() );
+			for ( String name : names ) {
+				columns.get( name ).add( r.getProperties() == null ? null : r.getProperties().get( name ) );
+			}
+		}
+		
+		return columns;
+	}
+	
+	
+	/**
+	 * Encodes a value as CBOR.
+	 * 
+	 * Maps, collections, strings, numbers, booleans and null are encoded as their CBOR counterparts; Response and 
+	 * Result objects as maps of the same fields as their JSON serialization; and any other value as its string form.
+	 * 
+	 * @since 1.1.0
+	 * @param value the value to encode
+	 * @return the CBOR encoding of the value
+	 */
+	public static byte[] toCbor( Object value ) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeCbor( out, value );
+		return out.toByteArray();
+	}
+	
+	
+	/**
+	 * Converts a response to a tree of maps and lists with the same fields as its JSON serialization.
+	 * 
+	 * @since 1.1.0
+	 * @param response a response
+	 * @param columnar true to lay out the results by column
+	 * @return the fields of the response, keyed by name
+	 */
+	public static Map<String, Object> toTree( Response response, boolean columnar ) {
+		Map<String, Object> tree = new LinkedHashMap<String, Object>();
+		tree.put( "errors", response.getErrors() );
+		tree.put( "itemsSearched", response.getItemsSearched() );
+		if ( columnar ) {
+			tree.put( "results", columns( response.getResults() ) );
+		} else {
+			List<Object> results = new ArrayList<Object>( response.getResults().size() );
+			for ( Result r : response.getResults() ) {
+				results.add( toTree( r ) );
+			}
+			tree.put( "results", results );
+		}
+		tree.put( "status", response.getStatus() );
+		tree.put( "totalResults", response.getTotalResults() );
+		tree.put( "warnings", response.getWarnings() );
+		return tree;
+	}
+	
+	
+	/**
+	 * Converts a result to a map with the same fields as its JSON serialization.
+	 * 
+	 * @since 1.1.0
+	 * @param r a result
+	 * @return the fields of the result, keyed by name
+	 */
+	private static Map<String, Object> toTree( Result r ) {
+		Map<String, Object> tree = new LinkedHashMap<String, Object>();
+		tree.put( "datasetName", r.getDatasetName() );
+		tree.put( "filename", r.getFilename() );
+		tree.put( "id", r.getId() );
+		tree.put( "properties", r.getProperties() );
+		return tree;
+	}
+	
+	
+	/**
+	 * Writes a value as CBOR.
+	 * 
+	 * @since 1.1.0
+	 * @param out the stream to write to
+	 * @param value the value to write
+	 */
+	private static void writeCbor( ByteArrayOutputStream out, Object value ) {
+		if ( value == null ) {
+			out.write( 0xF6 );
+		} else if ( value instanceof Boolean ) {
+			out.write( (Boolean) value ? 0xF5 : 0xF4 );
+		} else if ( value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte ) {
+			long n = ( (Number) value ).longValue();
+			if ( n >= 0 ) {
+				writeHead( out, MAJOR_UNSIGNED, n );
+			} else {
+				writeHead( out, MAJOR_NEGATIVE, -1 - n );
+			}
+		} else if ( value instanceof Number ) {
+			// A double-precision float.
+			long bits = Double.doubleToLongBits( ( (Number) value ).doubleValue() );
+			out.write( 0xFB );
+			for ( int shift = 56; shift >= 0; shift -= 8 ) {
+				out.write( (int) ( bits >>> shift ) );
+			}
+		} else if ( value instanceof Map ) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			writeHead( out, MAJOR_MAP, map.size() );
+			for ( Map.Entry<?, ?> entry : map.entrySet() ) {
+				writeCbor( out, String.valueOf( entry.getKey() ) );
+				writeCbor( out, entry.getValue() );
+			}
+		} else if ( value instanceof Collection ) {
+			Collection<?> items = (Collection<?>) value;
+			writeHead( out, MAJOR_ARRAY, items.size() );
+			for ( Object item : items ) {
+				writeCbor( out, item );
+			}
+		} else if ( value instanceof Response ) {
+			writeCbor( out, toTree( (Response) value, false ) );
+		} else if ( value instanceof Result ) {
+			writeCbor( out, toTree( (Result) value ) );
+		} else {
+			byte[] text = value.toString().getBytes( StandardCharsets.UTF_8 );
+			writeHead( out, MAJOR_TEXT, text.length );
+			out.write( text, 0, text.length );
+		}
+	}
+	
+	
+	/**
+	 * Writes the head of a CBOR data item: its major type and its argument, in as few bytes as possible.
+	 * 
+	 * @since 1.1.0
+	 * @param out the stream to write to
+	 * @param major the major type
+	 * @param arg the argument, i.e. a value, a length or a number of items
+	 */
+	private static void writeHead( ByteArrayOutputStream out, int major, long arg ) {
+		int type = major << 5;
+		if ( arg < 24 ) {
+			out.write( type | (int) arg );
+		} else if ( arg < 0x100 ) {
+			out.write( type | 24 );
+			out.write( (int) arg );
+		} else if ( arg < 0x10000 ) {
+			out.write( type | 25 );
+			out.write( (int) ( arg >>> 8 ) );
+			out.write( (int) arg );
+		} else if ( arg < 0x100000000L ) {
+			out.write( type | 26 );
+			for ( int shift = 24; shift >= 0; shift -= 8 ) {
+				out.write( (int) ( arg >>> shift ) );
+			}
+		} else {
+			out.write( type | 27 );
+			for ( int shift = 56; shift >= 0; shift -= 8 ) {
+				out.write( (int) ( arg >>> shift ) );
+			}
+		}
+	}
+}
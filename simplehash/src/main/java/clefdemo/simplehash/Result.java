@@ -1,7 +1,10 @@
 package clefdemo.simplehash;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 public class Result {
 
@@ -34,6 +37,36 @@ public class Result {
 		return id;
 	}
 	
+	/**
+	 * Records the position of a match within the file of this result.
+	 * 
+	 * Positions are kept in the "positions" property, up to {@code cap} of them; the names of the parts in which 
+	 * matches occur are kept in the "parts" property.
+	 * 
+	 * @since 1.1.0
+	 * @param partname the name of the part in which the match occurs
+	 * @param spineIndex the index of the spine of the part within the file
+	 * @param offset the index of the first matching token within the filtered tokens of the part
+	 * @param cap the maximum number of positions to keep
+	 */
+	@SuppressWarnings( "unchecked" )
+	public void addPosition( String partname, int spineIndex, int offset, int cap ) {
+		List<Map<String, Object>> positions = (List<Map<String, Object>>) this.properties.computeIfAbsent( "positions", k -> new ArrayList<Map<String, Object>>() );
+		List<String> parts = (List<String>) this.properties.computeIfAbsent( "parts", k -> new ArrayList<String>() );
+		
+		if ( partname != null && ! parts.contains( partname ) ) {
+			parts.add( partname );
+		}
+		
+		if ( positions.size() < cap ) {
+			Map<String, Object> position = new LinkedHashMap<String, Object>();
+			position.put( "part", partname );
+			position.put( "spine", spineIndex );
+			position.put( "offset", offset );
+			positions.add( position );
+		}
+	}
+	
 	public Map<String, Object> getProperties() {
 		return properties;
 	}
@@ -0,0 +1,83 @@
+package clefdemo.simplehash;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import clefdemo.simplehash.db.Posting;
+import clefdemo.simplehash.db.SpineRecord;
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.humdrum.TokenDictionary;
+
+/**
+ * An exact lookup that reads no index, but compares the query with the stored spines of every file to search.
+ * 
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+class ScanLookup {
+	
+	private final Simplehash search;
+	private final IndexContext index;
+	
+	/**
+	 * @since 1.1.0
+	 * @param search the instance whose query this answers, with its scope, metadata filter, page and sink
+	 */
+	ScanLookup( Simplehash search ) {
+		this.search = search;
+		this.index = search.getIndex();
+	}
+	
+	
+	/**
+	 * Performs an exact lookup without reading the index, by comparing the query with the stored spines of every 
+	 * file to search, in parallel.
+	 * 
+	 * Only stored spines are compared; the matches in their aliases are added afterwards, as they are to the 
+	 * postings read from the index. This answers queries shorter than QUERY_SIZE_MIN, whose n-grams are not stored, 
+	 * and those whose n-grams are so common that reading their postings would cost more than the scan.
+	 * 
+	 * @since 1.1.0
+	 * @param queryTokens the filtered query tokens, for logging
+	 * @param queryValues the elements of the view of the filtered query tokens, at least one
+	 * @param view the view of the tokens to search
+	 * @return a list of Result objects, ordered by number of matches, empty if nothing matched
+	 * @throws Exception thrown if the spines or the token dictionary could not be loaded
+	 */
+	List<Result> lookup( List<String> queryTokens, int[] queryValues, SpineView view ) throws Exception {
+		
+		System.out.println( "Scanning the stored spines for " + view.getName() + " query: " + String.join( " ", queryTokens ) );
+		
+		List<SpineRecord> spines;
+		if ( this.search.getScope() == null && this.search.getFileFilter() == null ) {
+			spines = this.index.corpusStore().selectAllSpines();
+		} else {
+			Set<String> fileKeys = new HashSet<String>();
+			for ( Map.Entry<String, Integer> entry : this.index.fileIds().entrySet() ) {
+				if ( this.search.inScope( entry.getKey(), entry.getValue() ) ) {
+					fileKeys.add( entry.getKey() );
+				}
+			}
+			spines = this.index.corpusStore().selectSpines( this.index.storedFiles( fileKeys ) );
+		}
+		
+		TokenDictionary dict = this.index.dictionary();
+		List<Posting> postings = spines.parallelStream().flatMap( spine -> {
+			int[] values = view.derive( spine.getTokenIds(), dict );
+			int[] offsets = view.offsets( spine.getTokenIds(), dict );
+			List<Posting> found = new ArrayList<Posting>();
+			for ( int start = 0; start + queryValues.length <= values.length; start++ ) {
+				if ( Simplehash.matchesAt( values, start, queryValues ) ) {
+					found.add( new Posting( spine.getDatasetName(), spine.getFilename(), spine.getPartname(), spine.getSpineIndex(), offsets[start] ) );
+				}
+			}
+			return found.stream();
+		} ).collect( Collectors.toList() );
+		
+		return this.search.rank( this.search.inScope( this.index.expand( postings ) ) );
+	}
+}
@@ -0,0 +1,365 @@
+package clefdemo.simplehash;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import clefdemo.simplehash.humdrum.SpineView;
+
+/**
+ * This class reads the optional configuration of Simplehash from the environment.
+ *
+ * Required settings, such as DB_PATH, QUERY_SIZE_MIN and QUERY_SIZE_MAX, are still checked by the classes that
+ * depend upon them. The methods here are for settings that have a sensible default when absent.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class Settings {
+
+	/**
+	 * Index mode in which every n-gram size between QUERY_SIZE_MIN and QUERY_SIZE_MAX is stored.
+	 */
+	public static final String INDEX_MODE_FULL = "full";
+
+	/**
+	 * Index mode in which only n-grams of size QUERY_SIZE_MIN are stored, along with their token offsets.
+	 */
+	public static final String INDEX_MODE_CHAINED = "chained";
+
+
+	/**
+	 * Index engine in which exact KERN queries are answered from the hashed n-grams.
+	 */
+	public static final String INDEX_ENGINE_HASH = "hash";
+
+	/**
+	 * Index engine in which exact KERN queries are answered from a suffix array over the token ids of every spine.
+	 */
+	public static final String INDEX_ENGINE_SUFFIX = "suffix";
+
+
+	/**
+	 * Index store in which n-grams are stored in the SQLite database at DB_PATH.
+	 */
+	public static final String INDEX_STORE_SQLITE = "sqlite";
+
+	/**
+	 * Index store in which n-grams are held in memory on the Java heap.
+	 */
+	public static final String INDEX_STORE_HEAP = "heap";
+
+	/**
+	 * Index store in which n-grams are held in memory outside the Java heap.
+	 */
+	public static final String INDEX_STORE_OFFHEAP = "offheap";
+
+	/**
+	 * Index store in which n-grams are held in files memory-mapped from INDEX_STORE_DIR.
+	 */
+	public static final String INDEX_STORE_MMAP = "mmap";
+
+
+	/**
+	 * Gets the value of the environment variable {@code name}.
+	 *
+	 * @since 1.1.0
+	 * @param name the name of the environment variable
+	 * @param def the value to return if the variable is not set
+	 * @return the value of the environment variable, or {@code def} if it is not set or empty
+	 */
+	public static String get( String name, String def ) {
+		String val = System.getenv( name );
+		if ( val == null || val.trim().isEmpty() ) {
+			return def;
+		}
+		return val.trim();
+	}
+
+
+	/**
+	 * Gets the value of the environment variable {@code name} as an int.
+	 *
+	 * @since 1.1.0
+	 * @param name the name of the environment variable
+	 * @param def the value to return if the variable is not set or is not an integer
+	 * @return the value of the environment variable, or {@code def}
+	 */
+	public static int getInt( String name, int def ) {
+		String val = get( name, null );
+		if ( val == null ) {
+			return def;
+		}
+		try {
+			return Integer.parseInt( val );
+		} catch ( NumberFormatException nfe ) {
+			System.out.println( "Ignoring non-integer value for " + name + ": " + val );
+			return def;
+		}
+	}
+
+
+	/**
+	 * Gets the value of the environment variable {@code name} as a double.
+	 *
+	 * @since 1.1.0
+	 * @param name the name of the environment variable
+	 * @param def the value to return if the variable is not set or is not a number
+	 * @return the value of the environment variable, or {@code def}
+	 */
+	public static double getDouble( String name, double def ) {
+		String val = get( name, null );
+		if ( val == null ) {
+			return def;
+		}
+		try {
+			return Double.parseDouble( val );
+		} catch ( NumberFormatException nfe ) {
+			System.out.println( "Ignoring non-numeric value for " + name + ": " + val );
+			return def;
+		}
+	}
+
+
+	/**
+	 * Gets the default number of results of an approximate lookup, as set by the environment variable 
+	 * APPROXIMATE_TOP_K.
+	 *
+	 * @since 1.1.0
+	 * @return the number of results
+	 */
+	public static int approximateTopK() {
+		return getInt( "APPROXIMATE_TOP_K", 10 );
+	}
+
+
+	/**
+	 * Gets the false-positive rate of the Bloom filters of the stored hashes, as set by the environment variable 
+	 * BLOOM_FPP.
+	 *
+	 * @since 1.1.0
+	 * @return the false-positive rate
+	 */
+	public static double bloomFpp() {
+		return getDouble( "BLOOM_FPP", 0.01 );
+	}
+
+
+	/**
+	 * Gets the default number of candidate files passed from the contour filter to verification in a contour 
+	 * lookup, as set by the environment variable CONTOUR_CANDIDATES.
+	 *
+	 * @since 1.1.0
+	 * @return the number of candidate files
+	 */
+	public static int contourCandidates() {
+		return getInt( "CONTOUR_CANDIDATES", 100 );
+	}
+
+
+	/**
+	 * Gets whether every n-gram hashed on startup is also written to ngrams.csv in DATA_DIR, as set by the 
+	 * environment variable CSV_EXPORT.
+	 *
+	 * @since 1.1.0
+	 * @return true if CSV_EXPORT is "true"; false by default
+	 */
+	public static boolean csvExport() {
+		return Boolean.parseBoolean( get( "CSV_EXPORT", "false" ) );
+	}
+
+
+	/**
+	 * Gets the directory of the symbolic music data to ingest, as set by the environment variable DATA_DIR.
+	 *
+	 * @since 1.1.0
+	 * @return the data directory, "/usr/local/data" by default
+	 */
+	public static String dataDir() {
+		return get( "DATA_DIR", "/usr/local/data" );
+	}
+
+
+	/**
+	 * Gets the index engine for the KERN view, as set by the environment variable INDEX_ENGINE.
+	 *
+	 * @since 1.1.0
+	 * @return one of {@link #INDEX_ENGINE_HASH} (the default) or {@link #INDEX_ENGINE_SUFFIX}
+	 */
+	public static String indexEngine() {
+		String engine = get( "INDEX_ENGINE", INDEX_ENGINE_HASH ).toLowerCase();
+		if ( ! engine.equals( INDEX_ENGINE_SUFFIX ) ) {
+			return INDEX_ENGINE_HASH;
+		}
+		return engine;
+	}
+
+
+	/**
+	 * Gets the number of shards into which the index store is partitioned by hash range, as set by the environment 
+	 * variable INDEX_SHARDS.
+	 *
+	 * @since 1.1.0
+	 * @return the number of shards, at least 1 (the default, for no partitioning)
+	 */
+	public static int indexShards() {
+		return Math.max( 1, getInt( "INDEX_SHARDS", 1 ) );
+	}
+
+
+	/**
+	 * Gets the index store, as set by the environment variable INDEX_STORE.
+	 *
+	 * @since 1.1.0
+	 * @return one of {@link #INDEX_STORE_SQLITE} (the default), {@link #INDEX_STORE_HEAP}, 
+	 * {@link #INDEX_STORE_OFFHEAP} or {@link #INDEX_STORE_MMAP}
+	 */
+	public static String indexStore() {
+		String store = get( "INDEX_STORE", INDEX_STORE_SQLITE ).toLowerCase();
+		if ( ! ( store.equals( INDEX_STORE_HEAP ) || store.equals( INDEX_STORE_OFFHEAP ) || store.equals( INDEX_STORE_MMAP ) ) ) {
+			return INDEX_STORE_SQLITE;
+		}
+		return store;
+	}
+
+
+	/**
+	 * Gets the directory of the files of the "mmap" index store, as set by the environment variable 
+	 * INDEX_STORE_DIR.
+	 *
+	 * @since 1.1.0
+	 * @return the directory, by default the temporary directory of the JVM
+	 */
+	public static String indexStoreDir() {
+		return get( "INDEX_STORE_DIR", System.getProperty( "java.io.tmpdir" ) );
+	}
+
+
+	/**
+	 * Gets the index mode, as set by the environment variable INDEX_MODE.
+	 *
+	 * @since 1.1.0
+	 * @return one of {@link #INDEX_MODE_FULL} (the default) or {@link #INDEX_MODE_CHAINED}
+	 */
+	public static String indexMode() {
+		String mode = get( "INDEX_MODE", INDEX_MODE_FULL ).toLowerCase();
+		if ( ! mode.equals( INDEX_MODE_CHAINED ) ) {
+			return INDEX_MODE_FULL;
+		}
+		return mode;
+	}
+
+
+	/**
+	 * Gets the views indexed in addition to the KERN view, as set by the comma-separated environment variable 
+	 * INDEX_VIEWS, e.g. "interval,pitch,rhythm".
+	 *
+	 * @since 1.1.0
+	 * @return the additional views to index, empty by default
+	 */
+	public static List<SpineView> indexViews() {
+		List<SpineView> views = new ArrayList<SpineView>();
+		for ( String name : get( "INDEX_VIEWS", "" ).split( "," ) ) {
+			if ( name.trim().isEmpty() ) {
+				continue;
+			}
+			SpineView view = SpineView.fromName( name );
+			if ( view == null ) {
+				System.out.println( "Ignoring unknown view in INDEX_VIEWS: " + name );
+			} else if ( view != SpineView.KERN && ! views.contains( view ) ) {
+				views.add( view );
+			}
+		}
+		return views;
+	}
+
+
+	/**
+	 * Gets the maximum number of match positions reported per result, as set by the environment variable 
+	 * MAX_MATCH_POSITIONS.
+	 *
+	 * @since 1.1.0
+	 * @return the maximum number of match positions per result
+	 */
+	public static int maxMatchPositions() {
+		return getInt( "MAX_MATCH_POSITIONS", 100 );
+	}
+
+
+	/**
+	 * Gets the time allowed each peer to answer a query in coordinator mode, as set by the environment variable 
+	 * PEER_TIMEOUT, in milliseconds.
+	 *
+	 * @since 1.1.0
+	 * @return the per-peer deadline in milliseconds, 5000 by default
+	 */
+	public static int peerTimeout() {
+		return Math.max( 1, getInt( "PEER_TIMEOUT", 5000 ) );
+	}
+
+
+	/**
+	 * Gets the base URLs of the peer nodes to which queries are sent in coordinator mode, as set by the 
+	 * comma-separated environment variable PEERS, e.g. "http://node1:8080,http://node2:8080".
+	 *
+	 * @since 1.1.0
+	 * @return the base URLs of the peers; empty by default, in which case this node answers queries itself
+	 */
+	public static List<String> peers() {
+		List<String> peers = new ArrayList<String>();
+		for ( String peer : get( "PEERS", "" ).split( "," ) ) {
+			peer = peer.trim();
+			while ( peer.endsWith( "/" ) ) {
+				peer = peer.substring( 0, peer.length() - 1 );
+			}
+			if ( ! peer.isEmpty() && ! peers.contains( peer ) ) {
+				peers.add( peer );
+			}
+		}
+		return peers;
+	}
+
+
+	/**
+	 * Gets the minimum n-gram size, as set by the environment variable QUERY_SIZE_MIN.
+	 *
+	 * @since 1.1.0
+	 * @return the minimum n-gram size
+	 */
+	public static int querySizeMin() {
+		return getInt( "QUERY_SIZE_MIN", 3 );
+	}
+
+
+	/**
+	 * Gets the maximum n-gram size, as set by the environment variable QUERY_SIZE_MAX.
+	 *
+	 * @since 1.1.0
+	 * @return the maximum n-gram size
+	 */
+	public static int querySizeMax() {
+		return getInt( "QUERY_SIZE_MAX", 15 );
+	}
+
+
+	/**
+	 * Gets the number of occurrences above which an n-gram is a stop-gram, whose postings are not stored, as set by 
+	 * the environment variable STOP_GRAM_POSTINGS.
+	 *
+	 * @since 1.1.0
+	 * @return the maximum length of a stored posting list, 100000 by default; 0 stores every posting list
+	 */
+	public static int stopGramPostings() {
+		return Math.max( 0, getInt( "STOP_GRAM_POSTINGS", 100000 ) );
+	}
+
+
+	/**
+	 * Gets the default number of results of a streamed response, as set by the environment variable STREAM_LIMIT.
+	 *
+	 * @since 1.1.0
+	 * @return the number of results, 100 by default; 0 for no maximum
+	 */
+	public static int streamLimit() {
+		return Math.max( 0, getInt( "STREAM_LIMIT", 100 ) );
+	}
+}
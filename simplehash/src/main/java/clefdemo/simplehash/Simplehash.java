@@ -2,10 +2,19 @@ package clefdemo.simplehash;
 
 import java.util.List;
 
-import clefdemo.simplehash.db.Database;
+import clefdemo.simplehash.db.CorpusStore;
+import clefdemo.simplehash.db.IndexStore;
+import clefdemo.simplehash.db.Posting;
+import clefdemo.simplehash.db.PostingRanker;
+import clefdemo.simplehash.db.SpineAlias;
 import clefdemo.simplehash.humdrum.Filters;
 import clefdemo.simplehash.humdrum.KernHasher;
 import clefdemo.simplehash.humdrum.KernSpine;
+import clefdemo.simplehash.humdrum.KernTokenCodec;
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.humdrum.TokenDictionary;
+import clefdemo.simplehash.index.RoaringBitmap;
+import clefdemo.simplehash.index.TopK;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -13,24 +22,57 @@ import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 
 /**
  * The main algorithm class. Contains methods for handling MusicXML query input, searching the Simplehash 
  * database, and collecting errors.
  * 
+ * Each way of answering a lookup is a class of its own, e.g. {@link ChainedLookup}, which shares the query state of 
+ * the instance and reads the index through the {@link IndexContext} passed to it.
+ * 
  * @author Max DeCurtins
  * @since 1.0.0
  */
 public class Simplehash {
-
+	
+	private final IndexContext index;
 	private List<String> errs;
+	private Set<String> scope;
+	private RoaringBitmap fileFilter;
+	private Consumer<Result> sink;
+	private int offset;
+	private int limit;
+	private int totalResults;
 	
-	public Simplehash() {
+	/**
+	 * @since 1.1.0
+	 * @param index the index shared by every query
+	 */
+	public Simplehash( IndexContext index ) {
+		this.index = index;
 		this.errs = new LinkedList<String>();
 	}
 	
 	
+	/**
+	 * Gets the index shared by every query, which the lookups of this instance read.
+	 * 
+	 * @since 1.1.0
+	 * @return the index
+	 */
+	IndexContext getIndex() {
+		return this.index;
+	}
+	
+	
 	/**
 	 * Gets any errors generated by this instance of Simplehash.
 	 * 
@@ -42,6 +84,53 @@ public class Simplehash {
 	}
 	
 	
+	/**
+	 * Gets the number of files matched by the last lookup, including those outside the requested page of results.
+	 * 
+	 * @since 1.1.0
+	 * @return the total number of results
+	 */
+	public int getTotalResults() {
+		return this.totalResults;
+	}
+	
+	
+	/**
+	 * @since 1.1.0
+	 * @param total the number of files matched by the lookup, including those outside the requested page of results
+	 */
+	void setTotalResults( int total ) {
+		this.totalResults = total;
+	}
+	
+	
+	/**
+	 * @since 1.1.0
+	 * @return the number of best results skipped before the requested page
+	 */
+	int getOffset() {
+		return this.offset;
+	}
+	
+	
+	/**
+	 * @since 1.1.0
+	 * @return the file ids of the files matching the metadata filter, or null if there is none
+	 */
+	RoaringBitmap getFileFilter() {
+		return this.fileFilter;
+	}
+	
+	
+	/**
+	 * @since 1.1.0
+	 * @return the names of the datasets to search, or null to search every dataset
+	 */
+	Set<String> getScope() {
+		return this.scope;
+	}
+	
+	
 	/**
 	 * Determines whether any errors were generated by this instance of Simplehash.
 	 * 
@@ -53,6 +142,204 @@ public class Simplehash {
 	}
 	
 	
+	/**
+	 * Sets the page of results returned by lookups.
+	 * 
+	 * Results are ranked as usual, and only those from rank {@code offset} to rank {@code offset + limit - 1} are 
+	 * returned. Ranking keeps only the best {@code offset + limit} files in a bounded heap, so the full list of 
+	 * matching files is never sorted.
+	 * 
+	 * @since 1.1.0
+	 * @param offset the number of best results to skip
+	 * @param limit the maximum number of results to return, or 0 for no maximum
+	 */
+	public void setPage( int offset, int limit ) {
+		this.offset = Math.max( 0, offset );
+		this.limit = Math.max( 0, limit );
+	}
+	
+	
+	/**
+	 * Passes the results of lookups to an action, each as soon as it is made, rather than returning them.
+	 * 
+	 * Results are made in order of rank, once ranking has kept the best {@code offset + limit} files, so with a 
+	 * limit no more than a page of them is ever held, and none is held once it has been passed on. Lookups then 
+	 * return an empty list.
+	 * 
+	 * @since 1.1.0
+	 * @param action the action to which each result of the page is passed, best first; or null to return them
+	 */
+	public void setSink( Consumer<Result> action ) {
+		this.sink = action;
+	}
+	
+	
+	/**
+	 * Restricts lookups to the given datasets.
+	 * 
+	 * Lookups then read only the partitions of the index store of those datasets, and {@link #numItems()} counts only 
+	 * their files. Names of datasets that are not stored match nothing.
+	 * 
+	 * @since 1.1.0
+	 * @param datasets the names of the datasets to search, or null to search every dataset
+	 */
+	public void setScope( Collection<String> datasets ) {
+		this.scope = datasets == null ? null : new HashSet<String>( datasets );
+	}
+	
+	
+	/**
+	 * Restricts lookups to the files whose reference records (!!!COM, !!!SCT and !!!CDT) match every given filter.
+	 * 
+	 * The filters are resolved to a set of file ids in the indexed metadata table before any hash is looked up; 
+	 * occurrences in other files are then dropped before results are ranked, and chained lookups intersect the set 
+	 * with the file bitmaps of the query's sub-grams. See {@link CorpusStore#selectFileIdsWithMetadata(String, 
+	 * String, Integer, Integer)} for how each filter matches.
+	 * 
+	 * @since 1.1.0
+	 * @param composer a prefix of the composer's name, or null for any composer
+	 * @param catalog a prefix of the catalog and number, e.g. "BWV" or "BWV 772", or null for any catalog
+	 * @param fromYear the first year of a range during which the composer lived, or null for no lower bound
+	 * @param toYear the last year of that range, or null for no upper bound
+	 */
+	public void setMetadataFilter( String composer, String catalog, Integer fromYear, Integer toYear ) {
+		if ( composer == null && catalog == null && fromYear == null && toYear == null ) {
+			this.fileFilter = null;
+			return;
+		}
+		try {
+			this.fileFilter = this.index.corpusStore().selectFileIdsWithMetadata( composer, catalog, fromYear, toYear );
+		} catch ( Exception e ) {
+			this.errs.add( e.getMessage() );
+		}
+	}
+	
+	
+	/**
+	 * Gets a new instance of the index store over the datasets to search.
+	 * 
+	 * A spine in one of those datasets may be an alias of a spine indexed in another dataset, whose partition is then 
+	 * searched as well; {@link #inScope(List)} drops the occurrences outside the datasets to search.
+	 * 
+	 * @since 1.1.0
+	 * @return the index store
+	 * @throws Exception thrown if the database is not available
+	 */
+	IndexStore scopedIndexStore() throws Exception {
+		if ( this.scope == null ) {
+			return this.index.indexStore();
+		}
+		Set<String> datasets = new TreeSet<String>( this.scope );
+		for ( List<SpineAlias> list : this.index.aliases().values() ) {
+			for ( SpineAlias alias : list ) {
+				if ( this.scope.contains( alias.getDatasetName() ) ) {
+					datasets.add( alias.getCanonicalDatasetName() );
+				}
+			}
+		}
+		return this.index.indexStore( datasets );
+	}
+	
+	
+	/**
+	 * Keeps only the occurrences within the datasets and files to search.
+	 * 
+	 * @since 1.1.0
+	 * @param postings occurrences in any file
+	 * @return the occurrences in the datasets to search and in the files matching the metadata filter, if any
+	 * @throws Exception thrown if the file ids could not be loaded
+	 */
+	List<Posting> inScope( List<Posting> postings ) throws Exception {
+		if ( this.scope == null && this.fileFilter == null ) {
+			return postings;
+		}
+		List<Posting> kept = new ArrayList<Posting>();
+		for ( Posting p : postings ) {
+			if ( this.scope != null && ! this.scope.contains( p.getDatasetName() ) ) {
+				continue;
+			}
+			if ( this.fileFilter != null && ! this.fileFilter.contains( this.index.fileIds().getOrDefault( p.getDatasetName() + "\t" + p.getFilename(), -1 ) ) ) {
+				continue;
+			}
+			kept.add( p );
+		}
+		return kept;
+	}
+	
+	
+	/**
+	 * Determines whether a file is within the datasets and files to search.
+	 * 
+	 * @since 1.1.0
+	 * @param fileKey the dataset name and filename of the file, separated by a tab
+	 * @param fileId the file id of the file
+	 * @return true if the file is in a dataset to search and matches the metadata filter, if any
+	 */
+	boolean inScope( String fileKey, int fileId ) {
+		if ( this.scope != null && ! this.scope.contains( fileKey.substring( 0, fileKey.indexOf( '\t' ) ) ) ) {
+			return false;
+		}
+		return this.fileFilter == null || this.fileFilter.contains( fileId );
+	}
+	
+	
+	/**
+	 * Gets the requested page of the items kept by a bounded heap of at least {@link #pageEnd()} items.
+	 * 
+	 * @since 1.1.0
+	 * @param top the best items, of which there were {@link #getTotalResults()}
+	 * @return the items of the page, best first
+	 */
+	<T> List<T> page( TopK<T> top ) {
+		List<T> items = top.toList();
+		return new ArrayList<T>( items.subList( Math.min( this.offset, items.size() ), items.size() ) );
+	}
+	
+	
+	/**
+	 * Gets the number of best results that must be ranked to fill the requested page.
+	 * 
+	 * @since 1.1.0
+	 * @return the rank after the last result of the page
+	 */
+	int pageEnd() {
+		return this.limit == 0 ? Integer.MAX_VALUE : (int) Math.min( Integer.MAX_VALUE, (long) this.offset + this.limit );
+	}
+	
+	
+	/**
+	 * Passes a result of the requested page to the sink, if any, or else adds it to the results to return.
+	 * 
+	 * @since 1.1.0
+	 * @param r the result
+	 * @param results the results to return
+	 */
+	void emit( Result r, List<Result> results ) {
+		if ( this.sink == null ) {
+			results.add( r );
+		} else {
+			this.sink.accept( r );
+		}
+	}
+	
+	
+	/**
+	 * Ranks the files in which the occurrences of a query were found, by number of occurrences, and emits the 
+	 * requested page of them.
+	 * 
+	 * @since 1.1.0
+	 * @param postings the occurrences of the query within the datasets and files to search
+	 * @return a list of Result objects, ordered by number of matches; empty if they were passed to the sink
+	 */
+	List<Result> rank( List<Posting> postings ) {
+		List<Result> results = new LinkedList<Result>();
+		PostingRanker ranker = new PostingRanker();
+		ranker.rank( postings, this.offset, this.limit, r -> this.emit( r, results ) );
+		this.totalResults = ranker.getTotalResults();
+		return results;
+	}
+	
+	
 	/**
 	 * Performs a hash-based lookup on the database.
 	 * 
@@ -61,11 +348,40 @@ public class Simplehash {
 	 * @return a list of Result objects, empty if no rows returned from the database.
 	 */
 	public List<Result> lookup( KernSpine ks ) {
+		return this.lookup( ks, SpineView.KERN );
+	}
+	
+	
+	/**
+	 * Performs a hash-based lookup on the database, over n-grams taken over the given view.
+	 * 
+	 * A query planner chooses the cheapest way to answer the query, from the length of the filtered query and the 
+	 * number of files containing its n-grams (see {@link QueryPlanner#plan(int[], SpineView)}): hashing the whole query and 
+	 * looking it up directly, if it fits within the stored n-gram sizes; chaining the postings of its consecutive 
+	 * sub-grams of size QUERY_SIZE_MIN, if it is longer than that; or scanning the stored spines without reading the 
+	 * index, which also answers queries shorter than QUERY_SIZE_MIN. The plan and its estimated cost are logged.
+	 * 
+	 * Views other than KERN must be listed in INDEX_VIEWS. The INTERVAL view matches the query in any transposition; 
+	 * the PITCH and RHYTHM views match its notes whatever their rhythm, and its rhythm whatever its notes. Each is a 
+	 * direct lookup on its own n-grams, so it costs the same as a KERN lookup.
+	 * 
+	 * If INDEX_ENGINE is "suffix", KERN queries of any length are instead found by binary search in a suffix array 
+	 * over the stored spines.
+	 * 
+	 * Every hash is first checked against the Bloom filter of its view and n-gram size, so that a query matching 
+	 * nothing is usually answered without reading the index. A query that is a stop-gram is answered from the 
+	 * number of its occurrences in each file, counted on ingestion.
+	 * 
+	 * @since 1.1.0
+	 * @param ks a KernSpine containing the symbolic music data to be hashed and searched for.
+	 * @param view the view of the tokens to search
+	 * @return a list of Result objects, empty if no rows returned from the database.
+	 */
+	public List<Result> lookup( KernSpine ks, SpineView view ) {
 		
 		List<Result> results = new LinkedList<Result>();
 		
-		if ( ks.numTokens() == 0 ) {
-			this.errs.add( "Error obtaining music data from submitted data." );
+		if ( ! this.isSearchable( ks, view ) ) {
 			return results;
 		}
 		
@@ -74,15 +390,59 @@ public class Simplehash {
 		// Apply the same filters as were used in processing source data and remove any trailing rests.
 		List<String> queryTokens = Filters.trim( ks.applyFilters() );
 		
-		// Hash the resulting tokens.
-		int hash = kh.hash( queryTokens );
-		
-		// Log the query to the container logs
-		System.out.println( "Submitting query: " + kh.printTokensAndHash( queryTokens, hash ) );
-		
 		try {
-			Database db = new Database();
-			results = db.selectAllWithHash( hash );
+			int[] values = this.encodeQuery( queryTokens, view );
+			
+			// A token that does not occur in the source data cannot be part of any match.
+			for ( int id : values ) {
+				if ( view == SpineView.KERN && id == TokenDictionary.UNKNOWN ) {
+					System.out.println( "Query contains tokens not in the source data: " + String.join( ", ", queryTokens ) );
+					return results;
+				}
+			}
+			
+			if ( view == SpineView.KERN && Settings.indexEngine().equals( Settings.INDEX_ENGINE_SUFFIX ) ) {
+				return new SuffixLookup( this ).lookup( queryTokens, values );
+			}
+			
+			if ( values.length == 0 ) {
+				System.out.println( "Query has no elements in the " + view.getName() + " view: " + String.join( ", ", queryTokens ) );
+				return results;
+			}
+			
+			// Choose the cheapest way to answer the query, and log it with its estimated cost.
+			QueryPlan plan = new QueryPlanner( this ).plan( values, view );
+			System.out.println( "Query plan for " + values.length + " " + view.getName() + " element(s): " + plan );
+			if ( plan.getStrategy() == QueryPlan.Strategy.SCAN ) {
+				return new ScanLookup( this ).lookup( queryTokens, values, view );
+			}
+			if ( plan.getStrategy() == QueryPlan.Strategy.CHAINED ) {
+				return new ChainedLookup( this ).lookup( queryTokens, values, Math.max( 1, view.span( Settings.querySizeMin() ) ), view, plan.getBitmaps() );
+			}
+			
+			// Hash the resulting tokens.
+			int hash = kh.hash( values, 0, values.length );
+			
+			// Log the query to the container logs
+			System.out.println( "Submitting " + view.getName() + " query: " + kh.printTokensAndHash( queryTokens, hash ) );
+			
+			if ( ! this.index.mightContain( hash, values.length + view.overlap(), view ) ) {
+				System.out.println( "Bloom filter: definite miss." );
+				return results;
+			}
+			
+			if ( this.index.isStopGram( hash, values.length + view.overlap(), view ) ) {
+				return new StopGramLookup( this ).lookup( hash, values.length + view.overlap(), view );
+			}
+			
+			IndexStore store = this.scopedIndexStore();
+			if ( this.fileFilter == null && this.index.aliases().isEmpty() && this.sink == null ) {
+				results = store.selectAllWithHash( hash, values.length + view.overlap(), view, this.offset, this.limit );
+				this.totalResults = store.getTotalResults();
+			} else {
+				// Rank the occurrences in the aliases of the spines too, and only those within the files to search.
+				results = this.rank( this.inScope( this.index.expand( store.selectPostingsWithHash( hash, values.length + view.overlap(), view ) ) ) );
+			}
 		} catch ( Exception e ) {
 			this.errs.add( e.getMessage() );
 		}
@@ -91,17 +451,246 @@ public class Simplehash {
 	}
 	
 	
+	/**
+	 * Performs an approximate lookup, ranking files by the number of the query's sub-grams they contain.
+	 * 
+	 * The query is split into every sub-gram of size QUERY_SIZE_MIN. Each occurrence of a sub-gram votes for the 
+	 * alignment of the query that it implies, i.e. the part and the token offset at which the query would start. A 
+	 * file scores the votes of its best alignment, so a query with a wrong note still ranks the file containing the 
+	 * rest of it highest. Only the {@code k} best files are kept. Offsets are counted in tokens in every view, so in 
+	 * a view that skips rests, the sub-grams of an occurrence vote for the same alignment where its rests fall where 
+	 * those of the query do.
+	 * 
+	 * Each result has the properties "votes", the number of sub-grams found at its best alignment; "score", that 
+	 * number as a fraction of the query's sub-grams; and the position of its best alignment. The occurrences of 
+	 * stop-grams are not stored, so a stop-gram sub-gram instead adds a vote to every file containing it, whatever 
+	 * the alignment.
+	 * 
+	 * @since 1.1.0
+	 * @param ks a KernSpine containing the symbolic music data to be hashed and searched for.
+	 * @param view the view of the tokens to search
+	 * @param k the maximum number of results
+	 * @return a list of at most {@code k} Result objects, best first, empty if no sub-gram was found
+	 */
+	public List<Result> lookupApproximate( KernSpine ks, SpineView view, int k ) {
+		return new ApproximateLookup( this ).lookup( ks, view, k, true );
+	}
+	
+	
+	/**
+	 * Performs a two-stage lookup: a coarse filter on melodic contour, then verification of the exact tokens.
+	 * 
+	 * The first stage ranks files by the number of the query's contour sub-grams they contain, as an approximate 
+	 * lookup over the CONTOUR view, and keeps the best {@code candidates} files. Contour ignores rhythm, 
+	 * transposition and interval size, so this stage is cheap and rarely misses a file that contains the query. The 
+	 * second stage loads the token ids of the candidate files' spines and finds every exact occurrence of the 
+	 * query's tokens, so only the candidates are ever compared token by token.
+	 * 
+	 * Each result has the properties "matches", the number of exact occurrences; "votes", the contour votes of the 
+	 * file; and the positions of the occurrences. The CONTOUR view must be listed in INDEX_VIEWS.
+	 * 
+	 * @since 1.1.0
+	 * @param ks a KernSpine containing the symbolic music data to be hashed and searched for.
+	 * @param candidates the maximum number of files to verify
+	 * @return a list of Result objects, ordered by number of matches, empty if nothing matched
+	 */
+	public List<Result> lookupContour( KernSpine ks, int candidates ) {
+		return new ContourLookup( this ).lookup( ks, candidates );
+	}
+	
+	
+	/**
+	 * Encodes filtered query tokens as the elements of a view.
+	 * 
+	 * For the KERN view the elements are token ids, and tokens that do not occur in the source data are encoded as 
+	 * {@link TokenDictionary#UNKNOWN}. Derived views do not depend on the dictionary, so a query need not share any 
+	 * token with the source data.
+	 * 
+	 * @since 1.1.0
+	 * @param queryTokens the filtered query tokens
+	 * @param view the view of the tokens to search
+	 * @return the elements of the view of the query
+	 * @throws Exception thrown if the token dictionary could not be loaded
+	 */
+	int[] encodeQuery( List<String> queryTokens, SpineView view ) throws Exception {
+		if ( view == SpineView.KERN ) {
+			// Encode the tokens with the same dictionary as the source data.
+			return this.index.dictionary().lookupAll( queryTokens );
+		}
+		
+		int[] codes = new int[ queryTokens.size() ];
+		for ( int i = 0; i < codes.length; i++ ) {
+			codes[i] = KernTokenCodec.encode( queryTokens.get( i ) );
+		}
+		return view.derive( codes );
+	}
+	
+	
+	/**
+	 * Gets the token offset of each element of the view of filtered query tokens, as encoded by 
+	 * {@link #encodeQuery(List, SpineView)}.
+	 * 
+	 * @since 1.1.0
+	 * @param queryTokens the filtered query tokens
+	 * @param view the view of the tokens to search
+	 * @return the token offsets
+	 */
+	static int[] queryOffsets( List<String> queryTokens, SpineView view ) {
+		int[] codes = new int[ queryTokens.size() ];
+		for ( int i = 0; i < codes.length; i++ ) {
+			codes[i] = KernTokenCodec.encode( queryTokens.get( i ) );
+		}
+		return view.offsets( codes );
+	}
+	
+	
+	/**
+	 * Determines whether a query can be searched over a view, adding an error if it cannot.
+	 * 
+	 * @since 1.1.0
+	 * @param ks a KernSpine containing the query
+	 * @param view the view of the tokens to search
+	 * @return true if the query has tokens and the view is indexed
+	 */
+	boolean isSearchable( KernSpine ks, SpineView view ) {
+		if ( ks.numTokens() == 0 ) {
+			this.errs.add( "Error obtaining music data from submitted data." );
+			return false;
+		}
+		
+		if ( view != SpineView.KERN && ! Settings.indexViews().contains( view ) ) {
+			this.errs.add( "Error: the " + view.getName() + " view is not indexed." );
+			return false;
+		}
+		
+		return true;
+	}
+	
+	
+	/**
+	 * Gets the query offsets of the sub-grams covering a query: 0, span, 2 * span, ... plus that of a final 
+	 * sub-gram ending on the last element.
+	 * 
+	 * @since 1.1.0
+	 * @param length the number of elements of the query; at least {@code span}
+	 * @param span the number of elements of each sub-gram
+	 * @return the offsets, in increasing order
+	 */
+	static List<Integer> coveringOffsets( int length, int span ) {
+		List<Integer> queryOffsets = new ArrayList<Integer>();
+		int last = length - span;
+		for ( int q = 0; q < last; q += span ) {
+			queryOffsets.add( q );
+		}
+		queryOffsets.add( last );
+		return queryOffsets;
+	}
+	
+	
+	/**
+	 * Determines whether a query occurs in a sequence at a given start.
+	 * 
+	 * @since 1.1.0
+	 * @param values the elements of the view of a spine
+	 * @param start the index of the element at which the query would start
+	 * @param queryValues the elements of the view of the query
+	 * @return true if every element of the query equals that of the spine at the same distance from the start
+	 */
+	static boolean matchesAt( int[] values, int start, int[] queryValues ) {
+		if ( start + queryValues.length > values.length ) {
+			return false;
+		}
+		int i = 0;
+		while ( i < queryValues.length && values[ start + i ] == queryValues[i] ) {
+			i++;
+		}
+		return i == queryValues.length;
+	}
+	
+		
+	/**
+	 * Selects the occurrences of the sub-gram {@code values[q]} through {@code values[q + span - 1]} of a query.
+	 * 
+	 * Occurrences are looked up by hash among the stored n-grams of {@code span} elements, or, for the KERN view when 
+	 * INDEX_ENGINE is "suffix", found in the suffix array over the stored spines. The occurrences in the aliases of 
+	 * each spine are added, and only those within the datasets and files to search are kept.
+	 * 
+	 * @since 1.1.0
+	 * @param store the index store
+	 * @param values the elements of the view of the query
+	 * @param q the index of the first element of the sub-gram
+	 * @param span the number of elements of the sub-gram
+	 * @param view the view of the tokens to search
+	 * @return a list of {@code Posting} objects, empty if the sub-gram does not occur
+	 * @throws Exception thrown if the spine index could not be built
+	 */
+	List<Posting> selectPostings( IndexStore store, int[] values, int q, int span, SpineView view ) throws Exception {
+		if ( view == SpineView.KERN && Settings.indexEngine().equals( Settings.INDEX_ENGINE_SUFFIX ) ) {
+			return this.inScope( this.index.expand( this.index.spineIndex().find( values, q, q + span ) ) );
+		}
+		return this.inScope( this.index.expand( store.selectPostingsWithHash( new KernHasher().hash( values, q, q + span ), span + view.overlap(), view ) ) );
+	}
+	
+	
+	/**
+	 * Selects the occurrences of several sub-grams of a query at once, as by 
+	 * {@link #selectPostings(IndexStore, int[], int, int, SpineView)}.
+	 * 
+	 * @since 1.1.0
+	 * @param store the index store
+	 * @param values the elements of the view of the query
+	 * @param qs the index of the first element of each sub-gram
+	 * @param span the number of elements of each sub-gram
+	 * @param view the view of the tokens to search
+	 * @return the occurrences of each sub-gram, in the order of {@code qs}
+	 * @throws Exception thrown if the spine index could not be built
+	 */
+	List<List<Posting>> selectPostings( IndexStore store, int[] values, List<Integer> qs, int span, SpineView view ) throws Exception {
+		if ( view == SpineView.KERN && Settings.indexEngine().equals( Settings.INDEX_ENGINE_SUFFIX ) ) {
+			List<List<Posting>> postings = new ArrayList<List<Posting>>();
+			for ( int q : qs ) {
+				postings.add( this.inScope( this.index.expand( this.index.spineIndex().find( values, q, q + span ) ) ) );
+			}
+			return postings;
+		}
+		
+		KernHasher kh = new KernHasher();
+		int[] hashes = new int[ qs.size() ];
+		for ( int i = 0; i < hashes.length; i++ ) {
+			hashes[i] = kh.hash( values, qs.get( i ), qs.get( i ) + span );
+		}
+		List<List<Posting>> postings = new ArrayList<List<Posting>>( hashes.length );
+		for ( List<Posting> found : store.selectPostingsWithHashes( hashes, span + view.overlap(), view ) ) {
+			postings.add( this.inScope( this.index.expand( found ) ) );
+		}
+		return postings;
+	}
+	
+	
 	/**
 	 * Gets the number of distinct filenames in the database. This is the number of items that simplehash will search.
 	 * 
+	 * If lookups are restricted to some datasets or to the files matching a metadata filter, only those files are 
+	 * counted.
+	 * 
 	 * @since 1.0.0
 	 * @return the number of distinct filenames in the database
 	 */
 	public int numItems() {
 		int items = 0;
 		try {
-			Database db = new Database();
-			items = db.numDistinctFiles();
+			if ( this.scope == null && this.fileFilter == null ) {
+				items = this.index.corpusStore().numDistinctFiles();
+			} else {
+				Set<String> filenames = new HashSet<String>();
+				for ( Map.Entry<String, Integer> entry : this.index.fileIds().entrySet() ) {
+					String[] key = entry.getKey().split( "\t", -1 );
+					if ( ( this.scope == null || this.scope.contains( key[0] ) ) && ( this.fileFilter == null || this.fileFilter.contains( entry.getValue() ) ) ) {
+						filenames.add( key[1] );
+					}
+				}
+				items = filenames.size();
+			}
 		} catch ( Exception e ) {
 			this.errs.add( e.getMessage() );
 		}
@@ -1,6 +1,9 @@
 package clefdemo.simplehash;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -10,8 +13,10 @@ import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -21,10 +26,23 @@ import org.springframework.stereotype.Component;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import clefdemo.simplehash.db.Database;
-import clefdemo.simplehash.db.HashRecord;
+import clefdemo.simplehash.db.GramStatistics;
+import clefdemo.simplehash.db.HashRecordBuffer;
+import clefdemo.simplehash.db.IndexStore;
+import clefdemo.simplehash.db.MemoryCorpusStore;
+import clefdemo.simplehash.db.MemoryIndexStore;
+import clefdemo.simplehash.db.PartitionedIndexStore;
+import clefdemo.simplehash.db.ShardedIndexStore;
+import clefdemo.simplehash.db.SpineAlias;
+import clefdemo.simplehash.db.SpineRecord;
 import clefdemo.simplehash.humdrum.KernFile;
 import clefdemo.simplehash.humdrum.KernHasher;
+import clefdemo.simplehash.humdrum.KernMetadata;
 import clefdemo.simplehash.humdrum.KernSpine;
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.humdrum.TokenDictionary;
+import clefdemo.simplehash.index.PostingTable;
+import clefdemo.simplehash.index.SpineIndex;
 
 /**
  * This class initializes the database to be used by the Simplehash algorithm. 
@@ -36,9 +54,83 @@ import clefdemo.simplehash.humdrum.KernSpine;
 @Component
 public class SimplehashInitializer implements CommandLineRunner {
 
-	// Keep a copy of the data as a .csv file just in case it's needed for any use.
-	private Path csvdata = Paths.get( "/usr/local/data/ngrams.csv" );
-	private List<HashRecord> ngramHashRecords = new LinkedList<HashRecord>();
+	// The number of n-grams with the most postings kept for the admin endpoint, besides the stop-grams.
+	private static final int HOT_GRAMS = 100;
+
+	// Keep a copy of the data as a .csv file just in case it's needed for any use, if CSV_EXPORT is set.
+	private Path csvdata = Paths.get( Settings.dataDir(), "ngrams.csv" );
+	private BufferedWriter csv;
+	private HashRecordBuffer ngramHashRecords = new HashRecordBuffer();
+	private Map<Integer, KernMetadata> metadata = new HashMap<Integer, KernMetadata>();
+	private List<SpineRecord> spineRecords = new ArrayList<SpineRecord>();
+	private TokenDictionary dictionary = new TokenDictionary();
+	
+	// Identical content is indexed once: the file ids of files, and the file ids and spine indexes of spines, by the 
+	// fingerprints of their content; the indexed spine of every spine processed; and the spines that were not indexed.
+	private Map<String, Integer> fileFingerprints = new HashMap<String, Integer>();
+	private Map<String, int[]> spineFingerprints = new HashMap<String, int[]>();
+	private Map<Long, int[]> canonicalSpines = new HashMap<Long, int[]>();
+	private List<SpineAlias> aliases = new ArrayList<SpineAlias>();
+	private int duplicateFiles = 0;
+	
+	// The index shared by the queries, filled once the source data has been ingested.
+	private final IndexContext index;
+	
+	
+	/**
+	 * @since 1.1.0
+	 * @param index the index shared by the queries
+	 */
+	public SimplehashInitializer( IndexContext index ) {
+		this.index = index;
+	}
+	
+	
+	/**
+	 * Notes that a spine is an alias of an indexed spine, so that its occurrences are those of the indexed spine.
+	 * 
+	 * @since 1.1.0
+	 * @param canonical the file id and spine index of the indexed spine
+	 * @param fileId the file id of the alias
+	 * @param partname the name of the part of the alias within its Humdrum file
+	 * @param spineIndex the index of the spine of the alias within its Humdrum file
+	 */
+	private void addAlias( int[] canonical, int fileId, String partname, int spineIndex ) {
+		this.ngramHashRecords.addAlias( canonical[0], canonical[1], fileId );
+		this.aliases.add( new SpineAlias( this.ngramHashRecords.datasetName( fileId ), this.ngramHashRecords.filename( fileId ), partname, spineIndex, this.ngramHashRecords.datasetName( canonical[0] ), this.ngramHashRecords.filename( canonical[0] ), canonical[1] ) );
+		this.canonicalSpines.put( ( (long) fileId << 32 ) | ( spineIndex & 0xFFFFFFFFL ), canonical );
+	}
+	
+	
+	/**
+	 * Gets the fingerprint of some content: its SHA-1 digest, in hexadecimal.
+	 * 
+	 * @since 1.1.0
+	 * @param content the bytes of the content
+	 * @return the fingerprint
+	 */
+	private static String fingerprint( byte[] content ) {
+		try {
+			return new BigInteger( 1, MessageDigest.getInstance( "SHA-1" ).digest( content ) ).toString( 16 );
+		} catch ( NoSuchAlgorithmException nsae ) {
+			// Every Java platform supports SHA-1.
+			throw new IllegalStateException( nsae );
+		}
+	}
+	
+	
+	/**
+	 * Gets the fingerprint of a sequence of token ids.
+	 * 
+	 * @since 1.1.0
+	 * @param ids the token ids
+	 * @return the fingerprint
+	 */
+	private static String fingerprint( int[] ids ) {
+		ByteBuffer bytes = ByteBuffer.allocate( ids.length * Integer.BYTES );
+		bytes.asIntBuffer().put( ids );
+		return fingerprint( bytes.array() );
+	}
 	
 	
 	/**
@@ -85,7 +177,7 @@ public class SimplehashInitializer implements CommandLineRunner {
     	
     	List<Path> filesToProcess = new ArrayList<Path>();
     	
-    	Path p = FileSystems.getDefault().getPath( "/usr/local/data" );
+    	Path p = FileSystems.getDefault().getPath( Settings.dataDir() );
  
     	// Collect file paths of symbolic music data files.
     	try {
@@ -114,30 +206,6 @@ public class SimplehashInitializer implements CommandLineRunner {
     }
     
     
-    /**
-     * Creates a new HashRecord object to be used in writing a hashed n-gram to the database.
-     * 
-     * Once the HashRecord is created, this method adds it to a collection of HashRecord objects 
-     * maintained by the current instance of this class.
-     * 
-     * @since 1.0.0
-	 * @param file a Path instance for the current Humdrum file
-	 * @param partname the name of the part within the current Humdrum file
-	 * @param gramSize the current value of n for the n-gram being stored
-	 * @param gramRaw the raw string value of the n-gram
-     * @param hash the hashed value of the n-gram
-     */
-    private void newHashRecord( Path file, String partname, int gramSize, String gramRaw, int hash ) {
-    	if ( this.ngramHashRecords == null ) {
-    		this.ngramHashRecords = new LinkedList<HashRecord>();
-    	}
-    	// Use file path to get related clefdataset.json and extract dataset name
-    	String datasetName = this.getDatasetName( file );
-    	HashRecord record = new HashRecord( datasetName, file.getFileName().toString(), partname, gramSize, gramRaw, hash );
-    	this.ngramHashRecords.add( record );
-    }
-    
-    
     /**
      * Populate the Simplehash database with processed symbolic music source data.
      * 
@@ -146,19 +214,109 @@ public class SimplehashInitializer implements CommandLineRunner {
     private void populateDatabase() {
     	System.out.println( "Populating database..." );
     	Database db = null;
+    	PartitionedIndexStore store = null;
     	try {
     		db = new Database();
+    		
+    		// The index store is partitioned by dataset.
+    		this.index.setDatasetNames( this.ngramHashRecords.datasetNames() );
+    		store = this.index.indexStore();
     	} catch ( Exception e ) {
     		e.printStackTrace();
     	}
     	
     	if ( db instanceof Database ) {
     		int outcome = 0;
-    		if ( this.ngramHashRecords.size() > 0 ) {
-    			outcome = db.bulkInsertHashRecords( this.ngramHashRecords );
+    		if ( ! this.spineRecords.isEmpty() ) {
+    			db.bulkInsertTokens( this.dictionary );
+    			
+    			// The postings of stop-grams are not stored; their files are, in the bitmaps, along with their counts.
+    			GramStatistics stats = new GramStatistics( this.ngramHashRecords, Settings.stopGramPostings() );
+    			outcome = store.bulkAdd( stats.withoutStopGrams(), this.dictionary );
+    			store.snapshot();
+    			db.bulkInsertFileBitmaps( this.ngramHashRecords );
+    			int stopGrams = db.bulkInsertGramStatistics( this.ngramHashRecords, stats, this.dictionary, HOT_GRAMS );
+    			this.index.setStopGrams( db.selectStopGrams() );
+    			this.logHistogram( stats );
+    			System.out.println( stopGrams + " stop-gram(s) of more than " + Settings.stopGramPostings() + " postings are answered from their counts." );
+    			db.bulkInsertMetadata( this.ngramHashRecords, this.metadata );
+    			Map<String, Integer> fileIds = db.selectFileIds();
+    			this.index.setFileIds( fileIds );
+    			db.bulkInsertBloomFilters( this.ngramHashRecords, Settings.bloomFpp() );
+    			this.index.setBloomFilters( db.selectBloomFilters() );
+    			db.bulkInsertSpines( this.spineRecords );
+    			this.index.setSpineTokens( db.numSpineTokens() );
+    			db.bulkInsertAliases( this.aliases );
+    			this.index.setAliases( this.aliases );
+    			
+    			// Stores held in memory hold the catalog in memory too, so that queries never read SQLite.
+    			if ( ! Settings.indexStore().equals( Settings.INDEX_STORE_SQLITE ) ) {
+    				this.index.setCorpusStore( new MemoryCorpusStore( this.ngramHashRecords, stats, this.metadata, this.spineRecords, fileIds ) );
+    			}
+    		}
+    		
+    		// Queries must be encoded with the same dictionary as the source data.
+    		this.index.setDictionary( this.dictionary );
+    		
+    		if ( Settings.indexEngine().equals( Settings.INDEX_ENGINE_SUFFIX ) ) {
+    			SpineIndex index = new SpineIndex( this.spineRecords );
+    			this.index.setSpineIndex( index );
+    			System.out.println( "Suffix array built over " + index.size() + " tokens." );
     		}
     		
-    		System.out.println( "Simplehash database initialized with " + outcome + " records." );
+    		// Share the tables of stores held in memory with the queries.
+    		Map<String, PostingTable[]> tables = new HashMap<String, PostingTable[]>();
+    		for ( Map.Entry<String, IndexStore> partition : store.getPartitions().entrySet() ) {
+    			IndexStore[] shards = partition.getValue() instanceof ShardedIndexStore ? ( (ShardedIndexStore) partition.getValue() ).getShards() : new IndexStore[] { partition.getValue() };
+    			if ( shards[0] instanceof MemoryIndexStore ) {
+    				PostingTable[] shardTables = new PostingTable[ shards.length ];
+    				for ( int i = 0; i < shards.length; i++ ) {
+    					shardTables[i] = ( (MemoryIndexStore) shards[i] ).getTable();
+    				}
+    				tables.put( partition.getKey(), shardTables );
+    			}
+    		}
+    		this.index.setPostingTables( tables );
+    		
+    		System.out.println( "Simplehash indexed " + this.spineRecords.size() + " distinct spine(s); " + this.aliases.size() + " duplicate spine(s), including those of " + this.duplicateFiles + " duplicate file(s), are aliases of these." );
+    		System.out.println( "Simplehash " + Settings.indexStore() + " index store of " + store.getPartitions().size() + " dataset partition(s) of " + Settings.indexShards() + " shard(s) initialized with " + outcome + " records: " + store.numGrams() + " distinct n-grams and " + store.numPostings() + " postings." );
+    		store.close();
+    	}
+    }
+    
+    
+    /**
+     * Releases the records of the ingestion once they have been stored, so that this component, which lives as long 
+     * as the application, does not keep every n-gram and spine on the heap. The dictionary and the aliases are kept 
+     * by {@link Simplehash}.
+     * 
+     * @since 1.1.0
+     */
+    private void release() {
+    	this.ngramHashRecords = null;
+    	this.spineRecords = null;
+    	this.metadata = null;
+    	this.fileFingerprints = null;
+    	this.spineFingerprints = null;
+    	this.canonicalSpines = null;
+    }
+    
+    
+    /**
+     * Logs the histogram of the lengths of the posting lists of each view and n-gram size.
+     * 
+     * @since 1.1.0
+     * @param stats the statistics of the n-grams
+     */
+    private void logHistogram( GramStatistics stats ) {
+    	for ( Map.Entry<String, long[]> entry : stats.histogram().entrySet() ) {
+    		StringBuilder sb = new StringBuilder( "Posting lengths of " + entry.getKey().replace( '\t', '/' ) + "-grams:" );
+    		for ( int bucket = 0; bucket < entry.getValue().length; bucket++ ) {
+    			if ( entry.getValue()[bucket] > 0 ) {
+    				sb.append( " " ).append( 1L << bucket ).append( "+: " ).append( entry.getValue()[bucket] );
+    			}
+    		}
+    		System.out.println( sb );
     	}
     }
     
@@ -166,7 +324,14 @@ public class SimplehashInitializer implements CommandLineRunner {
     /**
      * Processes a Kern file and adds its ngrams to the database.
      * 
-     * For every ngram size between {@code min} and {@code max} in {@code file}, insert hashed ngrams into the database.
+     * For every ngram size between {@code min} and {@code max} in {@code file}, insert hashed ngrams into the database. 
+     * If INDEX_MODE is "chained", only ngrams of size {@code min} are inserted; longer queries are then answered by 
+     * chaining the offsets of their sub-grams. Ngrams are taken over the KERN view of each spine, and over any other 
+     * views listed in INDEX_VIEWS. If INDEX_ENGINE is "suffix", the KERN view is searched with a suffix array over the 
+     * stored spines instead, and no KERN ngrams are stored.
+     * 
+     * A file or spine whose content is identical to that of one already processed is not hashed; it is stored as an 
+     * alias of that one, and its occurrences are listed when results are returned.
      * 
      * @since 1.0.0
      * @param file a Path instance for the current Humdrum file
@@ -179,26 +344,76 @@ public class SimplehashInitializer implements CommandLineRunner {
     	KernFile kf = KernFile.parse( file.toAbsolutePath() );
     	KernHasher kh = new KernHasher();
     	
-    	// Starting at min, generate ngrams for every spine in this Kern file.
-    	int gramSize = min;
-    	while ( gramSize <= max ) {
-    		// Iterate through the KernSpines in this KernFile.
-    		for ( Map.Entry<Integer, KernSpine> entry : kf.getSpines().entrySet() ) {
-    			
-    			// Get the current KernSpine.
-    			KernSpine ks = entry.getValue();
+    	if ( Settings.indexMode().equals( Settings.INDEX_MODE_CHAINED ) ) {
+    		max = min;
+    	}
+    	
+    	List<SpineView> views = new ArrayList<SpineView>();
+    	if ( Settings.indexEngine().equals( Settings.INDEX_ENGINE_HASH ) ) {
+    		views.add( SpineView.KERN );
+    	}
+    	views.addAll( Settings.indexViews() );
+    	
+    	// Use file path to get related clefdataset.json and extract dataset name
+    	String datasetName = this.getDatasetName( file );
+    	String filename = file.getFileName().toString();
+    	int fileId = this.ngramHashRecords.addFile( datasetName, filename );
+    	this.metadata.put( fileId, kf.getMetadata() );
+    	
+    	// A file identical to one already processed, e.g. the same score in another dataset, is not indexed again: 
+    	// each of its spines is an alias of the spine indexed for the same spine of that file.
+    	Integer original = this.fileFingerprints.putIfAbsent( fingerprint( Files.readAllBytes( file ) ), fileId );
+    	if ( original != null ) {
+    		if ( original != fileId ) {
+    			for ( KernSpine ks : kf.getSpines().values() ) {
+    				int[] canonical = this.canonicalSpines.get( ( (long) original << 32 ) | ( ks.indexInFile() & 0xFFFFFFFFL ) );
+    				if ( canonical != null ) {
+    					this.addAlias( canonical, fileId, ks.getName(), ks.indexInFile() );
+    				}
+    			}
+    			this.duplicateFiles++;
+    		}
+    		return;
+    	}
+    	
+    	// Generate ngrams for every spine in this Kern file.
+    	for ( Map.Entry<Integer, KernSpine> entry : kf.getSpines().entrySet() ) {
+    		
+    		// Get the current KernSpine, and encode its filtered data as token ids.
+    		KernSpine ks = entry.getValue();
+    		int[] ids = ks.encode( this.dictionary );
+    		
+    		// A spine whose filtered tokens are identical to those of a spine already indexed is only an alias of it.
+    		int[] spine = new int[] { fileId, ks.indexInFile() };
+    		int[] canonical = this.spineFingerprints.putIfAbsent( fingerprint( ids ), spine );
+    		if ( canonical != null ) {
+    			this.addAlias( canonical, fileId, ks.getName(), ks.indexInFile() );
+    			continue;
+    		}
+    		this.canonicalSpines.put( ( (long) fileId << 32 ) | ( ks.indexInFile() & 0xFFFFFFFFL ), spine );
+    		
+    		// Keep the whole spine, so that candidate matches can be verified against it.
+    		this.spineRecords.add( new SpineRecord( datasetName, filename, ks.getName(), ks.indexInFile(), ids ) );
+    		
+    		for ( SpineView view : views ) {
+    			int[] values = view.derive( ids, this.dictionary );
+    			int spanMin = Math.max( 1, view.span( min ) );
+    			this.ngramHashRecords.addSpine( fileId, ks.getName(), ks.indexInFile(), view, values, view.offsets( ids, this.dictionary ) );
     			
-    			// Generate, and loop over, ngrams of size gramSize. Use the KernSpine's filtered data.
-    			for ( List<String> ngram : kh.ngrams( ks.applyFilters(), gramSize ) ) {
-    				// Hash the ngram
-    				int hash = kh.hash( ngram );
-    				// Create a new HashRecord object
-    				this.newHashRecord( file, ks.getName(), gramSize, kh.ngramToString(ngram), hash );
-    				// Write a line of CSV data 
-    				this.writeCSV( file, ks.getName(), gramSize, kh.ngramToString(ngram), hash );
+    			// Starting at every offset within the view, hash the ngrams of every size from min to max.
+    			for ( int offset = 0; offset + spanMin <= values.length; offset++ ) {
+    				int[] hashes = kh.hashes( values, offset, spanMin, view.span( max ) );
+    				for ( int k = 0; k < hashes.length; k++ ) {
+    					int gramSize = spanMin + k + view.overlap();
+    					// Add a record to the buffer
+    					this.ngramHashRecords.add( gramSize, hashes[k], offset );
+    					// Write a line of CSV data 
+    					if ( this.csv != null ) {
+    						this.writeCSV( filename, ks.getName(), gramSize, view.format( values, offset, offset + view.span( gramSize ), this.dictionary ), hashes[k] );
+    					}
+    				}
     			}
     		}
-    		gramSize++;
     	}
     }
     
@@ -223,8 +438,17 @@ public class SimplehashInitializer implements CommandLineRunner {
     	int max = Integer.parseInt( qsMax );
     	
     	if ( ! filesToProcess.isEmpty() ) {
-    		for ( Path file : filesToProcess ) {
-    			this.processFile( file, min, max );
+    		// The CSV file is opened once for the whole ingestion, and only if it is wanted.
+    		this.csv = Settings.csvExport() ? Files.newBufferedWriter( this.csvdata, StandardOpenOption.CREATE, StandardOpenOption.APPEND ) : null;
+    		try {
+    			for ( Path file : filesToProcess ) {
+    				this.processFile( file, min, max );
+    			}
+    		} finally {
+    			if ( this.csv != null ) {
+    				this.csv.close();
+    				this.csv = null;
+    			}
     		}
     	}
     }
@@ -233,12 +457,18 @@ public class SimplehashInitializer implements CommandLineRunner {
     /**
      * Implementation of Spring Boot CommandLineRunner.run(String... args) interface method.
      * 
-     * Will be run on startup after the Spring application context is created.
+     * Will be run on startup after the Spring application context is created. In coordinator mode, i.e. when PEERS 
+     * is set, the peers hold the data, so nothing is ingested.
      */
 	@Override
 	public void run(String... args) throws Exception {
+		if ( ! Settings.peers().isEmpty() ) {
+			System.out.println( "Simplehash is coordinating peers " + Settings.peers() + "." );
+			return;
+		}
 		this.initialize();
 		this.populateDatabase();
+		this.release();
 	}
 	
 	
@@ -246,18 +476,16 @@ public class SimplehashInitializer implements CommandLineRunner {
 	 * A dumb, Simplehash-specific method for writing CSV data. Does not quote or otherwise escape values.
 	 * 
 	 * @since 1.0.0
-	 * @param file a Path instance for the current Humdrum file
+	 * @param filename the name of the current Humdrum file
 	 * @param partname the name of the part within the current Humdrum file
 	 * @param gramSize the current value of n for the n-gram being stored
 	 * @param gramRaw the raw string value of the n-gram
 	 * @param hash the hashed value of the n-gram
 	 * @throws IOException thrown if data could not be written to disk
 	 */
-	private void writeCSV( Path file, String partname, int gramSize, String gramRaw, int hash ) throws IOException {
-    	
-    	String line = String.format( "%s,%s,%d,%s,%d\n", file.getFileName().toString(), partname, gramSize, gramRaw, hash );
+	private void writeCSV( String filename, String partname, int gramSize, String gramRaw, int hash ) throws IOException {
     	
-    	Files.write( this.csvdata, line.getBytes(), StandardOpenOption.APPEND );
+    	this.csv.append( filename ).append( ',' ).append( partname ).append( ',' ).append( Integer.toString( gramSize ) ).append( ',' ).append( gramRaw ).append( ',' ).append( Integer.toString( hash ) ).append( '\n' );
     }
 
 }
@@ -0,0 +1,72 @@
+package clefdemo.simplehash;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.index.TopK;
+
+/**
+ * A direct lookup of a stop-gram, answered from the number of its occurrences in each file counted on ingestion, as 
+ * its postings are not stored.
+ * 
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+class StopGramLookup {
+	
+	private final Simplehash search;
+	private final IndexContext index;
+	
+	/**
+	 * @since 1.1.0
+	 * @param search the instance whose query this answers, with its scope, metadata filter, page and sink
+	 */
+	StopGramLookup( Simplehash search ) {
+		this.search = search;
+		this.index = search.getIndex();
+	}
+	
+	
+	/**
+	 * Performs a direct lookup of a stop-gram from the number of its occurrences in each file, counted on ingestion.
+	 * 
+	 * The postings of a stop-gram are not stored, so its results have the property "matches" but no positions.
+	 * 
+	 * @since 1.1.0
+	 * @param hash the hashed query
+	 * @param gramSize the size of the n-gram that was hashed, in tokens
+	 * @param view the view over which the n-gram was taken
+	 * @return a list of Result objects, ordered by number of matches
+	 * @throws Exception thrown if the database is not available
+	 */
+	List<Result> lookup( int hash, int gramSize, SpineView view ) throws Exception {
+		
+		System.out.println( "Stop-gram: answering from the counts of its occurrences." );
+		
+		Map<Integer, String> keys = this.index.fileKeys();
+		TopK<Result> top = new TopK<Result>( this.search.pageEnd() );
+		int total = 0;
+		for ( Map.Entry<Integer, Integer> entry : this.index.corpusStore().selectStopGramCounts( hash, gramSize, view ).entrySet() ) {
+			String fileKey = keys.get( entry.getKey() );
+			if ( fileKey == null || ! this.search.inScope( fileKey, entry.getKey() ) ) {
+				continue;
+			}
+			String[] file = fileKey.split( "\t", -1 );
+			Result r = new Result( 0, file[0], file[1] );
+			r.setProperty( "matches", entry.getValue() );
+			top.offer( r, entry.getValue() );
+			total++;
+		}
+		this.search.setTotalResults( total );
+		
+		List<Result> results = new LinkedList<Result>();
+		int resultid = this.search.getOffset() + 1;
+		for ( Result r : this.search.page( top ) ) {
+			r.setId( resultid++ );
+			this.search.emit( r, results );
+		}
+		return results;
+	}
+}
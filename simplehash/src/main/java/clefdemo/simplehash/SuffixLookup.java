@@ -0,0 +1,42 @@
+package clefdemo.simplehash;
+
+import java.util.List;
+
+/**
+ * An exact lookup of the KERN view of a query of any length in the suffix array over the stored spines, when 
+ * INDEX_ENGINE is "suffix".
+ * 
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+class SuffixLookup {
+	
+	private final Simplehash search;
+	private final IndexContext index;
+	
+	/**
+	 * @since 1.1.0
+	 * @param search the instance whose query this answers, with its scope, metadata filter, page and sink
+	 */
+	SuffixLookup( Simplehash search ) {
+		this.search = search;
+		this.index = search.getIndex();
+	}
+	
+	
+	/**
+	 * Performs an exact lookup of the KERN view of a query of any length in the suffix array over the stored spines.
+	 * 
+	 * @since 1.1.0
+	 * @param queryTokens the filtered query tokens, for logging
+	 * @param ids the token ids of the filtered query tokens, none of them unknown
+	 * @return a list of Result objects, ordered by number of matches, empty if nothing matched
+	 * @throws Exception thrown if the spine index could not be built
+	 */
+	List<Result> lookup( List<String> queryTokens, int[] ids ) throws Exception {
+		
+		System.out.println( "Submitting suffix array query: " + String.join( " ", queryTokens ) );
+		
+		return this.search.rank( this.search.inScope( this.index.expand( this.index.spineIndex().find( ids, 0, ids.length ) ) ) );
+	}
+}
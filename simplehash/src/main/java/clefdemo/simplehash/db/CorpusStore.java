@@ -0,0 +1,107 @@
+package clefdemo.simplehash.db;
+
+import java.util.List;
+import java.util.Map;
+
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.index.RoaringBitmap;
+
+/**
+ * The catalog of the source data that lookups read besides the postings of the index store: the files and their
+ * reference records, the set of files containing each n-gram, the counts of the stop-grams, and the token ids of
+ * whole spines.
+ *
+ * {@link Database} reads the catalog from SQLite. When INDEX_STORE is not "sqlite", {@link MemoryCorpusStore} holds
+ * it in memory instead, built with the index store on ingestion, so that queries do not read SQLite at all.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public interface CorpusStore {
+
+	/**
+	 * Gets the number of distinct filenames of the processed files, including the files whose spines are all aliases.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int numDistinctFiles();
+
+
+	/**
+	 * Estimates the number of tokens of the stored spines, not counting their aliases.
+	 *
+	 * @since 1.1.0
+	 * @return at least the number of tokens of the stored spines
+	 */
+	public long numSpineTokens();
+
+
+	/**
+	 * Selects the token ids of every stored spine.
+	 *
+	 * @since 1.1.0
+	 * @return a list of {@code SpineRecord} objects, in the order in which they were stored
+	 */
+	public List<SpineRecord> selectAllSpines();
+
+
+	/**
+	 * Selects the sets of files in which each of the given hashes occurs.
+	 *
+	 * @since 1.1.0
+	 * @param hashes hashed n-grams to select
+	 * @param gramSize the size of the n-grams that were hashed, in tokens
+	 * @param view the view over which the n-grams were taken
+	 * @return the file ids of each hash, in the order of {@code hashes}; empty for a hash that does not occur
+	 */
+	public RoaringBitmap[] selectFileBitmaps( int[] hashes, int gramSize, SpineView view );
+
+
+	/**
+	 * Selects the file id of every file.
+	 *
+	 * @since 1.1.0
+	 * @return the file ids, keyed by dataset name and filename separated by a tab
+	 */
+	public Map<String, Integer> selectFileIds();
+
+
+	/**
+	 * Selects the ids of the files whose reference records match every given filter.
+	 *
+	 * Composer and catalog match by prefix, ignoring case; the catalog is matched with its number, e.g. "BWV 772". A
+	 * range of years matches the files whose composer lived during some part of it; files without a year of birth
+	 * never match a range.
+	 *
+	 * @since 1.1.0
+	 * @param composer a prefix of the composer's name, or null for any composer
+	 * @param catalog a prefix of the catalog and number, or null for any catalog
+	 * @param fromYear the first year of the range, or null for no lower bound
+	 * @param toYear the last year of the range, or null for no upper bound
+	 * @return the ids of the matching files
+	 */
+	public RoaringBitmap selectFileIdsWithMetadata( String composer, String catalog, Integer fromYear, Integer toYear );
+
+
+	/**
+	 * Selects the token ids of every spine of the given files.
+	 *
+	 * @since 1.1.0
+	 * @param files the files, each an array of the dataset name and the filename
+	 * @return a list of {@code SpineRecord} objects, in the order of {@code files} and then by spine
+	 */
+	public List<SpineRecord> selectSpines( List<String[]> files );
+
+
+	/**
+	 * Selects the number of occurrences of a stop-gram in each file containing it.
+	 *
+	 * @since 1.1.0
+	 * @param hash a hashed n-gram to select
+	 * @param gramSize the size of the n-gram that was hashed, in tokens
+	 * @param view the view over which the n-gram was taken
+	 * @return the number of occurrences, keyed by file id in ascending order; empty if the n-gram is not a stop-gram
+	 */
+	public Map<Integer, Integer> selectStopGramCounts( int hash, int gramSize, SpineView view );
+}
@@ -1,7 +1,15 @@
 package clefdemo.simplehash.db;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -11,17 +19,30 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 
 import clefdemo.simplehash.Result;
+import clefdemo.simplehash.Settings;
+import clefdemo.simplehash.humdrum.KernMetadata;
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.humdrum.TokenDictionary;
+import clefdemo.simplehash.index.BloomFilter;
+import clefdemo.simplehash.index.LongIntCounter;
+import clefdemo.simplehash.index.RoaringBitmap;
+import clefdemo.simplehash.index.TopK;
 
 /**
  * This class handles database functionality for Simplehash.
  * 
+ * Besides the tables that every index store relies on, such as the token dictionary, this class is the SQLite 
+ * {@link IndexStore}, used when INDEX_STORE is "sqlite", and the SQLite {@link CorpusStore}, from which lookups read 
+ * the files, their bitmaps and the spines unless INDEX_STORE holds them in memory.
+ * 
  * @author Max DeCurtins
  * @since 1.0.0
  */
-public class Database {
+public class Database implements IndexStore, CorpusStore {
 	
 	private String connectionUrl = "jdbc:sqlite:";
 	private String dbPath;
+	private int totalResults;
 
 	
 	/**
@@ -41,6 +62,35 @@ public class Database {
 	}
 	
 	
+	/**
+	 * Uses the database file at the given path instead of DB_PATH, such as that of a shard of the index.
+	 * 
+	 * @since 1.1.0
+	 * @param dbPath a fully-qualified path to a database file
+	 */
+	public Database( String dbPath ) {
+		this.dbPath = dbPath;
+		this.connectionUrl = this.connectionUrl + this.dbPath;
+	}
+	
+	
+	/**
+	 * Inserts the aggregated rows and the posting lists of the records, each in its own transaction.
+	 * 
+	 * @since 1.1.0
+	 * @param records the records of hashed n-grams of symbolic music data
+	 * @param dict the dictionary that assigned the token ids of the records
+	 * @return the number of records added, or 0 if the rows could not be inserted
+	 */
+	@Override
+	public int bulkAdd( HashRecordBuffer records, TokenDictionary dict ) {
+		if ( this.bulkInsertHashRecords( records, dict ) == 0 || this.bulkInsertPostings( records ) == 0 ) {
+			return 0;
+		}
+		return records.size();
+	}
+	
+	
 	/**
 	 * Begin a transaction on the given connection.
 	 * 
@@ -59,13 +109,88 @@ public class Database {
 	
 	
 	/**
-	 * Inserts records for hashed n-grams of symbolic music data.
+	 * Gets the path of the database file.
 	 * 
-	 * @since 1.0.0
-	 * @param records a list of records of hashed n-grams of symbolic music data
-	 * @return the number of rows inserted as part of this transaction
+	 * @since 1.1.0
+	 * @return
+	 */
+	public String getDbPath() {
+		return this.dbPath;
+	}
+	
+	
+	/**
+	 * Adds the positions of the occurrences of a given hash to the results for the files in which it occurs.
+	 * 
+	 * Each result gets a "positions" property, a list of the part name, spine index and token offset of each 
+	 * occurrence, up to MAX_MATCH_POSITIONS; and a "parts" property, the names of the parts in which it occurs. The 
+	 * offset is that of the n-gram's first token, whatever the view.
+	 * 
+	 * @since 1.1.0
+	 * @param conn the current database connection
+	 * @param hash a hashed n-gram
+	 * @param gramSize the size of the n-gram that was hashed, in tokens, or 0 for n-grams of every size
+	 * @param view the view over which the n-gram was taken
+	 * @param byFile the results to which to add positions, keyed by dataset name and filename separated by a tab
+	 * @throws SQLException thrown if the posting lists could not be selected
+	 */
+	private void addMatchPositions( Connection conn, int hash, int gramSize, SpineView view, Map<String, Result> byFile ) throws SQLException {
+		if ( byFile.isEmpty() ) {
+			return;
+		}
+		
+		String sql = "SELECT dataset_name, filename, partname, spine_index, positions FROM simplehash_postings WHERE gram_hashed = ? AND gram_view = ?" + ( gramSize > 0 ? " AND gram_size = ?" : "" ) + " ORDER BY spine_index;";
+		int cap = Settings.maxMatchPositions();
+		
+		PreparedStatement pstmt = conn.prepareStatement( sql );
+		pstmt.setInt( 1, hash );
+		pstmt.setString( 2, view.getName() );
+		if ( gramSize > 0 ) {
+			pstmt.setInt( 3, gramSize );
+		}
+		
+		ResultSet rs = pstmt.executeQuery();
+		while ( rs.next() ) {
+			Result r = byFile.get( rs.getString( "dataset_name" ) + "\t" + rs.getString( "filename" ) );
+			if ( r != null ) {
+				for ( int offset : PostingCodec.decode( rs.getBytes( "positions" ) ) ) {
+					r.addPosition( rs.getString( "partname" ), rs.getInt( "spine_index" ), offset, cap );
+				}
+			}
+		}
+		rs.close();
+	}
+	
+	
+	/**
+	 * Inserts a Bloom filter of the hashes of each view and n-gram size, replacing any stored filter.
+	 * 
+	 * Each filter is sized for the number of distinct hashes of its view and n-gram size.
+	 * 
+	 * @since 1.1.0
+	 * @param records the records of hashed n-grams of symbolic music data
+	 * @param fpp the false-positive rate of the filters
+	 * @return the number of filters inserted as part of this transaction
 	 */
-	public int bulkInsertHashRecords( List<HashRecord> records ) {
+	public int bulkInsertBloomFilters( HashRecordBuffer records, double fpp ) {
+		
+		// Group the hashes of the records by view and n-gram size, i.e. by the low half of their keys.
+		Map<Integer, int[]> hashes = new LinkedHashMap<Integer, int[]>();
+		Map<Integer, Integer> lengths = new HashMap<Integer, Integer>();
+		for ( int i = 0; i < records.size(); i++ ) {
+			Integer key = (int) records.gramKey( i );
+			int[] group = hashes.get( key );
+			int length = lengths.getOrDefault( key, 0 );
+			if ( group == null ) {
+				group = new int[64];
+			} else if ( length == group.length ) {
+				group = Arrays.copyOf( group, length * 2 );
+			}
+			group[length] = records.gramHashed( i );
+			hashes.put( key, group );
+			lengths.put( key, length + 1 );
+		}
+		
 		Connection conn = this.connect();
 		
 		int inserted = 0;
@@ -74,36 +199,36 @@ public class Database {
 			// BEGIN TRANSACTION.
 			conn = this.beginTransaction( conn );
 			
-			String sql = "INSERT INTO simplehash ( dataset_name, filename, partname, gram_size, gram_raw, gram_hashed ) VALUES ( ?, ?, ?, ?, ?, ? );";
-			PreparedStatement ps = null;
+			String sql = "INSERT OR REPLACE INTO simplehash_blooms ( gram_view, gram_size, bits ) VALUES ( ?, ?, ? );";
 			
 			try {
-				ps = conn.prepareStatement( sql );
-			} catch ( SQLException sqle ) {
-				sqle.printStackTrace();
-			}
-			
-			// If the statement was successfully prepared.
-			if ( ps != null ) {
-				
-				for ( HashRecord record : records ) {
-					try {
-						// Just enumerate the parameters.
-						ps.setString( 1, record.getDatasetName() );
-						ps.setString( 2, record.getFilename() );
-						ps.setString( 3, record.getPartname() );
-						ps.setInt( 4, record.getGramSize() );
-						ps.setString( 5, record.getGramRaw() );
-						ps.setInt( 6, record.getGramHashed() );
-						
-						// Increment the count of inserted rows.
-						inserted += ps.executeUpdate();
-						ps.clearParameters();
-					} catch ( SQLException sqle ) {
-						sqle.printStackTrace();
+				PreparedStatement ps = conn.prepareStatement( sql );
+				for ( Map.Entry<Integer, int[]> entry : hashes.entrySet() ) {
+					int length = lengths.get( entry.getKey() );
+					int[] group = entry.getValue();
+					Arrays.sort( group, 0, length );
+					
+					// Size the filter for the distinct hashes.
+					int distinct = 0;
+					for ( int i = 0; i < length; i++ ) {
+						if ( i == 0 || group[i] != group[ i - 1 ] ) {
+							distinct++;
+						}
 					}
+					BloomFilter filter = BloomFilter.create( distinct, fpp );
+					for ( int i = 0; i < length; i++ ) {
+						filter.add( group[i] );
+					}
+					
+					long key = entry.getKey();
+					ps.setString( 1, HashRecordBuffer.keyView( key ).getName() );
+					ps.setInt( 2, HashRecordBuffer.keyGramSize( key ) );
+					ps.setBytes( 3, filter.serialize() );
+					inserted += ps.executeUpdate();
+					ps.clearParameters();
 				}
-				
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
 			}
 			
 			// COMMIT TRANSACTION
@@ -114,161 +239,1538 @@ public class Database {
 	
 	
 	/**
-	 * Commits any operations performed against the connection passed, and then closes the connection.
+	 * Inserts the set of files in which each hashed n-gram occurs, as a compressed bitmap of file ids.
 	 * 
-	 * @since 1.0.0
-	 * @param conn the current database connection
+	 * Files not yet in the simplehash_files table are added to it first, each getting a new file id.
+	 * 
+	 * @since 1.1.0
+	 * @param records the records of hashed n-grams of symbolic music data
+	 * @return the number of bitmaps inserted as part of this transaction
 	 */
-	private void commitTransaction( Connection conn ) {
-		try {
-			conn.commit();
-		} catch ( SQLException sqle ) {
-			sqle.printStackTrace();
-		} finally {
-			this.disconnect( conn );
+	public int bulkInsertFileBitmaps( HashRecordBuffer records ) {
+		Connection conn = this.connect();
+		
+		int inserted = 0;
+		if ( conn != null ) {
+			
+			// BEGIN TRANSACTION.
+			conn = this.beginTransaction( conn );
+			
+			String files = "INSERT OR IGNORE INTO simplehash_files ( dataset_name, filename ) VALUES ( ?, ? );";
+			String sql = "INSERT INTO simplehash_bitmaps ( gram_hashed, gram_size, gram_view, files ) VALUES ( ?, ?, ?, ? );";
+			
+			try {
+				PreparedStatement ps = conn.prepareStatement( files );
+				for ( int file = 0; file < records.numFiles(); file++ ) {
+					ps.setString( 1, records.datasetName( file ) );
+					ps.setString( 2, records.filename( file ) );
+					ps.executeUpdate();
+					ps.clearParameters();
+				}
+				
+				// Map the file ids of the buffer to those of the database.
+				Map<String, Integer> fileIds = this.selectFileIds( conn );
+				int[] ids = new int[ records.numFiles() ];
+				for ( int file = 0; file < ids.length; file++ ) {
+					ids[file] = fileIds.get( records.datasetName( file ) + "\t" + records.filename( file ) );
+				}
+				
+				// Group the file ids of the records by hash, view and n-gram size, numbering each group from 1.
+				LongIntCounter groups = new LongIntCounter( 1024 );
+				List<RoaringBitmap> bitmaps = records.fileBitmaps( ids, groups );
+				
+				ps = conn.prepareStatement( sql );
+				for ( int slot = 0; slot < groups.capacity(); slot++ ) {
+					if ( ! groups.isOccupied( slot ) ) {
+						continue;
+					}
+					long key = groups.keyAt( slot );
+					ps.setInt( 1, HashRecordBuffer.keyHash( key ) );
+					ps.setInt( 2, HashRecordBuffer.keyGramSize( key ) );
+					ps.setString( 3, HashRecordBuffer.keyView( key ).getName() );
+					ps.setBytes( 4, bitmaps.get( groups.countAt( slot ) - 1 ).serialize() );
+					inserted += ps.executeUpdate();
+					ps.clearParameters();
+				}
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			}
+			
+			// COMMIT TRANSACTION
+			this.commitTransaction( conn );
 		}
+		return inserted;
 	}
 	
 	
 	/**
-	 * Connects to the SQLite database, and creates the simplehash table if not exists.
+	 * Inserts records for hashed n-grams of symbolic music data.
+	 * 
+	 * The records are aggregated first: one row is inserted per hash, view, n-gram size, file and part, with the 
+	 * number of occurrences of the n-gram in that part. The text of each distinct n-gram is inserted once, into the 
+	 * simplehash_grams table.
 	 * 
 	 * @since 1.0.0
-	 * @return a connection to the database, or null if a connection could not be opened
+	 * @param records the records of hashed n-grams of symbolic music data
+	 * @param dict the dictionary that assigned the token ids of the records
+	 * @return the number of rows inserted into the simplehash table as part of this transaction
 	 */
-	private Connection connect() {
-		Connection conn = null;
-		try {
-			conn = DriverManager.getConnection( this.connectionUrl );
-			System.out.println( "SQLite: Connection established." );
-		} catch ( SQLException sqle ) {
-			sqle.printStackTrace();
+	public int bulkInsertHashRecords( HashRecordBuffer records, TokenDictionary dict ) {
+		
+		// Group the spines of the records by part, since a part may have several spines and views.
+		List<List<Integer>> parts = new ArrayList<List<Integer>>();
+		for ( int spine = 0; spine < records.numSpines(); spine++ ) {
+			int part = records.spinePart( spine );
+			while ( parts.size() <= part ) {
+				parts.add( new ArrayList<Integer>() );
+			}
+			parts.get( part ).add( spine );
 		}
 		
+		Connection conn = this.connect();
+		
+		int inserted = 0;
 		if ( conn != null ) {
-			this.createTable( conn );
+			
+			// BEGIN TRANSACTION.
+			conn = this.beginTransaction( conn );
+			
+			String sql = "INSERT INTO simplehash ( dataset_name, filename, partname, gram_size, gram_hashed, gram_view, occurrences ) VALUES ( ?, ?, ?, ?, ?, ?, ? );";
+			String gramsSql = "INSERT OR IGNORE INTO simplehash_grams ( gram_hashed, gram_view, gram_size, gram_raw ) VALUES ( ?, ?, ?, ? );";
+			
+			try {
+				PreparedStatement ps = conn.prepareStatement( sql );
+				for ( List<Integer> spines : parts ) {
+					
+					// Count the occurrences of each n-gram in the part.
+					LongIntCounter occurrences = new LongIntCounter( 256 );
+					for ( int spine : spines ) {
+						for ( int i = records.firstRecord( spine ); i < records.endRecord( spine ); i++ ) {
+							occurrences.add( records.gramKey( i ), 1 );
+						}
+					}
+					
+					int first = spines.get( 0 );
+					int file = records.spineFile( first );
+					for ( int slot = 0; slot < occurrences.capacity(); slot++ ) {
+						if ( ! occurrences.isOccupied( slot ) ) {
+							continue;
+						}
+						long key = occurrences.keyAt( slot );
+						
+						// Just enumerate the parameters.
+						ps.setString( 1, records.datasetName( file ) );
+						ps.setString( 2, records.filename( file ) );
+						ps.setString( 3, records.partname( first ) );
+						ps.setInt( 4, HashRecordBuffer.keyGramSize( key ) );
+						ps.setInt( 5, HashRecordBuffer.keyHash( key ) );
+						ps.setString( 6, HashRecordBuffer.keyView( key ).getName() );
+						ps.setInt( 7, occurrences.countAt( slot ) );
+						
+						// Increment the count of inserted rows.
+						inserted += ps.executeUpdate();
+						ps.clearParameters();
+					}
+				}
+				
+				// Insert the text of each distinct n-gram once, from its first record.
+				LongIntCounter grams = new LongIntCounter( 1024 );
+				ps = conn.prepareStatement( gramsSql );
+				for ( int i = 0; i < records.size(); i++ ) {
+					if ( grams.add( records.gramKey( i ), 1 ) > 1 ) {
+						continue;
+					}
+					ps.setInt( 1, records.gramHashed( i ) );
+					ps.setString( 2, records.view( i ).getName() );
+					ps.setInt( 3, records.gramSize( i ) );
+					ps.setString( 4, records.gramRaw( i, dict ) );
+					ps.executeUpdate();
+					ps.clearParameters();
+				}
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			}
+			
+			// COMMIT TRANSACTION
+			this.commitTransaction( conn );
 		}
-		
-		return conn;
+		return inserted;
 	}
 	
 	
 	/**
-	 * Creates a table to hold simplehash records, if it does not already exist.
-	 * 
-	 * The table schema is as follows:
-	 * gram_id INTEGER PRIMARY KEY AUTOINCREMENT (N.B. SQLite implements auto-increment even without this keyword)
-	 * filename TEXT
-	 * partname TEXT
-	 * gram_size INTEGER
-	 * gram_raw TEXT
-	 * gram_hashed INTEGER
+	 * Inserts the posting lists of hashed n-grams of symbolic music data.
 	 * 
-	 * @since 1.0.0
-	 * @param conn the current database connection
-	 */
-	private void createTable( Connection conn ) {
-		String sql = "CREATE TABLE IF NOT EXISTS simplehash ( gram_id INTEGER PRIMARY KEY, dataset_name TEXT, filename TEXT, partname TEXT, gram_size INTEGER, gram_raw TEXT, gram_hashed INTEGER );";
-	
-		try {
-			Statement stmt = conn.createStatement();
-			stmt.execute( sql );
-		} catch ( SQLException sqle ) {
-			sqle.printStackTrace();
-		}		
-	}
-	
-	
-	/**
-	 * Closes the current database connection.
+	 * The records are grouped by hash, view, n-gram size, file and spine, and the offsets of each group are stored as a 
+	 * single delta-encoded posting list (see {@link PostingCodec}).
 	 * 
-	 * @since 1.0.0
-	 * @param conn the current database connection
+	 * @since 1.1.0
+	 * @param records the records of hashed n-grams of symbolic music data
+	 * @return the number of posting lists inserted as part of this transaction
 	 */
-	private void disconnect( Connection conn ) {
-		try {
-			if ( conn != null ) {
-				conn.close();
-				System.out.println( "Connection closed." );
+	public int bulkInsertPostings( HashRecordBuffer records ) {
+		Connection conn = this.connect();
+		
+		int inserted = 0;
+		if ( conn != null ) {
+			
+			// BEGIN TRANSACTION.
+			conn = this.beginTransaction( conn );
+			
+			String sql = "INSERT INTO simplehash_postings ( dataset_name, filename, partname, spine_index, gram_size, gram_hashed, gram_view, occurrences, positions ) VALUES ( ?, ?, ?, ?, ?, ?, ?, ?, ? );";
+			
+			try {
+				PreparedStatement ps = conn.prepareStatement( sql );
+				
+				for ( int spine = 0; spine < records.numSpines(); spine++ ) {
+					int first = records.firstRecord( spine );
+					int end = records.endRecord( spine );
+					
+					// Sort the offsets of the spine's records by n-gram, counting the records of each n-gram first.
+					LongIntCounter counts = new LongIntCounter( 256 );
+					for ( int i = first; i < end; i++ ) {
+						counts.add( records.gramKey( i ), 1 );
+					}
+					LongIntCounter ends = new LongIntCounter( counts.size() );
+					int start = 0;
+					for ( int slot = 0; slot < counts.capacity(); slot++ ) {
+						if ( counts.isOccupied( slot ) ) {
+							ends.add( counts.keyAt( slot ), start );
+							start += counts.countAt( slot );
+						}
+					}
+					int[] offsets = new int[ end - first ];
+					for ( int i = first; i < end; i++ ) {
+						offsets[ ends.add( records.gramKey( i ), 1 ) - 1 ] = records.gramOffset( i );
+					}
+					
+					int file = records.spineFile( spine );
+					for ( int slot = 0; slot < counts.capacity(); slot++ ) {
+						if ( ! counts.isOccupied( slot ) ) {
+							continue;
+						}
+						long key = counts.keyAt( slot );
+						int length = counts.countAt( slot );
+						int stop = ends.get( key );
+						
+						ps.setString( 1, records.datasetName( file ) );
+						ps.setString( 2, records.filename( file ) );
+						ps.setString( 3, records.partname( spine ) );
+						ps.setInt( 4, records.spineIndex( spine ) );
+						ps.setInt( 5, HashRecordBuffer.keyGramSize( key ) );
+						ps.setInt( 6, HashRecordBuffer.keyHash( key ) );
+						ps.setString( 7, HashRecordBuffer.keyView( key ).getName() );
+						ps.setInt( 8, length );
+						ps.setBytes( 9, PostingCodec.encode( Arrays.copyOfRange( offsets, stop - length, stop ), length ) );
+						
+						inserted += ps.executeUpdate();
+						ps.clearParameters();
+					}
+				}
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
 			}
-		} catch ( SQLException sqle ) {
-			sqle.printStackTrace();
+			
+			// COMMIT TRANSACTION
+			this.commitTransaction( conn );
 		}
+		return inserted;
 	}
 	
 	
 	/**
-	 * Gets the number of distinct filenames stored in the simplehash database.
+	 * Inserts the spines that are aliases of indexed spines.
 	 * 
-	 * @since 1.0.0
-	 * @return the number of distinct filenames in the simplehash database
+	 * @since 1.1.0
+	 * @param aliases the spines of the processed files whose filtered tokens are identical to those of a spine 
+	 * already indexed
+	 * @return the number of aliases inserted as part of this transaction
 	 */
-	public int numDistinctFiles() {
+	public int bulkInsertAliases( List<SpineAlias> aliases ) {
 		Connection conn = this.connect();
-		String sql = "SELECT COUNT(DISTINCT filename) AS numFiles FROM simplehash;";
-		int num = 0;
-		try {
-			Statement stmt = conn.createStatement();
-			ResultSet rs = stmt.executeQuery( sql );
-			while ( rs.next() ) {
-				num = rs.getInt( "numFiles" );
+		
+		int inserted = 0;
+		if ( conn != null ) {
+			
+			// BEGIN TRANSACTION.
+			conn = this.beginTransaction( conn );
+			
+			String sql = "INSERT INTO simplehash_aliases ( dataset_name, filename, partname, spine_index, canonical_dataset_name, canonical_filename, canonical_spine_index ) VALUES ( ?, ?, ?, ?, ?, ?, ? );";
+			
+			try {
+				PreparedStatement ps = conn.prepareStatement( sql );
+				for ( SpineAlias alias : aliases ) {
+					ps.setString( 1, alias.getDatasetName() );
+					ps.setString( 2, alias.getFilename() );
+					ps.setString( 3, alias.getPartname() );
+					ps.setInt( 4, alias.getSpineIndex() );
+					ps.setString( 5, alias.getCanonicalDatasetName() );
+					ps.setString( 6, alias.getCanonicalFilename() );
+					ps.setInt( 7, alias.getCanonicalSpineIndex() );
+					inserted += ps.executeUpdate();
+					ps.clearParameters();
+				}
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
 			}
-			rs.close();
-		} catch ( SQLException sqle ) {
-			sqle.printStackTrace();
-		} finally {
-			this.disconnect( conn );
+			
+			// COMMIT TRANSACTION
+			this.commitTransaction( conn );
 		}
-		
-		return num;
+		return inserted;
 	}
 	
-
+	
 	/**
-	 * Selects records matching a given hash.
+	 * Inserts the statistics of the n-grams of a buffer: the histogram of the lengths of their posting lists, the 
+	 * hottest n-grams and every stop-gram, and how often each file contains each stop-gram.
 	 * 
-	 * Selects records from the simplehash database that match a given hash, grouped by the filename from 
-	 * which the hash was generated.
+	 * The counts of a stop-gram include the files of the aliases of its spines, as do the file bitmaps. The files 
+	 * must already be stored, i.e. by {@link #bulkInsertFileBitmaps(HashRecordBuffer)}.
 	 * 
-	 * @since 1.0.0
-	 * @param hash a hashed n-gram to select
-	 * @return a list of {@code Result} objects, empty if no rows were selected
+	 * @since 1.1.0
+	 * @param records the records of hashed n-grams of symbolic music data
+	 * @param stats the statistics of the records
+	 * @param dict the dictionary that assigned the token ids of the records
+	 * @param hottest the number of n-grams with the most occurrences to insert, besides the stop-grams
+	 * @return the number of stop-grams inserted as part of this transaction
 	 */
-	public List<Result> selectAllWithHash( int hash ) {
+	public int bulkInsertGramStatistics( HashRecordBuffer records, GramStatistics stats, TokenDictionary dict, int hottest ) {
 		Connection conn = this.connect();
-		String sql = "SELECT dataset_name, filename, COUNT(gram_id) AS numMatches FROM simplehash WHERE gram_hashed = ? GROUP BY dataset_name, filename ORDER BY numMatches DESC;";
-		
-		List<Result> results = new LinkedList<Result>();
 		
+		int inserted = 0;
 		if ( conn != null ) {
-			ResultSet rs = null;
+			
+			// BEGIN TRANSACTION.
+			conn = this.beginTransaction( conn );
+			
+			String histogramSql = "INSERT OR REPLACE INTO simplehash_histogram ( gram_view, gram_size, bucket, grams ) VALUES ( ?, ?, ?, ? );";
+			String hotSql = "INSERT INTO simplehash_hot_grams ( gram_hashed, gram_size, gram_view, gram_raw, files, postings, stop_gram ) VALUES ( ?, ?, ?, ?, ?, ?, ? );";
+			String countsSql = "INSERT INTO simplehash_stop_counts ( gram_hashed, gram_size, gram_view, file_id, occurrences ) VALUES ( ?, ?, ?, ?, ? );";
+			
 			try {
-				PreparedStatement pstmt = conn.prepareStatement( sql );
+				PreparedStatement ps = conn.prepareStatement( histogramSql );
+				for ( Map.Entry<String, long[]> entry : stats.histogram().entrySet() ) {
+					String[] key = entry.getKey().split( "\t" );
+					for ( int bucket = 0; bucket < entry.getValue().length; bucket++ ) {
+						if ( entry.getValue()[bucket] == 0 ) {
+							continue;
+						}
+						ps.setString( 1, key[0] );
+						ps.setInt( 2, Integer.parseInt( key[1] ) );
+						ps.setInt( 3, bucket );
+						ps.setLong( 4, entry.getValue()[bucket] );
+						ps.executeUpdate();
+						ps.clearParameters();
+					}
+				}
 				
-				// Bind the parameter
-				pstmt.setInt( 1, hash );
+				// The stop-grams come first, as they have the most occurrences.
+				Set<Long> hot = new LinkedHashSet<Long>();
+				for ( long key : stats.stopGrams() ) {
+					hot.add( key );
+				}
+				for ( long key : stats.hottest( hottest ) ) {
+					hot.add( key );
+				}
+				ps = conn.prepareStatement( hotSql );
+				for ( long key : hot ) {
+					ps.setInt( 1, HashRecordBuffer.keyHash( key ) );
+					ps.setInt( 2, HashRecordBuffer.keyGramSize( key ) );
+					ps.setString( 3, HashRecordBuffer.keyView( key ).getName() );
+					ps.setString( 4, stats.gramRaw( key, dict ) );
+					ps.setInt( 5, stats.files( key ) );
+					ps.setInt( 6, stats.postings( key ) );
+					ps.setInt( 7, stats.isStopGram( key ) ? 1 : 0 );
+					ps.executeUpdate();
+					ps.clearParameters();
+					inserted += stats.isStopGram( key ) ? 1 : 0;
+				}
+				
+				// Count the occurrences of each stop-gram per file, by the file ids of the database.
+				Map<String, Integer> fileIds = this.selectFileIds( conn );
+				int[] ids = new int[ records.numFiles() ];
+				for ( int file = 0; file < ids.length; file++ ) {
+					ids[file] = fileIds.get( records.datasetName( file ) + "\t" + records.filename( file ) );
+				}
+				Map<Long, LongIntCounter> counts = records.fileCounts( ids, stats::isStopGram );
+				ps = conn.prepareStatement( countsSql );
+				for ( Map.Entry<Long, LongIntCounter> entry : counts.entrySet() ) {
+					long key = entry.getKey();
+					LongIntCounter perFile = entry.getValue();
+					for ( int slot = 0; slot < perFile.capacity(); slot++ ) {
+						if ( ! perFile.isOccupied( slot ) ) {
+							continue;
+						}
+						ps.setInt( 1, HashRecordBuffer.keyHash( key ) );
+						ps.setInt( 2, HashRecordBuffer.keyGramSize( key ) );
+						ps.setString( 3, HashRecordBuffer.keyView( key ).getName() );
+						ps.setInt( 4, (int) perFile.keyAt( slot ) );
+						ps.setInt( 5, perFile.countAt( slot ) );
+						ps.executeUpdate();
+						ps.clearParameters();
+					}
+				}
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			}
+			
+			// COMMIT TRANSACTION
+			this.commitTransaction( conn );
+		}
+		return inserted;
+	}
+	
+	
+	/**
+	 * Inserts the reference records of the files of a buffer, replacing any stored for the same files.
+	 * 
+	 * The files must already be stored, i.e. by {@link #bulkInsertFileBitmaps(HashRecordBuffer)}.
+	 * 
+	 * @since 1.1.0
+	 * @param records the records of hashed n-grams of symbolic music data
+	 * @param metadata the reference records of the files, keyed by their file ids in {@code records}
+	 * @return the number of files whose metadata was inserted as part of this transaction
+	 */
+	public int bulkInsertMetadata( HashRecordBuffer records, Map<Integer, KernMetadata> metadata ) {
+		Connection conn = this.connect();
+		
+		int inserted = 0;
+		if ( conn != null ) {
+			
+			// BEGIN TRANSACTION.
+			conn = this.beginTransaction( conn );
+			
+			String sql = "INSERT OR REPLACE INTO simplehash_metadata ( file_id, composer, title, catalog, collection_name, composer_born, composer_died ) VALUES ( ?, ?, ?, ?, ?, ?, ? );";
+			
+			try {
+				Map<String, Integer> fileIds = this.selectFileIds( conn );
+				PreparedStatement ps = conn.prepareStatement( sql );
+				for ( Map.Entry<Integer, KernMetadata> entry : metadata.entrySet() ) {
+					Integer fileId = fileIds.get( records.datasetName( entry.getKey() ) + "\t" + records.filename( entry.getKey() ) );
+					if ( fileId == null ) {
+						continue;
+					}
+					KernMetadata km = entry.getValue();
+					ps.setInt( 1, fileId );
+					ps.setString( 2, km.getComposer() );
+					ps.setString( 3, km.getTitle() );
+					ps.setString( 4, km.getCatalogAndNumber() );
+					ps.setString( 5, km.getCollectionName() );
+					ps.setObject( 6, km.getComposerBorn() == null ? null : Integer.valueOf( km.getComposerBorn() ) );
+					ps.setObject( 7, km.getComposerDied() == null ? null : Integer.valueOf( km.getComposerDied() ) );
+					inserted += ps.executeUpdate();
+					ps.clearParameters();
+				}
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			}
+			
+			// COMMIT TRANSACTION
+			this.commitTransaction( conn );
+		}
+		return inserted;
+	}
+	
+	
+	/**
+	 * Inserts the token ids of whole spines.
+	 * 
+	 * @since 1.1.0
+	 * @param spines the spines of the processed files
+	 * @return the number of spines inserted as part of this transaction
+	 */
+	public int bulkInsertSpines( List<SpineRecord> spines ) {
+		Connection conn = this.connect();
+		
+		int inserted = 0;
+		if ( conn != null ) {
+			
+			// BEGIN TRANSACTION.
+			conn = this.beginTransaction( conn );
+			
+			String sql = "INSERT INTO simplehash_spines ( dataset_name, filename, partname, spine_index, tokens ) VALUES ( ?, ?, ?, ?, ? );";
+			
+			try {
+				PreparedStatement ps = conn.prepareStatement( sql );
+				for ( SpineRecord spine : spines ) {
+					ps.setString( 1, spine.getDatasetName() );
+					ps.setString( 2, spine.getFilename() );
+					ps.setString( 3, spine.getPartname() );
+					ps.setInt( 4, spine.getSpineIndex() );
+					ps.setBytes( 5, PostingCodec.encodeSequence( spine.getTokenIds() ) );
+					inserted += ps.executeUpdate();
+					ps.clearParameters();
+				}
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			}
+			
+			// COMMIT TRANSACTION
+			this.commitTransaction( conn );
+		}
+		return inserted;
+	}
+	
+	
+	/**
+	 * Inserts the tokens of a token dictionary, replacing any tokens stored with the same ids.
+	 * 
+	 * @since 1.1.0
+	 * @param dict the dictionary that assigned the token ids of the stored n-grams
+	 * @return the number of tokens inserted as part of this transaction
+	 */
+	public int bulkInsertTokens( TokenDictionary dict ) {
+		Connection conn = this.connect();
+		
+		int inserted = 0;
+		if ( conn != null ) {
+			
+			// BEGIN TRANSACTION.
+			conn = this.beginTransaction( conn );
+			
+			String sql = "INSERT OR REPLACE INTO simplehash_tokens ( token_id, token ) VALUES ( ?, ? );";
+			
+			try {
+				PreparedStatement ps = conn.prepareStatement( sql );
+				for ( int id = 0; id < dict.size(); id++ ) {
+					ps.setInt( 1, id );
+					ps.setString( 2, dict.token( id ) );
+					inserted += ps.executeUpdate();
+					ps.clearParameters();
+				}
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			}
+			
+			// COMMIT TRANSACTION
+			this.commitTransaction( conn );
+		}
+		return inserted;
+	}
+	
+	
+	/**
+	 * Does nothing: every method opens and closes its own connection.
+	 * 
+	 * @since 1.1.0
+	 */
+	@Override
+	public void close() {
+	}
+	
+	
+	/**
+	 * Commits any operations performed against the connection passed, and then closes the connection.
+	 * 
+	 * @since 1.0.0
+	 * @param conn the current database connection
+	 */
+	private void commitTransaction( Connection conn ) {
+		try {
+			conn.commit();
+		} catch ( SQLException sqle ) {
+			sqle.printStackTrace();
+		} finally {
+			this.disconnect( conn );
+		}
+	}
+	
+	
+	/**
+	 * Connects to the SQLite database, and creates the simplehash table if not exists.
+	 * 
+	 * @since 1.0.0
+	 * @return a connection to the database, or null if a connection could not be opened
+	 */
+	private Connection connect() {
+		Connection conn = null;
+		try {
+			conn = DriverManager.getConnection( this.connectionUrl );
+			System.out.println( "SQLite: Connection established." );
+		} catch ( SQLException sqle ) {
+			sqle.printStackTrace();
+		}
+		
+		if ( conn != null ) {
+			this.createTable( conn );
+		}
+		
+		return conn;
+	}
+	
+	
+	/**
+	 * Creates a table to hold simplehash records, if it does not already exist.
+	 * 
+	 * The table holds one row per hash, view, n-gram size, file and part, and its schema is as follows:
+	 * gram_id INTEGER PRIMARY KEY AUTOINCREMENT (N.B. SQLite implements auto-increment even without this keyword)
+	 * dataset_name TEXT
+	 * filename TEXT
+	 * partname TEXT
+	 * gram_size INTEGER
+	 * gram_hashed INTEGER
+	 * gram_view TEXT (the view of the part's tokens over which the n-gram was taken, see {@link SpineView})
+	 * occurrences INTEGER (the number of occurrences of the n-gram in the part)
+	 * 
+	 * A second table, simplehash_grams, holds the text of each distinct n-gram once:
+	 * gram_hashed INTEGER
+	 * gram_view TEXT
+	 * gram_size INTEGER
+	 * gram_raw TEXT
+	 * 
+	 * A third table, simplehash_postings, holds one row per hash, view, n-gram size, file and spine, with the offsets of 
+	 * every occurrence of the n-gram in that spine:
+	 * dataset_name TEXT
+	 * filename TEXT
+	 * partname TEXT
+	 * spine_index INTEGER
+	 * gram_size INTEGER
+	 * gram_hashed INTEGER
+	 * gram_view TEXT
+	 * occurrences INTEGER
+	 * positions BLOB (delta-encoded offsets, see {@link PostingCodec})
+	 * 
+	 * The simplehash and simplehash_postings tables are indexed on gram_hashed, so that lookups by hash do not scan the whole table.
+	 * 
+	 * A fourth table, simplehash_tokens, persists the token dictionary with which n-grams were hashed:
+	 * token_id INTEGER PRIMARY KEY
+	 * token TEXT
+	 * 
+	 * A fifth table, simplehash_spines, holds the token ids of every spine, so that candidate matches can be verified 
+	 * against the exact token sequence. It is indexed on dataset_name and filename:
+	 * dataset_name TEXT
+	 * filename TEXT
+	 * partname TEXT
+	 * spine_index INTEGER
+	 * tokens BLOB (token ids, see {@link PostingCodec#encodeSequence(int[])})
+	 * 
+	 * A sixth table, simplehash_files, numbers the files, and a seventh, simplehash_bitmaps, holds the set of files in 
+	 * which each hash occurs, indexed on gram_hashed:
+	 * file_id INTEGER PRIMARY KEY
+	 * dataset_name TEXT
+	 * filename TEXT (unique with dataset_name)
+	 * 
+	 * gram_hashed INTEGER
+	 * gram_size INTEGER
+	 * gram_view TEXT
+	 * files BLOB (file ids, see {@link RoaringBitmap#serialize()})
+	 * 
+	 * An eighth table, simplehash_blooms, holds a Bloom filter of the hashes of each view and n-gram size:
+	 * gram_view TEXT
+	 * gram_size INTEGER
+	 * bits BLOB (see {@link BloomFilter#serialize()})
+	 * 
+	 * A ninth table, simplehash_metadata, holds the reference records of each file, indexed on composer, catalog and 
+	 * the composer's dates so that queries can be limited to the files they match:
+	 * file_id INTEGER PRIMARY KEY (see simplehash_files)
+	 * composer TEXT (!!!COM)
+	 * title TEXT (!!!OTL)
+	 * catalog TEXT (!!!SCT, the catalog and the number within it)
+	 * collection_name TEXT (!!!XEN)
+	 * composer_born INTEGER (year, from !!!CDT)
+	 * composer_died INTEGER (year, from !!!CDT)
+	 * 
+	 * A tenth table, simplehash_aliases, holds the spines that are not indexed because their filtered tokens are 
+	 * identical to those of an indexed spine, e.g. the same score in two datasets, indexed on the indexed spine:
+	 * dataset_name TEXT
+	 * filename TEXT
+	 * partname TEXT
+	 * spine_index INTEGER
+	 * canonical_dataset_name TEXT (of the indexed spine)
+	 * canonical_filename TEXT (of the indexed spine)
+	 * canonical_spine_index INTEGER (of the indexed spine)
+	 * 
+	 * Three more tables hold the statistics of the n-grams (see {@link GramStatistics}): simplehash_histogram, the 
+	 * number of n-grams of each view and size whose posting lists have between 2^bucket and 2^(bucket + 1) - 1 
+	 * postings; simplehash_hot_grams, the n-grams with the most postings, including every stop-gram; and 
+	 * simplehash_stop_counts, indexed on gram_hashed, the number of occurrences of each stop-gram in each file:
+	 * gram_view TEXT
+	 * gram_size INTEGER
+	 * bucket INTEGER
+	 * grams INTEGER
+	 * 
+	 * gram_hashed INTEGER
+	 * gram_size INTEGER
+	 * gram_view TEXT
+	 * gram_raw TEXT
+	 * files INTEGER (not counting the aliases of its spines)
+	 * postings INTEGER
+	 * stop_gram INTEGER (1 for a stop-gram, whose postings are not in the index store)
+	 * 
+	 * gram_hashed INTEGER
+	 * gram_size INTEGER
+	 * gram_view TEXT
+	 * file_id INTEGER (see simplehash_files)
+	 * occurrences INTEGER
+	 * 
+	 * @since 1.0.0
+	 * @param conn the current database connection
+	 */
+	private void createTable( Connection conn ) {
+		String sql = "CREATE TABLE IF NOT EXISTS simplehash ( gram_id INTEGER PRIMARY KEY, dataset_name TEXT, filename TEXT, partname TEXT, gram_size INTEGER, gram_hashed INTEGER, gram_view TEXT, occurrences INTEGER );";
+		String grams = "CREATE TABLE IF NOT EXISTS simplehash_grams ( gram_hashed INTEGER, gram_view TEXT, gram_size INTEGER, gram_raw TEXT, PRIMARY KEY ( gram_hashed, gram_view, gram_size ) );";
+		String idx = "CREATE INDEX IF NOT EXISTS simplehash_gram_hashed ON simplehash ( gram_hashed );";
+		String postings = "CREATE TABLE IF NOT EXISTS simplehash_postings ( dataset_name TEXT, filename TEXT, partname TEXT, spine_index INTEGER, gram_size INTEGER, gram_hashed INTEGER, gram_view TEXT, occurrences INTEGER, positions BLOB );";
+		String postingsIdx = "CREATE INDEX IF NOT EXISTS simplehash_postings_gram_hashed ON simplehash_postings ( gram_hashed );";
+		String tokens = "CREATE TABLE IF NOT EXISTS simplehash_tokens ( token_id INTEGER PRIMARY KEY, token TEXT );";
+		String spines = "CREATE TABLE IF NOT EXISTS simplehash_spines ( dataset_name TEXT, filename TEXT, partname TEXT, spine_index INTEGER, tokens BLOB );";
+		String spinesIdx = "CREATE INDEX IF NOT EXISTS simplehash_spines_file ON simplehash_spines ( dataset_name, filename );";
+		String files = "CREATE TABLE IF NOT EXISTS simplehash_files ( file_id INTEGER PRIMARY KEY, dataset_name TEXT, filename TEXT, UNIQUE ( dataset_name, filename ) );";
+		String bitmaps = "CREATE TABLE IF NOT EXISTS simplehash_bitmaps ( gram_hashed INTEGER, gram_size INTEGER, gram_view TEXT, files BLOB );";
+		String bitmapsIdx = "CREATE INDEX IF NOT EXISTS simplehash_bitmaps_gram_hashed ON simplehash_bitmaps ( gram_hashed );";
+		String blooms = "CREATE TABLE IF NOT EXISTS simplehash_blooms ( gram_view TEXT, gram_size INTEGER, bits BLOB, PRIMARY KEY ( gram_view, gram_size ) );";
+		String metadata = "CREATE TABLE IF NOT EXISTS simplehash_metadata ( file_id INTEGER PRIMARY KEY, composer TEXT, title TEXT, catalog TEXT, collection_name TEXT, composer_born INTEGER, composer_died INTEGER );";
+		String composerIdx = "CREATE INDEX IF NOT EXISTS simplehash_metadata_composer ON simplehash_metadata ( composer COLLATE NOCASE );";
+		String catalogIdx = "CREATE INDEX IF NOT EXISTS simplehash_metadata_catalog ON simplehash_metadata ( catalog COLLATE NOCASE );";
+		String datesIdx = "CREATE INDEX IF NOT EXISTS simplehash_metadata_dates ON simplehash_metadata ( composer_born, composer_died );";
+		String aliases = "CREATE TABLE IF NOT EXISTS simplehash_aliases ( dataset_name TEXT, filename TEXT, partname TEXT, spine_index INTEGER, canonical_dataset_name TEXT, canonical_filename TEXT, canonical_spine_index INTEGER );";
+		String aliasesIdx = "CREATE INDEX IF NOT EXISTS simplehash_aliases_canonical ON simplehash_aliases ( canonical_dataset_name, canonical_filename );";
+		String histogram = "CREATE TABLE IF NOT EXISTS simplehash_histogram ( gram_view TEXT, gram_size INTEGER, bucket INTEGER, grams INTEGER, PRIMARY KEY ( gram_view, gram_size, bucket ) );";
+		String hotGrams = "CREATE TABLE IF NOT EXISTS simplehash_hot_grams ( gram_hashed INTEGER, gram_size INTEGER, gram_view TEXT, gram_raw TEXT, files INTEGER, postings INTEGER, stop_gram INTEGER );";
+		String stopCounts = "CREATE TABLE IF NOT EXISTS simplehash_stop_counts ( gram_hashed INTEGER, gram_size INTEGER, gram_view TEXT, file_id INTEGER, occurrences INTEGER );";
+		String stopCountsIdx = "CREATE INDEX IF NOT EXISTS simplehash_stop_counts_gram_hashed ON simplehash_stop_counts ( gram_hashed );";
+	
+		try {
+			Statement stmt = conn.createStatement();
+			stmt.execute( sql );
+			stmt.execute( idx );
+			stmt.execute( grams );
+			stmt.execute( postings );
+			stmt.execute( postingsIdx );
+			stmt.execute( tokens );
+			stmt.execute( spines );
+			stmt.execute( spinesIdx );
+			stmt.execute( files );
+			stmt.execute( bitmaps );
+			stmt.execute( bitmapsIdx );
+			stmt.execute( blooms );
+			stmt.execute( metadata );
+			stmt.execute( composerIdx );
+			stmt.execute( catalogIdx );
+			stmt.execute( datesIdx );
+			stmt.execute( aliases );
+			stmt.execute( aliasesIdx );
+			stmt.execute( histogram );
+			stmt.execute( hotGrams );
+			stmt.execute( stopCounts );
+			stmt.execute( stopCountsIdx );
+		} catch ( SQLException sqle ) {
+			sqle.printStackTrace();
+		}		
+	}
+	
+	
+	/**
+	 * Closes the current database connection.
+	 * 
+	 * @since 1.0.0
+	 * @param conn the current database connection
+	 */
+	private void disconnect( Connection conn ) {
+		try {
+			if ( conn != null ) {
+				conn.close();
+				System.out.println( "Connection closed." );
+			}
+		} catch ( SQLException sqle ) {
+			sqle.printStackTrace();
+		}
+	}
+	
+	
+	/**
+	 * Gets the number of files matched by the last call to {@link #selectAllWithHash(int, int, SpineView, int, int)}, 
+	 * including those outside the requested page.
+	 * 
+	 * @since 1.1.0
+	 * @return the total number of results
+	 */
+	@Override
+	public int getTotalResults() {
+		return this.totalResults;
+	}
+	
+	
+	/**
+	 * Gets the number of distinct filenames stored in the simplehash database.
+	 * 
+	 * Files are counted from the simplehash_files table, which holds every processed file whichever index engine 
+	 * and views are in use, including the files whose spines are all aliases and so not in simplehash_spines.
+	 * 
+	 * @since 1.0.0
+	 * @return the number of distinct filenames in the simplehash database
+	 */
+	@Override
+	public int numDistinctFiles() {
+		Connection conn = this.connect();
+		String sql = "SELECT COUNT(DISTINCT filename) AS numFiles FROM simplehash_files;";
+		int num = 0;
+		try {
+			Statement stmt = conn.createStatement();
+			ResultSet rs = stmt.executeQuery( sql );
+			while ( rs.next() ) {
+				num = rs.getInt( "numFiles" );
+			}
+			rs.close();
+		} catch ( SQLException sqle ) {
+			sqle.printStackTrace();
+		} finally {
+			this.disconnect( conn );
+		}
+		
+		return num;
+	}	
+	
+	/**
+	 * Counts the distinct n-grams stored in the simplehash_grams table.
+	 * 
+	 * @since 1.1.0
+	 * @return
+	 */
+	@Override
+	public long numGrams() {
+		return this.count( "SELECT COUNT(*) AS num FROM simplehash_grams;" );
+	}
+	
+	
+	/**
+	 * Counts the occurrences stored in the simplehash_postings table.
+	 * 
+	 * @since 1.1.0
+	 * @return
+	 */
+	@Override
+	public long numPostings() {
+		return this.count( "SELECT IFNULL( SUM(occurrences), 0 ) AS num FROM simplehash_postings;" );
+	}
+
+
+	/**
+	 * Estimates the number of tokens of the spines stored in the simplehash_spines table, not counting their aliases.
+	 *
+	 * Token ids are stored as varints, most of them a single byte, so the number of bytes stored is counted instead
+	 * of decoding every spine.
+	 *
+	 * @since 1.1.0
+	 * @return the number of bytes of the token ids of the stored spines, at least their number of tokens
+	 */
+	@Override
+	public long numSpineTokens() {
+		return this.count( "SELECT IFNULL( SUM(LENGTH(tokens)), 0 ) AS num FROM simplehash_spines;" );
+	}
+	
+	
+	/**
+	 * Runs a query that selects a single number.
+	 * 
+	 * @since 1.1.0
+	 * @param sql a query selecting one row with a column named "num"
+	 * @return the number, or 0 if it could not be selected
+	 */
+	private long count( String sql ) {
+		Connection conn = this.connect();
+		long num = 0;
+		if ( conn != null ) {
+			try {
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery( sql );
+				if ( rs.next() ) {
+					num = rs.getLong( "num" );
+				}
+				rs.close();
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			} finally {
+				this.disconnect( conn );
+			}
+		}
+		return num;
+	}
+
+	
+
+	/**
+	 * Selects records matching a given hash.
+	 * 
+	 * Selects records from the simplehash database that match a given hash, grouped by the filename from 
+	 * which the hash was generated.
+	 * 
+	 * @since 1.0.0
+	 * @param hash a hashed n-gram to select
+	 * @return a list of {@code Result} objects, empty if no rows were selected
+	 */
+	public List<Result> selectAllWithHash( int hash ) {
+		return this.selectAllWithHash( hash, SpineView.KERN );
+	}
+	
+	
+	/**
+	 * Selects records matching a given hash among n-grams taken over a given view.
+	 * 
+	 * @since 1.1.0
+	 * @param hash a hashed n-gram to select
+	 * @param view the view over which the n-gram was taken
+	 * @return a list of {@code Result} objects, empty if no rows were selected
+	 */
+	public List<Result> selectAllWithHash( int hash, SpineView view ) {
+		return this.selectAllWithHash( hash, view, 0, 0 );
+	}
+	
+	
+	/**
+	 * Selects a page of the records matching a given hash among n-grams of every size taken over a given view.
+	 * 
+	 * @since 1.1.0
+	 * @param hash a hashed n-gram to select
+	 * @param view the view over which the n-gram was taken
+	 * @param offset the number of best results to skip
+	 * @param limit the maximum number of results, or 0 for no maximum
+	 * @return a list of {@code Result} objects, empty if no rows were selected
+	 */
+	public List<Result> selectAllWithHash( int hash, SpineView view, int offset, int limit ) {
+		return this.selectAllWithHash( hash, 0, view, offset, limit );
+	}
+	
+	
+	/**
+	 * Selects a page of the records matching a given hash among n-grams of a given size taken over a given view.
+	 * 
+	 * Only the rows of n-grams of that size are matched, as the other index stores match them, so that an n-gram 
+	 * sharing its hash with one of another size is never mistaken for it.
+	 * 
+	 * Files are ranked by number of matches, keeping only the best {@code offset + limit} in a bounded heap rather 
+	 * than sorting them all; files with as many matches are ranked by dataset name and filename. The number of 
+	 * matching files is available afterwards from {@link #getTotalResults()}.
+	 * 
+	 * @since 1.1.0
+	 * @param hash a hashed n-gram to select
+	 * @param gramSize the size of the n-gram that was hashed, in tokens, or 0 for n-grams of every size
+	 * @param view the view over which the n-gram was taken
+	 * @param offset the number of best results to skip
+	 * @param limit the maximum number of results, or 0 for no maximum
+	 * @return a list of {@code Result} objects, empty if no rows were selected
+	 */
+	@Override
+	public List<Result> selectAllWithHash( int hash, int gramSize, SpineView view, int offset, int limit ) {
+		Connection conn = this.connect();
+		String sql = "SELECT dataset_name, filename, SUM(occurrences) AS numMatches FROM simplehash WHERE gram_hashed = ? AND gram_view = ?" + ( gramSize > 0 ? " AND gram_size = ?" : "" ) + " GROUP BY dataset_name, filename;";
+		
+		List<Result> results = new LinkedList<Result>();
+		
+		if ( conn != null ) {
+			ResultSet rs = null;
+			try {
+				PreparedStatement pstmt = conn.prepareStatement( sql );
+				
+				// Bind the parameters
+				pstmt.setInt( 1, hash );
+				pstmt.setString( 2, view.getName() );
+				if ( gramSize > 0 ) {
+					pstmt.setInt( 3, gramSize );
+				}
 				
 				rs = pstmt.executeQuery();
 				
-				// Add a new Result for every row returned from the database.
-				int resultid = 1;
+				// Keep the best rows returned from the database.
+				int end = limit == 0 ? Integer.MAX_VALUE : (int) Math.min( Integer.MAX_VALUE, (long) offset + limit );
+				TopK<String[]> top = new TopK<String[]>( end );
+				this.totalResults = 0;
+				while ( rs.next() ) {
+					top.offer( new String[] { rs.getString( "dataset_name"), rs.getString( "filename" ), rs.getString( "numMatches" ) }, rs.getInt( "numMatches" ) );
+					this.totalResults++;
+				}
+				
+				// Close the ResultSet
+				rs.close();
+				
+				// Add a new Result for every row of the page.
+				List<String[]> rows = top.toList();
+				Map<String, Result> byFile = new HashMap<String, Result>();
+				int resultid = offset + 1;
+				for ( String[] row : rows.subList( Math.min( offset, rows.size() ), rows.size() ) ) {
+					Result r = new Result( resultid, row[0], row[1] );
+					r.setProperty( "matches", Integer.parseInt( row[2] ) );
+					results.add( r );
+					byFile.put( r.getDatasetName() + "\t" + r.getFilename(), r );
+					resultid++;
+				}
+				
+				this.addMatchPositions( conn, hash, gramSize, view, byFile );
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			} finally {		
+				this.disconnect( conn );
+			}
+		}
+		
+		return results;
+	}
+	
+	
+	/**
+	 * Selects the token ids of every stored spine.
+	 * 
+	 * @since 1.1.0
+	 * @return a list of {@code SpineRecord} objects, in the order in which they were inserted
+	 */
+	@Override
+	public List<SpineRecord> selectAllSpines() {
+		Connection conn = this.connect();
+		String sql = "SELECT dataset_name, filename, partname, spine_index, tokens FROM simplehash_spines ORDER BY rowid;";
+		
+		List<SpineRecord> spines = new ArrayList<SpineRecord>();
+		
+		if ( conn != null ) {
+			try {
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery( sql );
+				while ( rs.next() ) {
+					spines.add( new SpineRecord( rs.getString( "dataset_name" ), rs.getString( "filename" ), rs.getString( "partname" ), rs.getInt( "spine_index" ), PostingCodec.decodeSequence( rs.getBytes( "tokens" ) ) ) );
+				}
+				rs.close();
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			} finally {
+				this.disconnect( conn );
+			}
+		}
+		
+		return spines;
+	}
+	
+	
+	/**
+	 * Selects every spine that is an alias of an indexed spine.
+	 * 
+	 * @since 1.1.0
+	 * @return a list of {@code SpineAlias} objects, in the order in which they were inserted
+	 */
+	public List<SpineAlias> selectAliases() {
+		Connection conn = this.connect();
+		String sql = "SELECT dataset_name, filename, partname, spine_index, canonical_dataset_name, canonical_filename, canonical_spine_index FROM simplehash_aliases ORDER BY rowid;";
+		
+		List<SpineAlias> aliases = new ArrayList<SpineAlias>();
+		
+		if ( conn != null ) {
+			try {
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery( sql );
+				while ( rs.next() ) {
+					aliases.add( new SpineAlias( rs.getString( "dataset_name" ), rs.getString( "filename" ), rs.getString( "partname" ), rs.getInt( "spine_index" ), rs.getString( "canonical_dataset_name" ), rs.getString( "canonical_filename" ), rs.getInt( "canonical_spine_index" ) ) );
+				}
+				rs.close();
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			} finally {
+				this.disconnect( conn );
+			}
+		}
+		
+		return aliases;
+	}
+	
+	
+	/**
+	 * Selects the histogram of the lengths of the posting lists of each view and n-gram size.
+	 * 
+	 * @since 1.1.0
+	 * @return one row per bucket that is not empty, by view, n-gram size and bucket, with the keys "view", 
+	 * "gramSize", "minPostings", "maxPostings" and "grams"
+	 */
+	public List<Map<String, Object>> selectHistogram() {
+		Connection conn = this.connect();
+		String sql = "SELECT gram_view, gram_size, bucket, grams FROM simplehash_histogram ORDER BY gram_view, gram_size, bucket;";
+		
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		
+		if ( conn != null ) {
+			try {
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery( sql );
+				while ( rs.next() ) {
+					Map<String, Object> row = new LinkedHashMap<String, Object>();
+					row.put( "view", rs.getString( "gram_view" ) );
+					row.put( "gramSize", rs.getInt( "gram_size" ) );
+					row.put( "minPostings", 1L << rs.getInt( "bucket" ) );
+					row.put( "maxPostings", ( 1L << ( rs.getInt( "bucket" ) + 1 ) ) - 1 );
+					row.put( "grams", rs.getLong( "grams" ) );
+					rows.add( row );
+				}
+				rs.close();
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			} finally {
+				this.disconnect( conn );
+			}
+		}
+		
+		return rows;
+	}
+	
+	
+	/**
+	 * Selects the n-grams with the most postings.
+	 * 
+	 * @since 1.1.0
+	 * @param limit the maximum number of n-grams
+	 * @return one row per n-gram, most postings first, with the keys "hash", "gramSize", "view", "gram", "files", 
+	 * "postings" and "stopGram"
+	 */
+	public List<Map<String, Object>> selectHotGrams( int limit ) {
+		Connection conn = this.connect();
+		String sql = "SELECT gram_hashed, gram_size, gram_view, gram_raw, files, postings, stop_gram FROM simplehash_hot_grams ORDER BY postings DESC LIMIT ?;";
+		
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		
+		if ( conn != null ) {
+			try {
+				PreparedStatement pstmt = conn.prepareStatement( sql );
+				pstmt.setInt( 1, limit );
+				ResultSet rs = pstmt.executeQuery();
+				while ( rs.next() ) {
+					Map<String, Object> row = new LinkedHashMap<String, Object>();
+					row.put( "hash", rs.getInt( "gram_hashed" ) );
+					row.put( "gramSize", rs.getInt( "gram_size" ) );
+					row.put( "view", rs.getString( "gram_view" ) );
+					row.put( "gram", rs.getString( "gram_raw" ) );
+					row.put( "files", rs.getInt( "files" ) );
+					row.put( "postings", rs.getInt( "postings" ) );
+					row.put( "stopGram", rs.getInt( "stop_gram" ) == 1 );
+					rows.add( row );
+				}
+				rs.close();
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			} finally {
+				this.disconnect( conn );
+			}
+		}
+		
+		return rows;
+	}
+	
+	
+	/**
+	 * Selects the number of occurrences of a stop-gram in each file containing it.
+	 * 
+	 * @since 1.1.0
+	 * @param hash a hashed n-gram to select
+	 * @param gramSize the size of the n-gram that was hashed, in tokens
+	 * @param view the view over which the n-gram was taken
+	 * @return the number of occurrences, keyed by file id in ascending order; empty if the n-gram is not a stop-gram
+	 */
+	@Override
+	public Map<Integer, Integer> selectStopGramCounts( int hash, int gramSize, SpineView view ) {
+		Connection conn = this.connect();
+		String sql = "SELECT file_id, SUM(occurrences) AS occurrences FROM simplehash_stop_counts WHERE gram_hashed = ? AND gram_size = ? AND gram_view = ? GROUP BY file_id ORDER BY file_id;";
+		
+		Map<Integer, Integer> counts = new LinkedHashMap<Integer, Integer>();
+		
+		if ( conn != null ) {
+			try {
+				PreparedStatement pstmt = conn.prepareStatement( sql );
+				pstmt.setInt( 1, hash );
+				pstmt.setInt( 2, gramSize );
+				pstmt.setString( 3, view.getName() );
+				ResultSet rs = pstmt.executeQuery();
+				while ( rs.next() ) {
+					counts.put( rs.getInt( "file_id" ), rs.getInt( "occurrences" ) );
+				}
+				rs.close();
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			} finally {
+				this.disconnect( conn );
+			}
+		}
+		
+		return counts;
+	}
+	
+	
+	/**
+	 * Selects the stop-grams, whose postings are not in the index store.
+	 * 
+	 * @since 1.1.0
+	 * @return the keys of the stop-grams, as from {@link HashRecordBuffer#key(int, int, SpineView)}
+	 */
+	public Set<Long> selectStopGrams() {
+		Connection conn = this.connect();
+		String sql = "SELECT gram_hashed, gram_size, gram_view FROM simplehash_hot_grams WHERE stop_gram = 1;";
+		
+		Set<Long> keys = new HashSet<Long>();
+		
+		if ( conn != null ) {
+			try {
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery( sql );
+				while ( rs.next() ) {
+					keys.add( HashRecordBuffer.key( rs.getInt( "gram_hashed" ), rs.getInt( "gram_size" ), SpineView.fromName( rs.getString( "gram_view" ) ) ) );
+				}
+				rs.close();
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			} finally {
+				this.disconnect( conn );
+			}
+		}
+		
+		return keys;
+	}
+	
+	
+	/**
+	 * Selects the token ids of every spine of the given files.
+	 * 
+	 * @since 1.1.0
+	 * @param files the files, each an array of the dataset name and the filename
+	 * @return a list of {@code SpineRecord} objects, in the order of {@code files} and then by spine
+	 */
+	@Override
+	public List<SpineRecord> selectSpines( List<String[]> files ) {
+		Connection conn = this.connect();
+		String sql = "SELECT partname, spine_index, tokens FROM simplehash_spines WHERE dataset_name = ? AND filename = ? ORDER BY spine_index;";
+		
+		List<SpineRecord> spines = new ArrayList<SpineRecord>();
+		
+		if ( conn != null ) {
+			try {
+				PreparedStatement pstmt = conn.prepareStatement( sql );
+				for ( String[] file : files ) {
+					pstmt.setString( 1, file[0] );
+					pstmt.setString( 2, file[1] );
+					
+					ResultSet rs = pstmt.executeQuery();
+					while ( rs.next() ) {
+						spines.add( new SpineRecord( file[0], file[1], rs.getString( "partname" ), rs.getInt( "spine_index" ), PostingCodec.decodeSequence( rs.getBytes( "tokens" ) ) ) );
+					}
+					rs.close();
+					pstmt.clearParameters();
+				}
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			} finally {
+				this.disconnect( conn );
+			}
+		}
+		
+		return spines;
+	}
+	
+	
+	/**
+	 * Selects the token dictionary with which the stored n-grams were hashed.
+	 * 
+	 * @since 1.1.0
+	 * @return the token dictionary, empty if no tokens are stored
+	 */
+	public TokenDictionary selectTokens() {
+		Connection conn = this.connect();
+		String sql = "SELECT token_id, token FROM simplehash_tokens ORDER BY token_id;";
+		
+		TokenDictionary dict = new TokenDictionary();
+		
+		if ( conn != null ) {
+			try {
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery( sql );
+				while ( rs.next() ) {
+					dict.add( rs.getInt( "token_id" ), rs.getString( "token" ) );
+				}
+				rs.close();
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			} finally {
+				this.disconnect( conn );
+			}
+		}
+		
+		return dict;
+	}
+	
+	
+	/**
+	 * Selects the Bloom filter of the hashes of every view and n-gram size.
+	 * 
+	 * @since 1.1.0
+	 * @return the filters, keyed by view name and n-gram size separated by a tab
+	 */
+	public Map<String, BloomFilter> selectBloomFilters() {
+		Connection conn = this.connect();
+		String sql = "SELECT gram_view, gram_size, bits FROM simplehash_blooms;";
+		
+		Map<String, BloomFilter> filters = new HashMap<String, BloomFilter>();
+		
+		if ( conn != null ) {
+			try {
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery( sql );
+				while ( rs.next() ) {
+					filters.put( rs.getString( "gram_view" ) + "\t" + rs.getInt( "gram_size" ), BloomFilter.deserialize( rs.getBytes( "bits" ) ) );
+				}
+				rs.close();
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			} finally {
+				this.disconnect( conn );
+			}
+		}
+		
+		return filters;
+	}
+	
+	
+	/**
+	 * Selects the sets of files in which each of the given hashes occurs.
+	 * 
+	 * @since 1.1.0
+	 * @param hashes hashed n-grams to select
+	 * @param gramSize the size of the n-grams that were hashed, in tokens
+	 * @param view the view over which the n-grams were taken
+	 * @return the file ids of each hash, in the order of {@code hashes}; empty for a hash that does not occur
+	 */
+	@Override
+	public RoaringBitmap[] selectFileBitmaps( int[] hashes, int gramSize, SpineView view ) {
+		Connection conn = this.connect();
+		String sql = "SELECT files FROM simplehash_bitmaps WHERE gram_hashed = ? AND gram_size = ? AND gram_view = ?;";
+		
+		RoaringBitmap[] bitmaps = new RoaringBitmap[ hashes.length ];
+		for ( int i = 0; i < hashes.length; i++ ) {
+			bitmaps[i] = new RoaringBitmap();
+		}
+		
+		if ( conn != null ) {
+			try {
+				PreparedStatement pstmt = conn.prepareStatement( sql );
+				for ( int i = 0; i < hashes.length; i++ ) {
+					pstmt.setInt( 1, hashes[i] );
+					pstmt.setInt( 2, gramSize );
+					pstmt.setString( 3, view.getName() );
+					
+					// Distinct n-grams may share a hash, so unite the files of every row.
+					ResultSet rs = pstmt.executeQuery();
+					while ( rs.next() ) {
+						bitmaps[i] = RoaringBitmap.or( bitmaps[i], RoaringBitmap.deserialize( rs.getBytes( "files" ) ) );
+					}
+					rs.close();
+					pstmt.clearParameters();
+				}
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			} finally {
+				this.disconnect( conn );
+			}
+		}
+		
+		return bitmaps;
+	}
+	
+	
+	/**
+	 * Selects the name of every dataset.
+	 * 
+	 * @since 1.1.0
+	 * @return the dataset names, in alphabetical order
+	 */
+	public List<String> selectDatasetNames() {
+		Connection conn = this.connect();
+		List<String> names = new ArrayList<String>();
+		
+		if ( conn != null ) {
+			try {
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery( "SELECT DISTINCT dataset_name FROM simplehash_files ORDER BY dataset_name;" );
+				while ( rs.next() ) {
+					names.add( rs.getString( "dataset_name" ) );
+				}
+				rs.close();
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			} finally {
+				this.disconnect( conn );
+			}
+		}
+		
+		return names;
+	}
+	
+	
+	/**
+	 * Escapes the wildcards of a LIKE pattern, and the escape character itself, with a backslash.
+	 * 
+	 * @since 1.1.0
+	 * @param value text to be matched literally
+	 * @return the text, to be used with {@code ESCAPE '\'}
+	 */
+	private static String escapeLike( String value ) {
+		return value.replace( "\\", "\\\\" ).replace( "%", "\\%" ).replace( "_", "\\_" );
+	}
+	
+	
+	/**
+	 * Selects the ids of the files whose reference records match every given filter.
+	 * 
+	 * Composer and catalog match by prefix, ignoring case, e.g. "Bach" matches "Bach, Johann Sebastian" and "BWV" 
+	 * matches "BWV 772"; both are looked up in the case-insensitive indexes of simplehash_metadata, which SQLite uses 
+	 * for a LIKE pattern without wildcards but at its end. The characters "%", "_" and "\" of either prefix are 
+	 * escaped, so that they match themselves rather than act as wildcards. A range of years matches the files whose composer lived 
+	 * during some part of it; files without a year of birth never match a range.
+	 * 
+	 * @since 1.1.0
+	 * @param composer a prefix of the composer's name, or null for any composer
+	 * @param catalog a prefix of the catalog and number, or null for any catalog
+	 * @param fromYear the first year of the range, or null for no lower bound
+	 * @param toYear the last year of the range, or null for no upper bound
+	 * @return the ids of the matching files
+	 */
+	@Override
+	public RoaringBitmap selectFileIdsWithMetadata( String composer, String catalog, Integer fromYear, Integer toYear ) {
+		Connection conn = this.connect();
+		RoaringBitmap files = new RoaringBitmap();
+		
+		List<Object> args = new ArrayList<Object>();
+		StringBuilder sql = new StringBuilder( "SELECT file_id FROM simplehash_metadata WHERE 1 = 1" );
+		if ( composer != null ) {
+			sql.append( " AND composer LIKE ? ESCAPE '\\'" );
+			args.add( escapeLike( composer ) + "%" );
+		}
+		if ( catalog != null ) {
+			sql.append( " AND catalog LIKE ? ESCAPE '\\'" );
+			args.add( escapeLike( catalog ) + "%" );
+		}
+		if ( toYear != null ) {
+			sql.append( " AND composer_born <= ?" );
+			args.add( toYear );
+		}
+		if ( fromYear != null ) {
+			sql.append( " AND COALESCE( composer_died, composer_born ) >= ?" );
+			args.add( fromYear );
+		}
+		sql.append( ";" );
+		
+		if ( conn != null ) {
+			try {
+				PreparedStatement pstmt = conn.prepareStatement( sql.toString() );
+				for ( int i = 0; i < args.size(); i++ ) {
+					pstmt.setObject( i + 1, args.get( i ) );
+				}
+				ResultSet rs = pstmt.executeQuery();
+				while ( rs.next() ) {
+					files.add( rs.getInt( "file_id" ) );
+				}
+				rs.close();
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			} finally {
+				this.disconnect( conn );
+			}
+		}
+		
+		return files;
+	}
+	
+	
+	/**
+	 * Selects the file id of every file.
+	 * 
+	 * @since 1.1.0
+	 * @return the file ids, keyed by dataset name and filename separated by a tab
+	 */
+	@Override
+	public Map<String, Integer> selectFileIds() {
+		Connection conn = this.connect();
+		Map<String, Integer> fileIds = new HashMap<String, Integer>();
+		
+		if ( conn != null ) {
+			try {
+				fileIds = this.selectFileIds( conn );
+			} catch ( SQLException sqle ) {
+				sqle.printStackTrace();
+			} finally {
+				this.disconnect( conn );
+			}
+		}
+		
+		return fileIds;
+	}
+	
+	
+	/**
+	 * Selects the file id of every file over the given connection.
+	 * 
+	 * @since 1.1.0
+	 * @param conn the current database connection
+	 * @return the file ids, keyed by dataset name and filename separated by a tab
+	 * @throws SQLException thrown if the files could not be selected
+	 */
+	private Map<String, Integer> selectFileIds( Connection conn ) throws SQLException {
+		Map<String, Integer> fileIds = new HashMap<String, Integer>();
+		Statement stmt = conn.createStatement();
+		ResultSet rs = stmt.executeQuery( "SELECT file_id, dataset_name, filename FROM simplehash_files;" );
+		while ( rs.next() ) {
+			fileIds.put( rs.getString( "dataset_name" ) + "\t" + rs.getString( "filename" ), rs.getInt( "file_id" ) );
+		}
+		rs.close();
+		return fileIds;
+	}
+	
+	
+	/**
+	 * Selects the individual occurrences of a given hash among n-grams of a given size.
+	 * 
+	 * Used to answer queries by chaining the postings of consecutive sub-grams of the query.
+	 * 
+	 * @since 1.1.0
+	 * @param hash a hashed n-gram to select
+	 * @param gramSize the size of the n-gram that was hashed, in tokens
+	 * @param view the view over which the n-gram was taken
+	 * @return a list of {@code Posting} objects ordered by spine and offset, empty if no rows were selected
+	 */
+	@Override
+	public List<Posting> selectPostingsWithHash( int hash, int gramSize, SpineView view ) {
+		Connection conn = this.connect();
+		String sql = "SELECT dataset_name, filename, partname, spine_index, positions FROM simplehash_postings WHERE gram_hashed = ? AND gram_size = ? AND gram_view = ? ORDER BY dataset_name, filename, spine_index;";
+		
+		List<Posting> postings = new ArrayList<Posting>();
+		
+		if ( conn != null ) {
+			try {
+				PreparedStatement pstmt = conn.prepareStatement( sql );
+				
+				// Bind the parameters
+				pstmt.setInt( 1, hash );
+				pstmt.setInt( 2, gramSize );
+				pstmt.setString( 3, view.getName() );
+				
+				ResultSet rs = pstmt.executeQuery();
 				while ( rs.next() ) {
-					Result r = new Result( resultid, rs.getString( "dataset_name"), rs.getString( "filename" ) );
-					r.setProperty( "matches", rs.getInt( "numMatches" ) );
-					results.add( r );
-					resultid++;
+					for ( int offset : PostingCodec.decode( rs.getBytes( "positions" ) ) ) {
+						postings.add( new Posting( rs.getString( "dataset_name" ), rs.getString( "filename" ), rs.getString( "partname" ), rs.getInt( "spine_index" ), offset ) );
+					}
 				}
 				
 				// Close the ResultSet
 				rs.close();
 			} catch ( SQLException sqle ) {
 				sqle.printStackTrace();
-			} finally {		
+			} finally {
 				this.disconnect( conn );
 			}
 		}
 		
-		return results;
+		return postings;
+	}
+	
+	
+	/**
+	 * Does nothing: every bulk insert is committed in its own transaction, so the database file is always a 
+	 * consistent snapshot.
+	 * 
+	 * @since 1.1.0
+	 */
+	@Override
+	public void snapshot() {
 	}
 	
 
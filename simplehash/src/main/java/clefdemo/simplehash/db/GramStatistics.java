@@ -0,0 +1,176 @@
+package clefdemo.simplehash.db;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import clefdemo.simplehash.humdrum.TokenDictionary;
+import clefdemo.simplehash.index.LongIntCounter;
+import clefdemo.simplehash.index.TopK;
+
+/**
+ * This class computes the length of the posting list of every n-gram of a buffer, i.e. the number of its
+ * occurrences, and the histogram of those lengths for each view and n-gram size.
+ *
+ * An n-gram whose posting list is longer than a threshold is a stop-gram: a short n-gram such as a run of repeated
+ * quarter notes, found in so many files that its occurrences say little about any of them, while reading them makes
+ * every query containing it slow. The postings of stop-grams are left out of the index store; the files containing
+ * them are still known from their bitmaps, and how often each file contains them from precomputed counts.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class GramStatistics {
+
+	private final HashRecordBuffer records;
+	private final int threshold;
+
+	// The number of occurrences, of files and the first record of each n-gram, keyed by HashRecordBuffer#gramKey(int).
+	private final LongIntCounter postings = new LongIntCounter( 1024 );
+	private final LongIntCounter files = new LongIntCounter( 1024 );
+	private final LongIntCounter firstRecords = new LongIntCounter( 1024 );
+
+
+	/**
+	 * @since 1.1.0
+	 * @param records the records of hashed n-grams of symbolic music data
+	 * @param threshold the number of occurrences above which an n-gram is a stop-gram, or 0 for no stop-grams
+	 */
+	public GramStatistics( HashRecordBuffer records, int threshold ) {
+		this.records = records;
+		this.threshold = threshold;
+
+		// The records are in order of file, so a record of an n-gram is in a new file unless it is in that of the last.
+		LongIntCounter lastFiles = new LongIntCounter( 1024 );
+		for ( int i = 0; i < records.size(); i++ ) {
+			long key = records.gramKey( i );
+			if ( this.postings.add( key, 1 ) == 1 ) {
+				this.firstRecords.add( key, i + 1 );
+			}
+			int file = records.file( i ) + 1;
+			int last = lastFiles.get( key );
+			if ( last != file ) {
+				lastFiles.add( key, file - last );
+				this.files.add( key, 1 );
+			}
+		}
+	}
+
+
+	/**
+	 * Gets the number of files in which an n-gram occurs, not counting the aliases of its spines.
+	 *
+	 * @since 1.1.0
+	 * @param key the key of the n-gram, as from {@link HashRecordBuffer#gramKey(int)}
+	 * @return
+	 */
+	public int files( long key ) {
+		return this.files.get( key );
+	}
+
+
+	/**
+	 * Gets the text of an n-gram, from its first occurrence.
+	 *
+	 * @since 1.1.0
+	 * @param key the key of the n-gram, as from {@link HashRecordBuffer#gramKey(int)}
+	 * @param dict the dictionary that assigned the token ids of the records
+	 * @return the text of the n-gram, as from {@link HashRecordBuffer#gramRaw(int, TokenDictionary)}
+	 */
+	public String gramRaw( long key, TokenDictionary dict ) {
+		return this.records.gramRaw( this.firstRecords.get( key ) - 1, dict );
+	}
+
+
+	/**
+	 * Gets the histogram of the lengths of the posting lists of each view and n-gram size.
+	 *
+	 * Bucket {@code b} counts the n-grams with between 2<sup>b</sup> and 2<sup>b+1</sup> - 1 occurrences.
+	 *
+	 * @since 1.1.0
+	 * @return the number of n-grams in each bucket, keyed by view name and n-gram size separated by a tab
+	 */
+	public Map<String, long[]> histogram() {
+		Map<String, long[]> histogram = new TreeMap<String, long[]>();
+		for ( int slot = 0; slot < this.postings.capacity(); slot++ ) {
+			if ( this.postings.isOccupied( slot ) ) {
+				long key = this.postings.keyAt( slot );
+				long[] buckets = histogram.computeIfAbsent( HashRecordBuffer.keyView( key ).getName() + "\t" + HashRecordBuffer.keyGramSize( key ), k -> new long[ Integer.SIZE ] );
+				buckets[ Integer.SIZE - 1 - Integer.numberOfLeadingZeros( this.postings.countAt( slot ) ) ]++;
+			}
+		}
+		return histogram;
+	}
+
+
+	/**
+	 * Gets the n-grams with the most occurrences.
+	 *
+	 * @since 1.1.0
+	 * @param n the maximum number of n-grams
+	 * @return the keys of at most {@code n} n-grams, most occurrences first
+	 */
+	public long[] hottest( int n ) {
+		TopK<Long> top = new TopK<Long>( n );
+		for ( int slot = 0; slot < this.postings.capacity(); slot++ ) {
+			if ( this.postings.isOccupied( slot ) ) {
+				top.offer( this.postings.keyAt( slot ), this.postings.countAt( slot ) );
+			}
+		}
+		return top.toList().stream().mapToLong( Long::longValue ).toArray();
+	}
+
+
+	/**
+	 * Determines whether an n-gram is a stop-gram.
+	 *
+	 * @since 1.1.0
+	 * @param key the key of the n-gram, as from {@link HashRecordBuffer#gramKey(int)}
+	 * @return true if the n-gram has more occurrences than the threshold
+	 */
+	public boolean isStopGram( long key ) {
+		return this.threshold > 0 && this.postings.get( key ) > this.threshold;
+	}
+
+
+	/**
+	 * Gets the number of occurrences of an n-gram, i.e. the length of its posting list.
+	 *
+	 * @since 1.1.0
+	 * @param key the key of the n-gram, as from {@link HashRecordBuffer#gramKey(int)}
+	 * @return
+	 */
+	public int postings( long key ) {
+		return this.postings.get( key );
+	}
+
+
+	/**
+	 * Gets the stop-grams.
+	 *
+	 * @since 1.1.0
+	 * @return the keys of the stop-grams, most occurrences first
+	 */
+	public long[] stopGrams() {
+		TopK<Long> top = new TopK<Long>( Integer.MAX_VALUE );
+		for ( int slot = 0; slot < this.postings.capacity(); slot++ ) {
+			if ( this.postings.isOccupied( slot ) && this.isStopGram( this.postings.keyAt( slot ) ) ) {
+				top.offer( this.postings.keyAt( slot ), this.postings.countAt( slot ) );
+			}
+		}
+		return top.toList().stream().mapToLong( Long::longValue ).toArray();
+	}
+
+
+	/**
+	 * Gets the records of the buffer that are not occurrences of stop-grams, to be added to the index store.
+	 *
+	 * @since 1.1.0
+	 * @return the records, sharing the files, spines and pool of the buffer
+	 */
+	public HashRecordBuffer withoutStopGrams() {
+		if ( this.threshold <= 0 ) {
+			return this.records;
+		}
+		return this.records.without( this::isStopGram );
+	}
+}
@@ -0,0 +1,727 @@
+package clefdemo.simplehash.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongPredicate;
+
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.humdrum.TokenDictionary;
+import clefdemo.simplehash.index.LongIntCounter;
+import clefdemo.simplehash.index.RoaringBitmap;
+
+/**
+ * This class holds the records of hashed n-grams of symbolic music data in columns, one array per field, rather
+ * than as one object per record.
+ *
+ * A record is five ints: the file id, the spine id, the n-gram size, the hash, and the position of the n-gram's
+ * first element in a pool of elements shared by every record. Here a spine is one view of one spine of a file,
+ * whose elements are copied into the pool once by {@link #addSpine(int, String, int, SpineView, int[], int[])},
+ * along with the token offset of each element, which is the offset stored with each posting; the names
+ * of the files and parts are kept once per file and per spine. Every column grows in chunks of 2^16 ints, so that
+ * adding a record never copies the records before it.
+ *
+ * The records of a spine are added consecutively, after the spine itself, and can be read back as the range
+ * {@link #firstRecord(int)} to {@link #endRecord(int)}. A buffer can be split into partitions that share its files,
+ * spines and pool, each with a subset of its records, by hash or by dataset; see
+ * {@link #partition(int, IntUnaryOperator)} and {@link #partitionByDataset(List)}.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class HashRecordBuffer {
+
+	private static final int VIEWS = SpineView.values().length;
+
+	// The columns of the records.
+	private final IntColumn files = new IntColumn();
+	private final IntColumn spines = new IntColumn();
+	private final IntColumn gramSizes = new IntColumn();
+	private final IntColumn hashes = new IntColumn();
+	private final IntColumn tokens = new IntColumn();
+
+	// The elements of every spine, one after another, and the token offset of each.
+	private final IntColumn pool;
+	private final IntColumn poolOffsets;
+
+	// The files.
+	private final List<String> datasetNames;
+	private final List<String> filenames;
+	private final Map<String, Integer> fileIds;
+
+	// The spines, and the parts to which they belong. Partitions share all but the first record of each spine.
+	private final IntColumn spineFiles;
+	private final IntColumn spineParts;
+	private final IntColumn spineIndexes;
+	private final IntColumn spineViews;
+	private final IntColumn spineStarts;
+	private final IntColumn spineFirsts = new IntColumn();
+	private final List<String> partnames;
+	private final Map<String, Integer> partIds;
+
+	// The files of the spines that are aliases of an indexed spine, keyed by the file and spine index of that spine.
+	private final Map<Long, List<Integer>> aliasFiles;
+
+
+	/**
+	 * Creates an empty buffer.
+	 *
+	 * @since 1.1.0
+	 */
+	public HashRecordBuffer() {
+		this.pool = new IntColumn();
+		this.poolOffsets = new IntColumn();
+		this.datasetNames = new ArrayList<String>();
+		this.filenames = new ArrayList<String>();
+		this.fileIds = new HashMap<String, Integer>();
+		this.spineFiles = new IntColumn();
+		this.spineParts = new IntColumn();
+		this.spineIndexes = new IntColumn();
+		this.spineViews = new IntColumn();
+		this.spineStarts = new IntColumn();
+		this.partnames = new ArrayList<String>();
+		this.partIds = new HashMap<String, Integer>();
+		this.aliasFiles = new HashMap<Long, List<Integer>>();
+	}
+
+
+	/**
+	 * Creates an empty partition of a buffer, sharing its files, spines and pool.
+	 *
+	 * @since 1.1.0
+	 * @param whole the buffer being partitioned
+	 */
+	private HashRecordBuffer( HashRecordBuffer whole ) {
+		this.pool = whole.pool;
+		this.poolOffsets = whole.poolOffsets;
+		this.datasetNames = whole.datasetNames;
+		this.filenames = whole.filenames;
+		this.fileIds = whole.fileIds;
+		this.spineFiles = whole.spineFiles;
+		this.spineParts = whole.spineParts;
+		this.spineIndexes = whole.spineIndexes;
+		this.spineViews = whole.spineViews;
+		this.spineStarts = whole.spineStarts;
+		this.partnames = whole.partnames;
+		this.partIds = whole.partIds;
+		this.aliasFiles = whole.aliasFiles;
+	}
+
+
+	/**
+	 * Adds a file, unless it has already been added.
+	 *
+	 * @since 1.1.0
+	 * @param datasetName the name of the dataset to which the file belongs
+	 * @param filename the name of the Humdrum file
+	 * @return the file id
+	 */
+	public int addFile( String datasetName, String filename ) {
+		String key = datasetName + "\t" + filename;
+		Integer id = this.fileIds.get( key );
+		if ( id == null ) {
+			id = this.datasetNames.size();
+			this.datasetNames.add( datasetName );
+			this.filenames.add( filename );
+			this.fileIds.put( key, id );
+		}
+		return id;
+	}
+
+
+	/**
+	 * Notes that a spine of a file is an alias of an indexed spine, i.e. that its filtered tokens are identical, so
+	 * that the file is counted among those in which the n-grams of the indexed spine occur.
+	 *
+	 * @since 1.1.0
+	 * @param file the file id of the indexed spine
+	 * @param spineIndex the index of the indexed spine within its Humdrum file
+	 * @param aliasFile the file id of the alias
+	 */
+	public void addAlias( int file, int spineIndex, int aliasFile ) {
+		this.aliasFiles.computeIfAbsent( ( (long) file << 32 ) | ( spineIndex & 0xFFFFFFFFL ), k -> new ArrayList<Integer>() ).add( aliasFile );
+	}
+
+
+	/**
+	 * Gets the files of the aliases of an indexed spine.
+	 *
+	 * @since 1.1.0
+	 * @param file the file id of the indexed spine
+	 * @param spineIndex the index of the indexed spine within its Humdrum file
+	 * @return the file ids of its aliases, empty if it has none
+	 */
+	public List<Integer> aliasFiles( int file, int spineIndex ) {
+		List<Integer> files = this.aliasFiles.get( ( (long) file << 32 ) | ( spineIndex & 0xFFFFFFFFL ) );
+		return files == null ? Collections.<Integer>emptyList() : files;
+	}
+
+
+	/**
+	 * Adds one view of a spine, to which the records added next belong.
+	 *
+	 * @since 1.1.0
+	 * @param file the file id, from {@link #addFile(String, String)}
+	 * @param partname the name of the part within the Humdrum file
+	 * @param spineIndex the index of the spine of the part within the Humdrum file
+	 * @param view the view of the part's tokens
+	 * @param values the elements of the view of the part; token ids for the KERN view
+	 * @param offsets the token offset of each element, as from {@link SpineView#offsets(int[], TokenDictionary)}
+	 * @return the spine id
+	 */
+	public int addSpine( int file, String partname, int spineIndex, SpineView view, int[] values, int[] offsets ) {
+		String key = file + "\t" + partname;
+		Integer part = this.partIds.get( key );
+		if ( part == null ) {
+			part = this.partIds.size();
+			this.partIds.put( key, part );
+		}
+
+		this.spineFiles.add( file );
+		this.spineParts.add( part );
+		this.spineIndexes.add( spineIndex );
+		this.spineViews.add( view.ordinal() );
+		this.spineStarts.add( this.pool.size() );
+		this.spineFirsts.add( this.size() );
+		this.partnames.add( partname );
+		for ( int k = 0; k < values.length; k++ ) {
+			this.pool.add( values[k] );
+			this.poolOffsets.add( offsets[k] );
+		}
+		return this.numSpines() - 1;
+	}
+
+
+	/**
+	 * Adds a record of a hashed n-gram of the spine added last.
+	 *
+	 * @since 1.1.0
+	 * @param gramSize the size of the n-gram, in tokens
+	 * @param hash the hashed value of the n-gram
+	 * @param offset the index of the n-gram's first element within the elements of the spine
+	 */
+	public void add( int gramSize, int hash, int offset ) {
+		int spine = this.numSpines() - 1;
+		this.files.add( this.spineFiles.get( spine ) );
+		this.spines.add( spine );
+		this.gramSizes.add( gramSize );
+		this.hashes.add( hash );
+		this.tokens.add( this.spineStarts.get( spine ) + offset );
+	}
+
+
+	/**
+	 * Gets the names of the datasets to which the files of this buffer belong.
+	 *
+	 * @since 1.1.0
+	 * @return the dataset names, each once, in alphabetical order
+	 */
+	public List<String> datasetNames() {
+		return new ArrayList<String>( new TreeSet<String>( this.datasetNames ) );
+	}
+
+
+	/**
+	 * Splits the records of this buffer into partitions by hash.
+	 *
+	 * The partitions share the files, spines and pool of this buffer, which must not be added to afterwards; only 
+	 * the records are copied, so that each partition keeps the records of each spine consecutive and in order.
+	 *
+	 * @since 1.1.0
+	 * @param parts the number of partitions
+	 * @param partOfHash gives the partition, from 0 to {@code parts - 1}, of a hash
+	 * @return the partitions
+	 */
+	public HashRecordBuffer[] partition( int parts, IntUnaryOperator partOfHash ) {
+		return this.split( parts, i -> partOfHash.applyAsInt( this.gramHashed( i ) ) );
+	}
+
+
+	/**
+	 * Splits the records of this buffer into partitions by dataset, as by {@link #partition(int, IntUnaryOperator)}.
+	 *
+	 * @since 1.1.0
+	 * @param datasets the names of the datasets of the partitions, which must include that of every file
+	 * @return the partitions, one per dataset, in the same order
+	 */
+	public HashRecordBuffer[] partitionByDataset( List<String> datasets ) {
+		int[] partOfFile = new int[ this.numFiles() ];
+		for ( int file = 0; file < partOfFile.length; file++ ) {
+			partOfFile[file] = datasets.indexOf( this.datasetName( file ) );
+		}
+		return this.split( datasets.size(), i -> partOfFile[ this.files.get( i ) ] );
+	}
+
+
+	/**
+	 * Gets the records of this buffer except those of some n-grams, as a partition of it (see 
+	 * {@link #partition(int, IntUnaryOperator)}).
+	 *
+	 * @since 1.1.0
+	 * @param dropped tests the key of an n-gram, as from {@link #gramKey(int)}, for whether to leave out its records
+	 * @return the remaining records
+	 */
+	public HashRecordBuffer without( LongPredicate dropped ) {
+		return this.split( 2, i -> dropped.test( this.gramKey( i ) ) ? 1 : 0 )[0];
+	}
+
+
+	/**
+	 * Gets the set of files in which each n-gram occurs, including the files of the aliases of its spines.
+	 *
+	 * @since 1.1.0
+	 * @param ids the file id to give each file of this buffer
+	 * @param groups receives the number, from 1, of the bitmap of each n-gram, keyed as by {@link #gramKey(int)}
+	 * @return the bitmaps of file ids, in the order of their numbers
+	 */
+	public List<RoaringBitmap> fileBitmaps( int[] ids, LongIntCounter groups ) {
+		List<RoaringBitmap> bitmaps = new ArrayList<RoaringBitmap>();
+		int spine = -1;
+		List<Integer> aliases = null;
+		for ( int i = 0; i < this.size(); i++ ) {
+			long key = this.gramKey( i );
+			int group = groups.get( key );
+			if ( group == 0 ) {
+				bitmaps.add( new RoaringBitmap() );
+				group = groups.add( key, bitmaps.size() );
+			}
+			RoaringBitmap bitmap = bitmaps.get( group - 1 );
+			bitmap.add( ids[ this.file( i ) ] );
+
+			// The n-grams of an indexed spine also occur in the files of its aliases.
+			if ( this.spine( i ) != spine ) {
+				spine = this.spine( i );
+				aliases = this.aliasFiles( this.spineFile( spine ), this.spineIndex( spine ) );
+			}
+			for ( int alias : aliases ) {
+				bitmap.add( ids[ alias ] );
+			}
+		}
+		return bitmaps;
+	}
+
+
+	/**
+	 * Counts the occurrences of some n-grams in each file, including those in the files of the aliases of its spines.
+	 *
+	 * @since 1.1.0
+	 * @param ids the file id to give each file of this buffer
+	 * @param counted tests the key of an n-gram, as from {@link #gramKey(int)}, for whether to count its occurrences
+	 * @return the number of occurrences keyed by file id, keyed by the key of the n-gram
+	 */
+	public Map<Long, LongIntCounter> fileCounts( int[] ids, LongPredicate counted ) {
+		Map<Long, LongIntCounter> counts = new HashMap<Long, LongIntCounter>();
+		for ( int i = 0; i < this.size(); i++ ) {
+			long key = this.gramKey( i );
+			if ( ! counted.test( key ) ) {
+				continue;
+			}
+			LongIntCounter perFile = counts.computeIfAbsent( key, k -> new LongIntCounter( 1024 ) );
+			perFile.add( ids[ this.file( i ) ], 1 );
+			int spine = this.spine( i );
+			for ( int alias : this.aliasFiles( this.spineFile( spine ), this.spineIndex( spine ) ) ) {
+				perFile.add( ids[ alias ], 1 );
+			}
+		}
+		return counts;
+	}
+
+
+	/**
+	 * Splits the records of this buffer into partitions.
+	 *
+	 * @since 1.1.0
+	 * @param parts the number of partitions
+	 * @param partOfRecord gives the partition, from 0 to {@code parts - 1}, of a record
+	 * @return the partitions
+	 */
+	private HashRecordBuffer[] split( int parts, IntUnaryOperator partOfRecord ) {
+		HashRecordBuffer[] partitions = new HashRecordBuffer[ parts ];
+		for ( int p = 0; p < parts; p++ ) {
+			partitions[p] = new HashRecordBuffer( this );
+		}
+
+		for ( int spine = 0; spine < this.numSpines(); spine++ ) {
+			for ( HashRecordBuffer partition : partitions ) {
+				partition.spineFirsts.add( partition.size() );
+			}
+			for ( int i = this.firstRecord( spine ); i < this.endRecord( spine ); i++ ) {
+				HashRecordBuffer partition = partitions[ partOfRecord.applyAsInt( i ) ];
+				partition.files.add( this.files.get( i ) );
+				partition.spines.add( spine );
+				partition.gramSizes.add( this.gramSizes.get( i ) );
+				partition.hashes.add( this.hashes.get( i ) );
+				partition.tokens.add( this.tokens.get( i ) );
+			}
+		}
+		return partitions;
+	}
+
+
+	/**
+	 * Gets the number of records.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int size() {
+		return this.hashes.size();
+	}
+
+
+	/**
+	 * Determines whether there are no records.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public boolean isEmpty() {
+		return this.size() == 0;
+	}
+
+
+	/**
+	 * Gets the number of files.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int numFiles() {
+		return this.datasetNames.size();
+	}
+
+
+	/**
+	 * Gets the number of parts, i.e. of distinct part names within each file.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int numParts() {
+		return this.partIds.size();
+	}
+
+
+	/**
+	 * Gets the number of spines, counting each view of a spine separately.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int numSpines() {
+		return this.spineFirsts.size();
+	}
+
+
+	/**
+	 * Gets the file id of a record.
+	 *
+	 * @since 1.1.0
+	 * @param i the index of the record
+	 * @return
+	 */
+	public int file( int i ) {
+		return this.files.get( i );
+	}
+
+
+	/**
+	 * Gets the spine id of a record.
+	 *
+	 * @since 1.1.0
+	 * @param i the index of the record
+	 * @return
+	 */
+	public int spine( int i ) {
+		return this.spines.get( i );
+	}
+
+
+	/**
+	 * Gets the n-gram size of a record, in tokens.
+	 *
+	 * @since 1.1.0
+	 * @param i the index of the record
+	 * @return
+	 */
+	public int gramSize( int i ) {
+		return this.gramSizes.get( i );
+	}
+
+
+	/**
+	 * Gets the hash of a record.
+	 *
+	 * @since 1.1.0
+	 * @param i the index of the record
+	 * @return
+	 */
+	public int gramHashed( int i ) {
+		return this.hashes.get( i );
+	}
+
+
+	/**
+	 * Gets the offset of the first token of a record's n-gram within the tokens of its part, whatever the view.
+	 *
+	 * @since 1.1.0
+	 * @param i the index of the record
+	 * @return
+	 */
+	public int gramOffset( int i ) {
+		return this.poolOffsets.get( this.tokens.get( i ) );
+	}
+
+
+	/**
+	 * Gets the view over which a record's n-gram was taken.
+	 *
+	 * @since 1.1.0
+	 * @param i the index of the record
+	 * @return
+	 */
+	public SpineView view( int i ) {
+		return this.spineView( this.spine( i ) );
+	}
+
+
+	/**
+	 * Gets a key identifying a record's n-gram by hash, n-gram size and view, for grouping records without
+	 * building strings. The key is never Long.MIN_VALUE.
+	 *
+	 * @since 1.1.0
+	 * @param i the index of the record
+	 * @return the hash in the high 32 bits, and the n-gram size and view in the low 32 bits
+	 */
+	public long gramKey( int i ) {
+		return key( this.gramHashed( i ), this.gramSize( i ), this.view( i ) );
+	}
+
+
+	/**
+	 * Gets the key of an n-gram, as from {@link #gramKey(int)}.
+	 *
+	 * @since 1.1.0
+	 * @param hash the hashed n-gram
+	 * @param gramSize the size of the n-gram that was hashed, in tokens
+	 * @param view the view over which the n-gram was taken
+	 * @return
+	 */
+	public static long key( int hash, int gramSize, SpineView view ) {
+		return ( (long) hash << 32 ) | ( gramSize * VIEWS + view.ordinal() );
+	}
+
+
+	/**
+	 * Gets the hash identified by a key from {@link #gramKey(int)}.
+	 *
+	 * @since 1.1.0
+	 * @param key a key
+	 * @return
+	 */
+	public static int keyHash( long key ) {
+		return (int) ( key >>> 32 );
+	}
+
+
+	/**
+	 * Gets the n-gram size identified by a key from {@link #gramKey(int)}.
+	 *
+	 * @since 1.1.0
+	 * @param key a key
+	 * @return
+	 */
+	public static int keyGramSize( long key ) {
+		return (int) key / VIEWS;
+	}
+
+
+	/**
+	 * Gets the view identified by a key from {@link #gramKey(int)}.
+	 *
+	 * @since 1.1.0
+	 * @param key a key
+	 * @return
+	 */
+	public static SpineView keyView( long key ) {
+		return SpineView.values()[ (int) key % VIEWS ];
+	}
+
+
+	/**
+	 * Gets the raw string value of a record's n-gram.
+	 *
+	 * @since 1.1.0
+	 * @param i the index of the record
+	 * @param dict the dictionary that assigned the token ids of the n-gram
+	 * @return the tokens of the n-gram joined as a single string
+	 */
+	public String gramRaw( int i, TokenDictionary dict ) {
+		SpineView view = this.view( i );
+		int[] values = this.gramTokens( i );
+		return view.format( values, 0, values.length, dict );
+	}
+
+
+	/**
+	 * Gets the elements of the view that make up a record's n-gram.
+	 *
+	 * @since 1.1.0
+	 * @param i the index of the record
+	 * @return a copy of the elements of the n-gram; token ids for the KERN view
+	 */
+	public int[] gramTokens( int i ) {
+		int[] values = new int[ this.view( i ).span( this.gramSize( i ) ) ];
+		int token = this.tokens.get( i );
+		for ( int k = 0; k < values.length; k++ ) {
+			values[k] = this.pool.get( token + k );
+		}
+		return values;
+	}
+
+
+	/**
+	 * Gets the dataset name of a file.
+	 *
+	 * @since 1.1.0
+	 * @param file the file id
+	 * @return
+	 */
+	public String datasetName( int file ) {
+		return this.datasetNames.get( file );
+	}
+
+
+	/**
+	 * Gets the filename of a file.
+	 *
+	 * @since 1.1.0
+	 * @param file the file id
+	 * @return
+	 */
+	public String filename( int file ) {
+		return this.filenames.get( file );
+	}
+
+
+	/**
+	 * Gets the file id of a spine.
+	 *
+	 * @since 1.1.0
+	 * @param spine the spine id
+	 * @return
+	 */
+	public int spineFile( int spine ) {
+		return this.spineFiles.get( spine );
+	}
+
+
+	/**
+	 * Gets the part id of a spine, shared by the spines of a file with the same part name.
+	 *
+	 * @since 1.1.0
+	 * @param spine the spine id
+	 * @return a part id from 0 to {@link #numParts()} - 1
+	 */
+	public int spinePart( int spine ) {
+		return this.spineParts.get( spine );
+	}
+
+
+	/**
+	 * Gets the part name of a spine.
+	 *
+	 * @since 1.1.0
+	 * @param spine the spine id
+	 * @return
+	 */
+	public String partname( int spine ) {
+		return this.partnames.get( spine );
+	}
+
+
+	/**
+	 * Gets the index of a spine within its Humdrum file.
+	 *
+	 * @since 1.1.0
+	 * @param spine the spine id
+	 * @return
+	 */
+	public int spineIndex( int spine ) {
+		return this.spineIndexes.get( spine );
+	}
+
+
+	/**
+	 * Gets the view of a spine.
+	 *
+	 * @since 1.1.0
+	 * @param spine the spine id
+	 * @return
+	 */
+	public SpineView spineView( int spine ) {
+		return SpineView.values()[ this.spineViews.get( spine ) ];
+	}
+
+
+	/**
+	 * Gets the index of the first record of a spine.
+	 *
+	 * @since 1.1.0
+	 * @param spine the spine id
+	 * @return
+	 */
+	public int firstRecord( int spine ) {
+		return this.spineFirsts.get( spine );
+	}
+
+
+	/**
+	 * Gets the index after the last record of a spine.
+	 *
+	 * @since 1.1.0
+	 * @param spine the spine id
+	 * @return
+	 */
+	public int endRecord( int spine ) {
+		return spine + 1 < this.numSpines() ? this.spineFirsts.get( spine + 1 ) : this.size();
+	}
+
+
+	/**
+	 * A growable column of ints, stored in chunks of 2^16.
+	 */
+	private static class IntColumn {
+
+		private static final int CHUNK_BITS = 16;
+		private static final int CHUNK_MASK = ( 1 << CHUNK_BITS ) - 1;
+
+		private int[][] chunks = new int[4][];
+		private int size;
+
+		private void add( int value ) {
+			int chunk = this.size >>> CHUNK_BITS;
+			if ( chunk == this.chunks.length ) {
+				this.chunks = Arrays.copyOf( this.chunks, chunk * 2 );
+			}
+			if ( this.chunks[chunk] == null ) {
+				this.chunks[chunk] = new int[ 1 << CHUNK_BITS ];
+			}
+			this.chunks[chunk][ this.size & CHUNK_MASK ] = value;
+			this.size++;
+		}
+
+		private int get( int i ) {
+			return this.chunks[ i >>> CHUNK_BITS ][ i & CHUNK_MASK ];
+		}
+
+		private int size() {
+			return this.size;
+		}
+	}
+}
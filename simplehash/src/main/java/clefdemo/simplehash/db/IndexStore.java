@@ -0,0 +1,128 @@
+package clefdemo.simplehash.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import clefdemo.simplehash.Result;
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.humdrum.TokenDictionary;
+
+/**
+ * The storage of the hashed n-grams of the source data and of their occurrences, from which exact, chained and 
+ * approximate lookups are answered.
+ *
+ * The backend is chosen by the environment variable INDEX_STORE: {@link Database} stores the n-grams in SQLite, 
+ * and {@link MemoryIndexStore} holds them in memory, on or off the Java heap or memory-mapped. An instance may keep 
+ * the state of its last lookup, such as the total number of results, so every query uses its own instance; the data 
+ * behind the instances is shared.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public interface IndexStore {
+
+	/**
+	 * Adds the records of hashed n-grams of symbolic music data.
+	 *
+	 * @since 1.1.0
+	 * @param records the records of hashed n-grams of symbolic music data
+	 * @param dict the dictionary that assigned the token ids of the records
+	 * @return the number of records added
+	 */
+	public int bulkAdd( HashRecordBuffer records, TokenDictionary dict );
+
+
+	/**
+	 * Releases any resources held by this instance. The stored n-grams remain available to other instances.
+	 *
+	 * @since 1.1.0
+	 */
+	public void close();
+
+
+	/**
+	 * Gets the number of files that matched the last call to {@link #selectAllWithHash(int, int, SpineView, int, int)}.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int getTotalResults();
+
+
+	/**
+	 * Gets the number of distinct n-grams stored, counting each hash, n-gram size and view once.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public long numGrams();
+
+
+	/**
+	 * Gets the number of occurrences of n-grams stored.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public long numPostings();
+
+
+	/**
+	 * Selects a page of the files in which a given hash occurs, ranked by number of occurrences.
+	 *
+	 * Each result has the property "matches", the number of occurrences, and the positions of the occurrences (see 
+	 * {@link Result#addPosition(String, int, int, int)}). The number of matching files is available afterwards from 
+	 * {@link #getTotalResults()}.
+	 *
+	 * @since 1.1.0
+	 * @param hash a hashed n-gram to select
+	 * @param gramSize the size of the n-gram that was hashed, in tokens
+	 * @param view the view over which the n-gram was taken
+	 * @param offset the number of best results to skip
+	 * @param limit the maximum number of results, or 0 for no maximum
+	 * @return a list of {@code Result} objects, empty if the hash does not occur
+	 */
+	public List<Result> selectAllWithHash( int hash, int gramSize, SpineView view, int offset, int limit );
+
+
+	/**
+	 * Selects the individual occurrences of a given hash among n-grams of a given size.
+	 *
+	 * @since 1.1.0
+	 * @param hash a hashed n-gram to select
+	 * @param gramSize the size of the n-gram that was hashed, in tokens
+	 * @param view the view over which the n-gram was taken
+	 * @return a list of {@code Posting} objects ordered by spine and offset, empty if the hash does not occur
+	 */
+	public List<Posting> selectPostingsWithHash( int hash, int gramSize, SpineView view );
+
+
+	/**
+	 * Selects the individual occurrences of each of the given hashes among n-grams of a given size.
+	 *
+	 * Stores that can look up several hashes at once, such as {@link ShardedIndexStore}, override this method; by 
+	 * default each hash is looked up in turn.
+	 *
+	 * @since 1.1.0
+	 * @param hashes hashed n-grams to select
+	 * @param gramSize the size of the n-grams that were hashed, in tokens
+	 * @param view the view over which the n-grams were taken
+	 * @return the occurrences of each hash, in the order of {@code hashes}, as by 
+	 * {@link #selectPostingsWithHash(int, int, SpineView)}
+	 */
+	public default List<List<Posting>> selectPostingsWithHashes( int[] hashes, int gramSize, SpineView view ) {
+		List<List<Posting>> postings = new ArrayList<List<Posting>>( hashes.length );
+		for ( int hash : hashes ) {
+			postings.add( this.selectPostingsWithHash( hash, gramSize, view ) );
+		}
+		return postings;
+	}
+
+
+	/**
+	 * Makes everything added so far durable, where the backend has anything to persist.
+	 *
+	 * @since 1.1.0
+	 */
+	public void snapshot();
+}
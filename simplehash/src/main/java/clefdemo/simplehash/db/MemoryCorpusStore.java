@@ -0,0 +1,187 @@
+package clefdemo.simplehash.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import clefdemo.simplehash.humdrum.KernMetadata;
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.index.LongIntCounter;
+import clefdemo.simplehash.index.RoaringBitmap;
+
+/**
+ * This class holds the catalog of the source data in memory, for index stores held in memory.
+ *
+ * It is built once on ingestion, from the same records as the index store, and then shared by every query. Files
+ * have the file ids given to them by the database, so that results, filters and bitmaps agree with those of a
+ * {@link Database} over the same source data.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class MemoryCorpusStore implements CorpusStore {
+
+	private final Map<String, Integer> fileIds;
+
+	// The bitmap of each n-gram, numbered from 1 and keyed by HashRecordBuffer#gramKey(int).
+	private final LongIntCounter groups = new LongIntCounter( 1024 );
+	private final List<RoaringBitmap> bitmaps;
+
+	// The number of occurrences of each stop-gram per file id, keyed by HashRecordBuffer#gramKey(int).
+	private final Map<Long, LongIntCounter> stopGramCounts;
+
+	private final List<SpineRecord> spines;
+	private final Map<String, List<SpineRecord>> spinesByFile = new HashMap<String, List<SpineRecord>>();
+
+	// The reference records of the files that have any, keyed by file id.
+	private final Map<Integer, KernMetadata> metadata = new HashMap<Integer, KernMetadata>();
+
+
+	/**
+	 * @since 1.1.0
+	 * @param records the records of hashed n-grams of symbolic music data
+	 * @param stats the statistics of the records
+	 * @param metadata the reference records of the files, keyed by their file ids in {@code records}
+	 * @param spines the token ids of the stored spines, not counting their aliases
+	 * @param fileIds the file id of every file, keyed by dataset name and filename separated by a tab
+	 */
+	public MemoryCorpusStore( HashRecordBuffer records, GramStatistics stats, Map<Integer, KernMetadata> metadata, List<SpineRecord> spines, Map<String, Integer> fileIds ) {
+		this.fileIds = fileIds;
+
+		int[] ids = new int[ records.numFiles() ];
+		for ( int file = 0; file < ids.length; file++ ) {
+			ids[file] = fileIds.get( records.datasetName( file ) + "\t" + records.filename( file ) );
+		}
+		this.bitmaps = records.fileBitmaps( ids, this.groups );
+		this.stopGramCounts = records.fileCounts( ids, stats::isStopGram );
+
+		this.spines = spines;
+		for ( SpineRecord spine : spines ) {
+			this.spinesByFile.computeIfAbsent( spine.getDatasetName() + "\t" + spine.getFilename(), k -> new ArrayList<SpineRecord>() ).add( spine );
+		}
+		for ( List<SpineRecord> list : this.spinesByFile.values() ) {
+			list.sort( ( a, b ) -> a.getSpineIndex() - b.getSpineIndex() );
+		}
+
+		for ( Map.Entry<Integer, KernMetadata> entry : metadata.entrySet() ) {
+			this.metadata.put( ids[ entry.getKey() ], entry.getValue() );
+		}
+	}
+
+
+	/**
+	 * Determines whether a value starts with a prefix, ignoring case, as a LIKE pattern of the prefix would.
+	 *
+	 * @since 1.1.0
+	 * @param value the value, or null
+	 * @param prefix the prefix
+	 * @return true if the value is not null and starts with the prefix
+	 */
+	private static boolean startsWith( String value, String prefix ) {
+		return value != null && value.regionMatches( true, 0, prefix, 0, prefix.length() );
+	}
+
+
+	@Override
+	public int numDistinctFiles() {
+		Set<String> filenames = new HashSet<String>();
+		for ( String fileKey : this.fileIds.keySet() ) {
+			filenames.add( fileKey.substring( fileKey.indexOf( '\t' ) + 1 ) );
+		}
+		return filenames.size();
+	}
+
+
+	/**
+	 * Counts the tokens of the stored spines, not counting their aliases.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	@Override
+	public long numSpineTokens() {
+		long tokens = 0;
+		for ( SpineRecord spine : this.spines ) {
+			tokens += spine.getTokenIds().length;
+		}
+		return tokens;
+	}
+
+
+	@Override
+	public List<SpineRecord> selectAllSpines() {
+		return this.spines;
+	}
+
+
+	@Override
+	public RoaringBitmap[] selectFileBitmaps( int[] hashes, int gramSize, SpineView view ) {
+		RoaringBitmap[] found = new RoaringBitmap[ hashes.length ];
+		for ( int i = 0; i < hashes.length; i++ ) {
+			int group = this.groups.get( HashRecordBuffer.key( hashes[i], gramSize, view ) );
+			found[i] = group == 0 ? new RoaringBitmap() : this.bitmaps.get( group - 1 );
+		}
+		return found;
+	}
+
+
+	@Override
+	public Map<String, Integer> selectFileIds() {
+		return this.fileIds;
+	}
+
+
+	@Override
+	public RoaringBitmap selectFileIdsWithMetadata( String composer, String catalog, Integer fromYear, Integer toYear ) {
+		RoaringBitmap files = new RoaringBitmap();
+		for ( Map.Entry<Integer, KernMetadata> entry : this.metadata.entrySet() ) {
+			KernMetadata km = entry.getValue();
+			Integer born = km.getComposerBorn() == null ? null : Integer.valueOf( km.getComposerBorn() );
+			Integer died = km.getComposerDied() == null ? born : Integer.valueOf( km.getComposerDied() );
+			if ( composer != null && ! startsWith( km.getComposer(), composer ) ) {
+				continue;
+			}
+			if ( catalog != null && ! startsWith( km.getCatalogAndNumber(), catalog ) ) {
+				continue;
+			}
+			if ( toYear != null && ( born == null || born > toYear ) ) {
+				continue;
+			}
+			if ( fromYear != null && ( died == null || died < fromYear ) ) {
+				continue;
+			}
+			files.add( entry.getKey() );
+		}
+		return files;
+	}
+
+
+	@Override
+	public List<SpineRecord> selectSpines( List<String[]> files ) {
+		List<SpineRecord> selected = new ArrayList<SpineRecord>();
+		for ( String[] file : files ) {
+			selected.addAll( this.spinesByFile.getOrDefault( file[0] + "\t" + file[1], Collections.<SpineRecord>emptyList() ) );
+		}
+		return selected;
+	}
+
+
+	@Override
+	public Map<Integer, Integer> selectStopGramCounts( int hash, int gramSize, SpineView view ) {
+		Map<Integer, Integer> counts = new TreeMap<Integer, Integer>();
+		LongIntCounter perFile = this.stopGramCounts.get( HashRecordBuffer.key( hash, gramSize, view ) );
+		if ( perFile != null ) {
+			for ( int slot = 0; slot < perFile.capacity(); slot++ ) {
+				if ( perFile.isOccupied( slot ) ) {
+					counts.put( (int) perFile.keyAt( slot ), perFile.countAt( slot ) );
+				}
+			}
+		}
+		return counts;
+	}
+}
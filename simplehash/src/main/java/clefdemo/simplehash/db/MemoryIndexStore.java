@@ -0,0 +1,204 @@
+package clefdemo.simplehash.db;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import clefdemo.simplehash.Result;
+import clefdemo.simplehash.Settings;
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.humdrum.TokenDictionary;
+import clefdemo.simplehash.index.HeapIntArray;
+import clefdemo.simplehash.index.IntArray;
+import clefdemo.simplehash.index.LongIntCounter;
+import clefdemo.simplehash.index.MappedIntArray;
+import clefdemo.simplehash.index.OffHeapIntArray;
+import clefdemo.simplehash.index.PostingTable;
+
+/**
+ * This class stores the hashed n-grams of the source data in memory, in a {@link PostingTable}.
+ *
+ * The arrays of the table are allocated on the Java heap when INDEX_STORE is "heap", outside it in direct buffers 
+ * when INDEX_STORE is "offheap", or memory-mapped from files in INDEX_STORE_DIR when INDEX_STORE is "mmap". The 
+ * table is built once, from every record, and then shared by the instances that answer queries.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class MemoryIndexStore implements IndexStore {
+
+	private final String backend;
+	private PostingTable table;
+	private int totalResults;
+
+
+	/**
+	 * Creates an empty store, to be filled by {@link #bulkAdd(HashRecordBuffer, TokenDictionary)}.
+	 *
+	 * @since 1.1.0
+	 * @param backend one of {@link Settings#INDEX_STORE_HEAP}, {@link Settings#INDEX_STORE_OFFHEAP} or 
+	 * {@link Settings#INDEX_STORE_MMAP}
+	 */
+	public MemoryIndexStore( String backend ) {
+		this.backend = backend;
+		this.table = new PostingTable( 0, 0, HeapIntArray::new );
+	}
+
+
+	/**
+	 * Creates a store over a table that has already been built.
+	 *
+	 * @since 1.1.0
+	 * @param backend the backend with which the table was built
+	 * @param table the posting table
+	 */
+	public MemoryIndexStore( String backend, PostingTable table ) {
+		this.backend = backend;
+		this.table = table;
+	}
+
+
+	/**
+	 * Allocates an array of ints for the backend of this store.
+	 *
+	 * @since 1.1.0
+	 * @param length the number of ints
+	 * @return the array
+	 */
+	private IntArray allocate( long length ) {
+		if ( this.backend.equals( Settings.INDEX_STORE_MMAP ) ) {
+			try {
+				Path file = Files.createTempFile( Paths.get( Settings.indexStoreDir() ), "simplehash", ".ints" );
+				file.toFile().deleteOnExit();
+				return new MappedIntArray( file, length );
+			} catch ( IOException ioe ) {
+				throw new UncheckedIOException( ioe );
+			}
+		}
+		if ( this.backend.equals( Settings.INDEX_STORE_OFFHEAP ) ) {
+			return new OffHeapIntArray( length );
+		}
+		return new HeapIntArray( length );
+	}
+
+
+	/**
+	 * Builds the posting table of this store from every record.
+	 *
+	 * The records are sorted by n-gram with a counting sort, which keeps the records of each n-gram in the order in 
+	 * which they were added, i.e. by spine and offset.
+	 *
+	 * @since 1.1.0
+	 * @param records the records of hashed n-grams of symbolic music data
+	 * @param dict unused; the table stores no n-gram text
+	 * @return the number of records added
+	 * @throws IllegalStateException thrown if the table has already been built
+	 */
+	@Override
+	public int bulkAdd( HashRecordBuffer records, TokenDictionary dict ) {
+		if ( this.table.size() > 0 ) {
+			throw new IllegalStateException( "The " + this.backend + " index store can only be filled once." );
+		}
+
+		// Count the records of each n-gram, then turn the counts into the index after each n-gram's records.
+		LongIntCounter ends = new LongIntCounter( 1024 );
+		for ( int i = 0; i < records.size(); i++ ) {
+			ends.add( records.gramKey( i ), 1 );
+		}
+		int start = 0;
+		for ( int slot = 0; slot < ends.capacity(); slot++ ) {
+			if ( ends.isOccupied( slot ) ) {
+				int count = ends.countAt( slot );
+				ends.add( ends.keyAt( slot ), start );
+				start += count;
+			}
+		}
+		int[] order = new int[ records.size() ];
+		for ( int i = records.size() - 1; i >= 0; i-- ) {
+			order[ ends.add( records.gramKey( i ), -1 ) ] = i;
+		}
+
+		// Number the spines of the table once per spine of the buffer.
+		PostingTable built = new PostingTable( ends.size(), records.size(), this::allocate );
+		int[] spines = new int[ records.numSpines() ];
+		for ( int spine = 0; spine < spines.length; spine++ ) {
+			int file = records.spineFile( spine );
+			spines[spine] = built.spineId( records.datasetName( file ), records.filename( file ), records.partname( spine ), records.spineIndex( spine ) );
+		}
+
+		for ( int i : order ) {
+			built.append( records.gramHashed( i ), records.gramSize( i ), records.view( i ), spines[ records.spine( i ) ], records.gramOffset( i ) );
+		}
+		this.table = built;
+		return records.size();
+	}
+
+
+	@Override
+	public void close() {
+		this.table = null;
+	}
+
+
+	/**
+	 * Gets the posting table of this store, to be shared with the instances that answer queries.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public PostingTable getTable() {
+		return this.table;
+	}
+
+
+	@Override
+	public int getTotalResults() {
+		return this.totalResults;
+	}
+
+
+	@Override
+	public long numGrams() {
+		return this.table.numGrams();
+	}
+
+
+	@Override
+	public long numPostings() {
+		return this.table.size();
+	}
+
+
+	@Override
+	public List<Result> selectAllWithHash( int hash, int gramSize, SpineView view, int offset, int limit ) {
+		PostingRanker ranker = new PostingRanker();
+		List<Result> results = ranker.rank( this.selectPostingsWithHash( hash, gramSize, view ), offset, limit );
+		this.totalResults = ranker.getTotalResults();
+		return results;
+	}
+
+
+	@Override
+	public List<Posting> selectPostingsWithHash( int hash, int gramSize, SpineView view ) {
+		if ( this.table == null ) {
+			return new ArrayList<Posting>();
+		}
+		return this.table.select( hash, gramSize, view );
+	}
+
+
+	/**
+	 * Writes the table to its files when INDEX_STORE is "mmap". The other backends have nothing to persist; their 
+	 * table is rebuilt from the source data on startup.
+	 *
+	 * @since 1.1.0
+	 */
+	@Override
+	public void snapshot() {
+		this.table.force();
+	}
+}
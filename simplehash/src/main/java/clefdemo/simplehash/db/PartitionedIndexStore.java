@@ -0,0 +1,220 @@
+package clefdemo.simplehash.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import clefdemo.simplehash.Result;
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.humdrum.TokenDictionary;
+import clefdemo.simplehash.index.TopK;
+
+/**
+ * This class partitions the stored n-grams by dataset, each partition an index store of its own.
+ *
+ * A partition holds only the occurrences within the files of its dataset, so a lookup scoped to some datasets reads
+ * only their partitions and never touches the others. With SQLite, each partition is a database file of its own,
+ * which may itself be sharded by hash range (see {@link ShardedIndexStore}). The results of several partitions are
+ * merged by number of matches.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class PartitionedIndexStore implements IndexStore {
+
+	private final Map<String, IndexStore> partitions;
+	private int totalResults;
+
+
+	/**
+	 * @since 1.1.0
+	 * @param partitions the partitions, keyed by dataset name, in the order in which results with as many matches
+	 * are ranked
+	 */
+	public PartitionedIndexStore( Map<String, IndexStore> partitions ) {
+		this.partitions = partitions;
+	}
+
+
+	/**
+	 * Gets the path of the database file of a partition, inserting "-d-" and the name of its dataset before the
+	 * extension of DB_PATH, e.g. "simplehash-d-Bach.db".
+	 *
+	 * The file of a dataset is named after the dataset alone, so that adding or removing other datasets never moves
+	 * its occurrences to a file holding those of another. Characters other than letters, digits and "_" are replaced
+	 * by "_", followed by the hash code of the name in hexadecimal, so that distinct names never share a file, e.g.
+	 * "simplehash-d-Bach_Chorales-34413add.db" for "Bach Chorales"; "-" is replaced too, as it precedes the number
+	 * of a shard.
+	 *
+	 * @since 1.1.0
+	 * @param dbPath the value of DB_PATH
+	 * @param datasetName the name of the dataset of the partition
+	 * @return the path of the partition
+	 */
+	public static String partitionPath( String dbPath, String datasetName ) {
+		String safe = datasetName.replaceAll( "[^A-Za-z0-9_]", "_" );
+		if ( ! safe.equals( datasetName ) || safe.isEmpty() ) {
+			safe += "-" + Integer.toHexString( datasetName.hashCode() );
+		}
+		return ShardedIndexStore.suffixPath( dbPath, "-d-" + safe );
+	}
+
+
+	/**
+	 * Adds the records of each dataset to its partition.
+	 *
+	 * @since 1.1.0
+	 * @param records the records of hashed n-grams of symbolic music data, all of them in the datasets of the
+	 * partitions
+	 * @param dict the dictionary that assigned the token ids of the records
+	 * @return the number of records added
+	 */
+	@Override
+	public int bulkAdd( HashRecordBuffer records, TokenDictionary dict ) {
+		List<String> datasets = new ArrayList<String>( this.partitions.keySet() );
+		HashRecordBuffer[] parts = records.partitionByDataset( datasets );
+
+		int added = 0;
+		for ( int i = 0; i < parts.length; i++ ) {
+			added += this.partitions.get( datasets.get( i ) ).bulkAdd( parts[i], dict );
+		}
+		return added;
+	}
+
+
+	@Override
+	public void close() {
+		for ( IndexStore partition : this.partitions.values() ) {
+			partition.close();
+		}
+	}
+
+
+	/**
+	 * Gets the partitions of this store.
+	 *
+	 * @since 1.1.0
+	 * @return the partitions, keyed by dataset name
+	 */
+	public Map<String, IndexStore> getPartitions() {
+		return this.partitions;
+	}
+
+
+	@Override
+	public int getTotalResults() {
+		return this.totalResults;
+	}
+
+
+	/**
+	 * Gets the number of distinct n-grams stored, counting an n-gram once per dataset in which it occurs.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	@Override
+	public long numGrams() {
+		long grams = 0;
+		for ( IndexStore partition : this.partitions.values() ) {
+			grams += partition.numGrams();
+		}
+		return grams;
+	}
+
+
+	@Override
+	public long numPostings() {
+		long postings = 0;
+		for ( IndexStore partition : this.partitions.values() ) {
+			postings += partition.numPostings();
+		}
+		return postings;
+	}
+
+
+	/**
+	 * Selects a page of the files matching a given hash, in every partition.
+	 *
+	 * Each partition ranks its own best {@code offset + limit} files, and the page is cut from the best of those.
+	 *
+	 * @since 1.1.0
+	 * @param hash a hashed n-gram to select
+	 * @param gramSize the size of the n-gram that was hashed, in tokens
+	 * @param view the view over which the n-gram was taken
+	 * @param offset the number of best results to skip
+	 * @param limit the maximum number of results, or 0 for no maximum
+	 * @return a list of {@code Result} objects, best first, empty if the hash is not stored
+	 */
+	@Override
+	public List<Result> selectAllWithHash( int hash, int gramSize, SpineView view, int offset, int limit ) {
+		if ( this.partitions.size() == 1 ) {
+			IndexStore partition = this.partitions.values().iterator().next();
+			List<Result> results = partition.selectAllWithHash( hash, gramSize, view, offset, limit );
+			this.totalResults = partition.getTotalResults();
+			return results;
+		}
+
+		int end = limit == 0 ? 0 : (int) Math.min( Integer.MAX_VALUE, (long) offset + limit );
+		TopK<Result> top = new TopK<Result>( end == 0 ? Integer.MAX_VALUE : end );
+		this.totalResults = 0;
+		for ( IndexStore partition : this.partitions.values() ) {
+			for ( Result r : partition.selectAllWithHash( hash, gramSize, view, 0, end ) ) {
+				Object matches = r.getProperties().get( "matches" );
+				top.offer( r, matches instanceof Number ? ( (Number) matches ).longValue() : 0 );
+			}
+			this.totalResults += partition.getTotalResults();
+		}
+
+		List<Result> ranked = top.toList();
+		List<Result> results = new ArrayList<Result>( ranked.subList( Math.min( offset, ranked.size() ), ranked.size() ) );
+		int resultid = offset + 1;
+		for ( Result r : results ) {
+			r.setId( resultid++ );
+		}
+		return results;
+	}
+
+
+	@Override
+	public List<Posting> selectPostingsWithHash( int hash, int gramSize, SpineView view ) {
+		List<Posting> postings = new ArrayList<Posting>();
+		for ( IndexStore partition : this.partitions.values() ) {
+			postings.addAll( partition.selectPostingsWithHash( hash, gramSize, view ) );
+		}
+		return postings;
+	}
+
+
+	/**
+	 * Selects the occurrences of each hash, in every partition.
+	 *
+	 * @since 1.1.0
+	 * @param hashes hashed n-grams to select
+	 * @param gramSize the size of the n-grams that were hashed, in tokens
+	 * @param view the view over which the n-grams were taken
+	 * @return the occurrences of each hash, in the order of {@code hashes}
+	 */
+	@Override
+	public List<List<Posting>> selectPostingsWithHashes( int[] hashes, int gramSize, SpineView view ) {
+		List<List<Posting>> postings = new ArrayList<List<Posting>>( hashes.length );
+		for ( int i = 0; i < hashes.length; i++ ) {
+			postings.add( new ArrayList<Posting>() );
+		}
+		for ( IndexStore partition : this.partitions.values() ) {
+			List<List<Posting>> found = partition.selectPostingsWithHashes( hashes, gramSize, view );
+			for ( int i = 0; i < hashes.length; i++ ) {
+				postings.get( i ).addAll( found.get( i ) );
+			}
+		}
+		return postings;
+	}
+
+
+	@Override
+	public void snapshot() {
+		for ( IndexStore partition : this.partitions.values() ) {
+			partition.snapshot();
+		}
+	}
+}
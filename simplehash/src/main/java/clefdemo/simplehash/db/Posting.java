@@ -0,0 +1,84 @@
+package clefdemo.simplehash.db;
+
+/**
+ * This class is a simple DTO for a single occurrence of a hashed n-gram within a spine.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class Posting {
+
+	private String datasetName;
+	private String filename;
+	private String partname;
+	private int spineIndex;
+	private int offset;
+
+	/**
+	 * Constructor.
+	 *
+	 * @since 1.1.0
+	 * @param datasetName the name of the dataset to which the file belongs
+	 * @param filename the name of the Humdrum file
+	 * @param partname the name of the part within the Humdrum file
+	 * @param spineIndex the index of the spine of the part within the Humdrum file
+	 * @param offset the index of the first token of the n-gram within the filtered tokens of the part
+	 */
+	public Posting( String datasetName, String filename, String partname, int spineIndex, int offset ) {
+		this.datasetName = datasetName;
+		this.filename = filename;
+		this.partname = partname;
+		this.spineIndex = spineIndex;
+		this.offset = offset;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public String getDatasetName() {
+		return datasetName;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public String getFilename() {
+		return filename;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public String getPartname() {
+		return partname;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int getSpineIndex() {
+		return spineIndex;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int getOffset() {
+		return offset;
+	}
+}
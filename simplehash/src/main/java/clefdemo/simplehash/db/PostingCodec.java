@@ -0,0 +1,136 @@
+package clefdemo.simplehash.db;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * This class encodes and decodes the token offsets of a posting list.
+ *
+ * Offsets are sorted, stored as the difference from the previous offset (the first as-is), and each
+ * difference is written as a variable-length integer: seven bits per byte, least significant group first,
+ * with the high bit set on every byte but the last. Since most n-grams recur within a few dozen tokens,
+ * most offsets take a single byte.
+ *
+ * Unsorted sequences of non-negative ints, such as the token ids of a spine, are written the same way, but without
+ * taking differences.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class PostingCodec {
+
+
+	/**
+	 * Decodes a posting list produced by {@link #encode(int[], int)}.
+	 *
+	 * @since 1.1.0
+	 * @param bytes the encoded posting list
+	 * @return the offsets, in ascending order
+	 */
+	public static int[] decode( byte[] bytes ) {
+
+		int[] offsets = new int[ bytes.length ];
+		int n = 0;
+		int prev = 0;
+		int delta = 0;
+		int shift = 0;
+
+		for ( byte b : bytes ) {
+			delta |= ( b & 0x7F ) << shift;
+			if ( ( b & 0x80 ) != 0 ) {
+				shift += 7;
+				continue;
+			}
+			prev += delta;
+			offsets[n++] = prev;
+			delta = 0;
+			shift = 0;
+		}
+
+		return Arrays.copyOf( offsets, n );
+	}
+
+
+	/**
+	 * Decodes a sequence produced by {@link #encodeSequence(int[])}.
+	 *
+	 * @since 1.1.0
+	 * @param bytes the encoded sequence
+	 * @return the values, in their original order
+	 */
+	public static int[] decodeSequence( byte[] bytes ) {
+
+		int[] values = new int[ bytes.length ];
+		int n = 0;
+		int value = 0;
+		int shift = 0;
+
+		for ( byte b : bytes ) {
+			value |= ( b & 0x7F ) << shift;
+			if ( ( b & 0x80 ) != 0 ) {
+				shift += 7;
+				continue;
+			}
+			values[n++] = value;
+			value = 0;
+			shift = 0;
+		}
+
+		return Arrays.copyOf( values, n );
+	}
+
+
+	/**
+	 * Encodes the first {@code length} offsets of {@code offsets}.
+	 *
+	 * @since 1.1.0
+	 * @param offsets non-negative token offsets; sorted in place
+	 * @param length the number of offsets to encode
+	 * @return the encoded posting list
+	 */
+	public static byte[] encode( int[] offsets, int length ) {
+
+		Arrays.sort( offsets, 0, length );
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream( length + 4 );
+		int prev = 0;
+		for ( int i = 0; i < length; i++ ) {
+			writeVarint( out, offsets[i] - prev );
+			prev = offsets[i];
+		}
+
+		return out.toByteArray();
+	}
+
+
+	/**
+	 * Encodes a sequence of non-negative ints, in order.
+	 *
+	 * @since 1.1.0
+	 * @param values the values to encode
+	 * @return the encoded sequence
+	 */
+	public static byte[] encodeSequence( int[] values ) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream( values.length + 4 );
+		for ( int value : values ) {
+			writeVarint( out, value );
+		}
+		return out.toByteArray();
+	}
+
+
+	/**
+	 * Writes a value seven bits at a time, flagging every byte that is followed by another.
+	 *
+	 * @since 1.1.0
+	 * @param out the stream to write to
+	 * @param value the value to write
+	 */
+	private static void writeVarint( ByteArrayOutputStream out, int value ) {
+		while ( ( value & ~0x7F ) != 0 ) {
+			out.write( ( value & 0x7F ) | 0x80 );
+			value >>>= 7;
+		}
+		out.write( value );
+	}
+}
@@ -0,0 +1,93 @@
+package clefdemo.simplehash.db;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import clefdemo.simplehash.Result;
+import clefdemo.simplehash.Settings;
+import clefdemo.simplehash.index.TopK;
+
+/**
+ * This class ranks the files in which the occurrences of a query were found by number of occurrences.
+ *
+ * Only the best {@code offset + limit} files are kept, in a bounded heap; files with as many occurrences are ranked 
+ * in order of first occurrence.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class PostingRanker {
+
+	private int totalResults;
+
+
+	/**
+	 * Gets the number of files that matched the last call to {@link #rank(List, int, int, Consumer)}.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int getTotalResults() {
+		return this.totalResults;
+	}
+
+
+	/**
+	 * Ranks the files in which the given occurrences were found, and reports the occurrences of each file on the 
+	 * requested page.
+	 *
+	 * @since 1.1.0
+	 * @param postings the occurrences of a query
+	 * @param offset the number of best results to skip
+	 * @param limit the maximum number of results, or 0 for no maximum
+	 * @return a list of Result objects with the property "matches" and their positions, best first
+	 */
+	public List<Result> rank( List<Posting> postings, int offset, int limit ) {
+		List<Result> results = new LinkedList<Result>();
+		this.rank( postings, offset, limit, results::add );
+		return results;
+	}
+
+
+	/**
+	 * Ranks the files in which the given occurrences were found, and passes each result of the requested page to an 
+	 * action as soon as it is made, so that no more than one of them need be held at a time.
+	 *
+	 * @since 1.1.0
+	 * @param postings the occurrences of a query
+	 * @param offset the number of best results to skip
+	 * @param limit the maximum number of results, or 0 for no maximum
+	 * @param action the action to which each Result object, with the property "matches" and its positions, is 
+	 * passed, best first
+	 */
+	public void rank( List<Posting> postings, int offset, int limit, Consumer<Result> action ) {
+
+		// Group the occurrences by file, in order of first occurrence.
+		Map<String, List<Posting>> byFile = new LinkedHashMap<String, List<Posting>>();
+		for ( Posting p : postings ) {
+			byFile.computeIfAbsent( p.getDatasetName() + "\t" + p.getFilename(), k -> new ArrayList<Posting>() ).add( p );
+		}
+
+		int end = limit == 0 ? Integer.MAX_VALUE : (int) Math.min( Integer.MAX_VALUE, (long) offset + limit );
+		TopK<List<Posting>> top = new TopK<List<Posting>>( end );
+		for ( List<Posting> group : byFile.values() ) {
+			top.offer( group, group.size() );
+		}
+		this.totalResults = byFile.size();
+
+		int cap = Settings.maxMatchPositions();
+		int[] resultid = { offset + 1 };
+		top.page( offset, group -> {
+			Result r = new Result( resultid[0]++, group.get( 0 ).getDatasetName(), group.get( 0 ).getFilename() );
+			r.setProperty( "matches", group.size() );
+			for ( Posting p : group ) {
+				r.addPosition( p.getPartname(), p.getSpineIndex(), p.getOffset(), cap );
+			}
+			action.accept( r );
+		} );
+	}
+}
@@ -0,0 +1,281 @@
+package clefdemo.simplehash.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import clefdemo.simplehash.Result;
+import clefdemo.simplehash.humdrum.SpineView;
+import clefdemo.simplehash.humdrum.TokenDictionary;
+
+/**
+ * This class partitions the stored n-grams by hash range into shards, each an index store of its own.
+ *
+ * Shard {@code i} of {@code n} holds the hashes whose unsigned value lies in the i-th of n equal ranges, so a lookup
+ * by hash reads a single shard. Records are added to every shard in parallel, and lookups of several hashes are
+ * sent to their shards in parallel; each shard, e.g. a SQLite file of its own, stays small enough to be cached.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class ShardedIndexStore implements IndexStore {
+
+	/**
+	 * The threads shared by every sharded store, one per processor.
+	 */
+	private static ExecutorService executor;
+
+	private final IndexStore[] shards;
+	private int totalResults;
+
+
+	/**
+	 * @since 1.1.0
+	 * @param shards the shards, in order of hash range
+	 */
+	public ShardedIndexStore( IndexStore[] shards ) {
+		this.shards = shards;
+	}
+
+
+	/**
+	 * Gets the threads shared by every sharded store, starting them on first use.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	private static synchronized ExecutorService executor() {
+		if ( executor == null ) {
+			executor = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors(), r -> {
+				Thread t = new Thread( r, "simplehash-shard" );
+				t.setDaemon( true );
+				return t;
+			} );
+		}
+		return executor;
+	}
+
+
+	/**
+	 * Runs tasks in parallel and waits for all of them.
+	 *
+	 * @since 1.1.0
+	 * @param tasks the tasks
+	 * @return the result of each task, in order; null for a task that failed
+	 */
+	private static <T> List<T> runAll( List<Callable<T>> tasks ) {
+		List<Future<T>> futures = new ArrayList<Future<T>>();
+		for ( Callable<T> task : tasks ) {
+			futures.add( executor().submit( task ) );
+		}
+
+		List<T> results = new ArrayList<T>();
+		for ( Future<T> future : futures ) {
+			try {
+				results.add( future.get() );
+			} catch ( InterruptedException | ExecutionException e ) {
+				e.printStackTrace();
+				results.add( null );
+			}
+		}
+		return results;
+	}
+
+
+	/**
+	 * Gets the shard holding a hash.
+	 *
+	 * @since 1.1.0
+	 * @param hash a hashed n-gram
+	 * @param shards the number of shards
+	 * @return the shard, from 0 to {@code shards - 1}
+	 */
+	public static int shardOf( int hash, int shards ) {
+		return (int) ( ( ( hash & 0xFFFFFFFFL ) * shards ) >>> 32 );
+	}
+
+
+	/**
+	 * Gets the path of the database file of a shard, inserting the number of the shard before the extension of
+	 * DB_PATH, e.g. "simplehash-0.db".
+	 *
+	 * @since 1.1.0
+	 * @param dbPath the value of DB_PATH
+	 * @param shard the number of the shard
+	 * @return the path of the shard
+	 */
+	public static String shardPath( String dbPath, int shard ) {
+		return suffixPath( dbPath, "-" + shard );
+	}
+
+
+	/**
+	 * Inserts a suffix before the extension of a path, or appends it if the path has no extension.
+	 *
+	 * @since 1.1.0
+	 * @param path a path to a file
+	 * @param suffix the suffix
+	 * @return the path with the suffix
+	 */
+	static String suffixPath( String path, String suffix ) {
+		int dot = path.lastIndexOf( '.' );
+		if ( dot <= path.lastIndexOf( '/' ) ) {
+			return path + suffix;
+		}
+		return path.substring( 0, dot ) + suffix + path.substring( dot );
+	}
+
+
+	/**
+	 * Adds the records to their shards, all shards in parallel.
+	 *
+	 * @since 1.1.0
+	 * @param records the records of hashed n-grams of symbolic music data
+	 * @param dict the dictionary that assigned the token ids of the records
+	 * @return the number of records added
+	 */
+	@Override
+	public int bulkAdd( HashRecordBuffer records, TokenDictionary dict ) {
+		HashRecordBuffer[] partitions = records.partition( this.shards.length, hash -> shardOf( hash, this.shards.length ) );
+
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for ( int i = 0; i < this.shards.length; i++ ) {
+			IndexStore shard = this.shards[i];
+			HashRecordBuffer partition = partitions[i];
+			tasks.add( () -> shard.bulkAdd( partition, dict ) );
+		}
+
+		int added = 0;
+		for ( Integer n : runAll( tasks ) ) {
+			added += n == null ? 0 : n;
+		}
+		return added;
+	}
+
+
+	@Override
+	public void close() {
+		for ( IndexStore shard : this.shards ) {
+			shard.close();
+		}
+	}
+
+
+	/**
+	 * Gets the shards of this store.
+	 *
+	 * @since 1.1.0
+	 * @return the shards, in order of hash range
+	 */
+	public IndexStore[] getShards() {
+		return this.shards;
+	}
+
+
+	@Override
+	public int getTotalResults() {
+		return this.totalResults;
+	}
+
+
+	@Override
+	public long numGrams() {
+		long grams = 0;
+		for ( IndexStore shard : this.shards ) {
+			grams += shard.numGrams();
+		}
+		return grams;
+	}
+
+
+	@Override
+	public long numPostings() {
+		long postings = 0;
+		for ( IndexStore shard : this.shards ) {
+			postings += shard.numPostings();
+		}
+		return postings;
+	}
+
+
+	@Override
+	public List<Result> selectAllWithHash( int hash, int gramSize, SpineView view, int offset, int limit ) {
+		IndexStore shard = this.shards[ shardOf( hash, this.shards.length ) ];
+		List<Result> results = shard.selectAllWithHash( hash, gramSize, view, offset, limit );
+		this.totalResults = shard.getTotalResults();
+		return results;
+	}
+
+
+	@Override
+	public List<Posting> selectPostingsWithHash( int hash, int gramSize, SpineView view ) {
+		return this.shards[ shardOf( hash, this.shards.length ) ].selectPostingsWithHash( hash, gramSize, view );
+	}
+
+
+	/**
+	 * Selects the occurrences of each hash, sending the hashes of every shard to that shard in parallel.
+	 *
+	 * @since 1.1.0
+	 * @param hashes hashed n-grams to select
+	 * @param gramSize the size of the n-grams that were hashed, in tokens
+	 * @param view the view over which the n-grams were taken
+	 * @return the occurrences of each hash, in the order of {@code hashes}
+	 */
+	@Override
+	public List<List<Posting>> selectPostingsWithHashes( int[] hashes, int gramSize, SpineView view ) {
+
+		// Group the hashes by shard, skipping the shards that hold none of them.
+		List<List<Integer>> positions = new ArrayList<List<Integer>>();
+		for ( int i = 0; i < this.shards.length; i++ ) {
+			positions.add( new ArrayList<Integer>() );
+		}
+		for ( int i = 0; i < hashes.length; i++ ) {
+			positions.get( shardOf( hashes[i], this.shards.length ) ).add( i );
+		}
+
+		List<Callable<List<List<Posting>>>> tasks = new ArrayList<Callable<List<List<Posting>>>>();
+		List<List<Integer>> sent = new ArrayList<List<Integer>>();
+		for ( int i = 0; i < this.shards.length; i++ ) {
+			List<Integer> mine = positions.get( i );
+			if ( mine.isEmpty() ) {
+				continue;
+			}
+			int[] subset = new int[ mine.size() ];
+			for ( int j = 0; j < subset.length; j++ ) {
+				subset[j] = hashes[ mine.get( j ) ];
+			}
+			IndexStore shard = this.shards[i];
+			tasks.add( () -> shard.selectPostingsWithHashes( subset, gramSize, view ) );
+			sent.add( mine );
+		}
+
+		// Put the occurrences of each hash back in the order of the hashes.
+		List<List<Posting>> postings = new ArrayList<List<Posting>>( hashes.length );
+		for ( int i = 0; i < hashes.length; i++ ) {
+			postings.add( new ArrayList<Posting>() );
+		}
+		List<List<List<Posting>>> answers = runAll( tasks );
+		for ( int t = 0; t < answers.size(); t++ ) {
+			if ( answers.get( t ) == null ) {
+				continue;
+			}
+			for ( int j = 0; j < sent.get( t ).size(); j++ ) {
+				postings.set( sent.get( t ).get( j ), answers.get( t ).get( j ) );
+			}
+		}
+		return postings;
+	}
+
+
+	@Override
+	public void snapshot() {
+		for ( IndexStore shard : this.shards ) {
+			shard.snapshot();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package clefdemo.simplehash.db;
+
+/**
+ * This class is a simple DTO for a spine whose filtered tokens are identical to those of a spine already indexed,
+ * and which is therefore not indexed itself; occurrences in the indexed spine are also occurrences in its aliases.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class SpineAlias {
+
+	private String datasetName;
+	private String filename;
+	private String partname;
+	private int spineIndex;
+	private String canonicalDatasetName;
+	private String canonicalFilename;
+	private int canonicalSpineIndex;
+
+	/**
+	 * Constructor.
+	 *
+	 * @since 1.1.0
+	 * @param datasetName the name of the dataset to which the file of the alias belongs
+	 * @param filename the name of the Humdrum file of the alias
+	 * @param partname the name of the part of the alias within its Humdrum file
+	 * @param spineIndex the index of the spine of the alias within its Humdrum file
+	 * @param canonicalDatasetName the name of the dataset to which the file of the indexed spine belongs
+	 * @param canonicalFilename the name of the Humdrum file of the indexed spine
+	 * @param canonicalSpineIndex the index of the indexed spine within its Humdrum file
+	 */
+	public SpineAlias( String datasetName, String filename, String partname, int spineIndex, String canonicalDatasetName, String canonicalFilename, int canonicalSpineIndex ) {
+		this.datasetName = datasetName;
+		this.filename = filename;
+		this.partname = partname;
+		this.spineIndex = spineIndex;
+		this.canonicalDatasetName = canonicalDatasetName;
+		this.canonicalFilename = canonicalFilename;
+		this.canonicalSpineIndex = canonicalSpineIndex;
+	}
+
+
+	/**
+	 * Gets the key of the indexed spine: its dataset name, filename and spine index, separated by tabs.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public String canonicalKey() {
+		return this.canonicalDatasetName + "\t" + this.canonicalFilename + "\t" + this.canonicalSpineIndex;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public String getCanonicalDatasetName() {
+		return canonicalDatasetName;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public String getCanonicalFilename() {
+		return canonicalFilename;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int getCanonicalSpineIndex() {
+		return canonicalSpineIndex;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public String getDatasetName() {
+		return datasetName;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public String getFilename() {
+		return filename;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public String getPartname() {
+		return partname;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int getSpineIndex() {
+		return spineIndex;
+	}
+}
@@ -0,0 +1,84 @@
+package clefdemo.simplehash.db;
+
+/**
+ * This class is a simple DTO for the token ids of a whole spine, as stored for verifying candidate matches.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class SpineRecord {
+
+	private String datasetName;
+	private String filename;
+	private String partname;
+	private int spineIndex;
+	private int[] tokenIds;
+
+	/**
+	 * Constructor.
+	 *
+	 * @since 1.1.0
+	 * @param datasetName the name of the dataset to which the file belongs
+	 * @param filename the name of the Humdrum file
+	 * @param partname the name of the part within the Humdrum file
+	 * @param spineIndex the index of the spine of the part within the Humdrum file
+	 * @param tokenIds the ids of the filtered tokens of the spine
+	 */
+	public SpineRecord( String datasetName, String filename, String partname, int spineIndex, int[] tokenIds ) {
+		this.datasetName = datasetName;
+		this.filename = filename;
+		this.partname = partname;
+		this.spineIndex = spineIndex;
+		this.tokenIds = tokenIds;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public String getDatasetName() {
+		return datasetName;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public String getFilename() {
+		return filename;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public String getPartname() {
+		return partname;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int getSpineIndex() {
+		return spineIndex;
+	}
+
+
+	/**
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int[] getTokenIds() {
+		return tokenIds;
+	}
+}
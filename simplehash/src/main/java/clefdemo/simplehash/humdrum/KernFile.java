@@ -91,10 +91,12 @@ public class KernFile {
 				// If line starts with !!! turn it into metadata
 				if ( line.startsWith( "!!!" ) ) {
 					// Do metadata
-					String[] meta = line.split( ":" );
-					String metakey = meta[0].replaceAll( "!", "" );
-					String metaval = meta[1].trim();
-					km.setMeta( metakey, metaval );
+					String[] meta = line.split( ":", 2 );
+					if ( meta.length > 1 && ! meta[1].trim().isEmpty() ) {
+						String metakey = meta[0].replaceAll( "!", "" ).trim();
+						String metaval = meta[1].trim();
+						km.setMeta( metakey, metaval );
+					}
 					continue;
 				}
 						
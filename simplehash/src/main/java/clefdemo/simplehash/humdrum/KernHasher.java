@@ -18,6 +18,57 @@ import java.util.Objects;
 public class KernHasher {
 
 
+	/**
+	 * Hashes the token ids {@code ids[from]} through {@code ids[to - 1]}.
+	 * 
+	 * This is the hash stored in the index for an n-gram of size {@code to - from}.
+	 * 
+	 * @since 1.1.0
+	 * @param ids the token ids of a spine or query
+	 * @param from the index of the first token id of the n-gram
+	 * @param to the index after the last token id of the n-gram
+	 * @return the hashed value
+	 */
+	public int hash( int[] ids, int from, int to ) {
+		int h = 1;
+		for ( int i = from; i < to; i++ ) {
+			h = 31 * h + ids[i];
+		}
+		return mix( h );
+	}
+	
+	
+	/**
+	 * Hashes every n-gram starting at {@code from} whose size is between {@code min} and {@code max}.
+	 * 
+	 * Each n-gram extends the previous one by a single token, so all sizes are hashed in one pass over the tokens. 
+	 * Element k of the returned array equals {@code hash( ids, from, from + min + k )}.
+	 * 
+	 * @since 1.1.0
+	 * @param ids the token ids of a spine
+	 * @param from the index of the first token id of the n-grams
+	 * @param min the smallest n-gram size
+	 * @param max the largest n-gram size
+	 * @return the hashed values, one per n-gram size that fits within {@code ids}
+	 */
+	public int[] hashes( int[] ids, int from, int min, int max ) {
+		int sizes = Math.max( 0, Math.min( max, ids.length - from ) - min + 1 );
+		int[] hashes = new int[ sizes ];
+		if ( sizes == 0 ) {
+			return hashes;
+		}
+		
+		int h = 1;
+		for ( int n = 1; n <= min + sizes - 1; n++ ) {
+			h = 31 * h + ids[ from + n - 1 ];
+			if ( n >= min ) {
+				hashes[ n - min ] = mix( h );
+			}
+		}
+		return hashes;
+	}
+	
+	
 	/**
 	 * Hashes the given list of {@code tokens}.
 	 * 
@@ -58,6 +109,25 @@ public class KernHasher {
 	}
 	
 	
+	/**
+	 * Converts the token ids {@code ids[from]} through {@code ids[to - 1]} to a single string.
+	 * 
+	 * @since 1.1.0
+	 * @param ids the token ids of a spine or query
+	 * @param from the index of the first token id of the n-gram
+	 * @param to the index after the last token id of the n-gram
+	 * @param dict the dictionary that assigned the token ids
+	 * @return the tokens joined as a single string
+	 */
+	public String ngramToString( int[] ids, int from, int to, TokenDictionary dict ) {
+		StringBuilder sb = new StringBuilder();
+		for ( int i = from; i < to; i++ ) {
+			sb.append( dict.token( ids[i] ) );
+		}
+		return sb.toString();
+	}
+	
+	
 	/**
 	 * Converts the given tokens to a single string.
 	 * 
@@ -70,6 +140,25 @@ public class KernHasher {
 	}
 	
 	
+	/**
+	 * Spreads the bits of a polynomial hash, so that hashes of similar n-grams differ in their high bits as well.
+	 * 
+	 * This is the finalization step of MurmurHash3.
+	 * 
+	 * @since 1.1.0
+	 * @param h a polynomial hash
+	 * @return the mixed hash
+	 */
+	private static int mix( int h ) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+	
+	
 	/**
 	 * Creates a formatted string containing the n-gram and its hashed value.
 	 * 
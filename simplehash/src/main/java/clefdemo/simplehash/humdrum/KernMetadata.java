@@ -30,6 +30,17 @@ public class KernMetadata {
 	}
 	
 	
+	/**
+	 * Gets the catalog followed by the number within it, e.g. "BWV 772", as the catalog is stored and filtered.
+	 * 
+	 * @since 1.1.0
+	 * @return the catalog and number separated by a space, the catalog alone if there is no number, or null
+	 */
+	public String getCatalogAndNumber() {
+		return this.catalog == null ? null : this.catalogNumber == null ? this.catalog : this.catalog + " " + this.catalogNumber;
+	}
+	
+	
 	/**
 	 * 
 	 * @since 1.0.0
@@ -106,9 +117,11 @@ public class KernMetadata {
 	 * @param both
 	 */
 	public void setCatalogNameAndNumber( String both ) {
-		String[] parts = both.split( " " );
+		String[] parts = both.trim().split( "\\s+", 2 );
 		this.setCatalog( parts[0] );
-		this.setCatalogNumber( parts[1] );
+		if ( parts.length > 1 ) {
+			this.setCatalogNumber( parts[1] );
+		}
 	}
 	
 	
@@ -151,13 +164,11 @@ public class KernMetadata {
 		Pattern pattern = Pattern.compile( "(\\d{4})" );
 		Matcher matcher = pattern.matcher( range );
 		
-		if ( matcher.matches() && matcher.groupCount() > 1 ) {
-			if ( matcher.group(1) != null ) {
-				this.composerBorn = matcher.group( 1 );
-			}
-			
-			if ( matcher.group(2) != null ) {
-				this.composerDied = matcher.group( 2 );
+		// The first year is that of birth and the second that of death, e.g. "1685/03/21/-1750/07/28/".
+		if ( matcher.find() ) {
+			this.composerBorn = matcher.group( 1 );
+			if ( matcher.find() ) {
+				this.composerDied = matcher.group( 1 );
 			}
 		}
 	}
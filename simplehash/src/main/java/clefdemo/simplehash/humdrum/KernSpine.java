@@ -16,6 +16,7 @@ public class KernSpine {
 	public static final String TERMINATOR = "*-";
 
 	private LinkedList<String> data;
+	private int[] ids;
 	private int index;
 	private String name;
 	
@@ -31,6 +32,7 @@ public class KernSpine {
 	 */
 	public void addToken( String token ) {
 		this.data.add( token );
+		this.ids = null;
 	}
 
 	
@@ -58,6 +60,21 @@ public class KernSpine {
 	}
 	
 	
+	/**
+	 * Encodes the filtered tokens of this spine as token ids.
+	 * 
+	 * Tokens not yet in {@code dict} are added to it. The ids are kept by this spine; see {@link #getTokenIds()}.
+	 * 
+	 * @since 1.1.0
+	 * @param dict the dictionary with which to encode the tokens
+	 * @return the token ids of the filtered tokens of this spine
+	 */
+	public int[] encode( TokenDictionary dict ) {
+		this.ids = dict.assignAll( this.applyFilters() );
+		return this.ids;
+	}
+	
+	
 	/**
 	 * Gets the raw Kern tokens of this spine, unfiltered.
 	 * 
@@ -79,6 +96,17 @@ public class KernSpine {
 	}
 	
 	
+	/**
+	 * Gets the token ids of the filtered tokens of this spine, as set by {@link #encode(TokenDictionary)}.
+	 * 
+	 * @since 1.1.0
+	 * @return the token ids, or null if this spine has not been encoded
+	 */
+	public int[] getTokenIds() {
+		return this.ids;
+	}
+	
+	
 	/**
 	 * 
 	 * @since 1.0.0
@@ -110,6 +138,7 @@ public class KernSpine {
 	 */
 	public void setData( LinkedList<String> data ) {
 		this.data = data;
+		this.ids = null;
 	}
 	
 	
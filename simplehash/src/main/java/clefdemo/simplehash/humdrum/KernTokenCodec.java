@@ -0,0 +1,345 @@
+package clefdemo.simplehash.humdrum;
+
+/**
+ * This class packs a Kern note or rest token into a single int, and derives pitch and duration views from it.
+ *
+ * The bits of a packed token are laid out as follows, least significant first:
+ * 0-2   diatonic step (0 = C, 1 = D, ... 6 = B)
+ * 3-6   octave (c = 4, cc = 5, C = 3, CC = 2, ...)
+ * 7-9   accidental, as the chromatic alteration plus 4 (3 = flat, 4 = natural, 5 = sharp, ...)
+ * 10-19 duration, as the Kern reciprocal value (0 = none, {@link #BREVE} = 0, {@link #LONGA} = 00)
+ * 20-21 number of augmentation dots
+ * 22    rest flag
+ * 23    pitch flag, set for every token with a pitch
+ *
+ * An explicit natural sign is treated the same as no accidental. Tokens without a pitch or a rest, which cannot be
+ * packed, are encoded as {@link #INVALID}. Ties are not encoded, because {@link Filters} removes them from every token.
+ *
+ * The notes of a chord are separated by spaces in Kern, but filtering removes the spaces too, so that "4c 4e" becomes
+ * "4c4e". A chord is therefore packed as its first note, and {@link #isChord(String)} tells it apart from that note.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ * @see https://csml.som.ohio-state.edu/Humdrum/representations/kern.html
+ */
+public class KernTokenCodec {
+
+	/**
+	 * The packed value of a token that has neither a pitch nor a rest.
+	 */
+	public static final int INVALID = 0;
+
+	/**
+	 * The duration field value of a breve, written 0 in Kern.
+	 */
+	public static final int BREVE = 1022;
+
+	/**
+	 * The duration field value of a longa, written 00 in Kern.
+	 */
+	public static final int LONGA = 1023;
+
+	private static final int STEP_SHIFT = 0;
+	private static final int OCTAVE_SHIFT = 3;
+	private static final int ACCIDENTAL_SHIFT = 7;
+	private static final int DURATION_SHIFT = 10;
+	private static final int DOTS_SHIFT = 20;
+
+	private static final int STEP_MASK = 0x7;
+	private static final int OCTAVE_MASK = 0xF;
+	private static final int ACCIDENTAL_MASK = 0x7;
+	private static final int DURATION_MASK = 0x3FF;
+	private static final int DOTS_MASK = 0x3;
+
+	public static final int REST = 1 << 22;
+	public static final int PITCHED = 1 << 23;
+
+	private static final int PITCH_BITS = ( STEP_MASK << STEP_SHIFT ) | ( OCTAVE_MASK << OCTAVE_SHIFT ) | ( ACCIDENTAL_MASK << ACCIDENTAL_SHIFT ) | PITCHED;
+	private static final int DURATION_BITS = ( DURATION_MASK << DURATION_SHIFT ) | ( DOTS_MASK << DOTS_SHIFT );
+
+	private static final String STEPS = "cdefgab";
+	private static final int[] SEMITONES = { 0, 2, 4, 5, 7, 9, 11 };
+
+
+	/**
+	 * Gets the chromatic alteration of a packed token.
+	 *
+	 * @since 1.1.0
+	 * @param code a packed token
+	 * @return the number of semitones by which the pitch is raised (negative if lowered)
+	 */
+	public static int accidental( int code ) {
+		return ( ( code >>> ACCIDENTAL_SHIFT ) & ACCIDENTAL_MASK ) - 4;
+	}
+
+
+	/**
+	 * Gets the number of augmentation dots of a packed token.
+	 *
+	 * @since 1.1.0
+	 * @param code a packed token
+	 * @return the number of dots
+	 */
+	public static int dots( int code ) {
+		return ( code >>> DOTS_SHIFT ) & DOTS_MASK;
+	}
+
+
+	/**
+	 * Gets the duration of a packed token.
+	 *
+	 * @since 1.1.0
+	 * @param code a packed token
+	 * @return the Kern reciprocal duration, {@link #BREVE}, {@link #LONGA}, or 0 if the token has no duration
+	 */
+	public static int duration( int code ) {
+		return ( code >>> DURATION_SHIFT ) & DURATION_MASK;
+	}
+
+
+	/**
+	 * Keeps only the duration, dots and rest flag of a packed token.
+	 *
+	 * Two tokens have the same duration view if they have the same rhythmic value, whatever their pitch.
+	 *
+	 * @since 1.1.0
+	 * @param code a packed token
+	 * @return the duration view of the token
+	 */
+	public static int durationView( int code ) {
+		return code & ( DURATION_BITS | REST );
+	}
+
+
+	/**
+	 * Packs a Kern token.
+	 *
+	 * Characters other than those representing pitch, accidentals, duration, dots and rests are ignored, so both raw
+	 * and filtered tokens may be passed. Only the first note of a chord is encoded.
+	 *
+	 * @since 1.1.0
+	 * @param token a Kern note or rest token
+	 * @return the packed token, or {@link #INVALID} if the token has neither a pitch nor a rest
+	 */
+	public static int encode( String token ) {
+
+		int recip = 0;
+		int zeros = 0;
+		boolean hasDuration = false;
+		int dots = 0;
+		int step = -1;
+		int letters = 0;
+		boolean lower = false;
+		int alter = 0;
+		int flags = 0;
+
+		int end = firstNoteEnd( token );
+		for ( int i = 0; i < end; i++ ) {
+			char c = token.charAt( i );
+
+			if ( c >= '0' && c <= '9' ) {
+				hasDuration = true;
+				if ( recip == 0 && c == '0' ) {
+					zeros++;
+				}
+				recip = Math.min( recip * 10 + ( c - '0' ), BREVE - 1 );
+			} else if ( c == '.' ) {
+				dots = Math.min( dots + 1, DOTS_MASK );
+			} else if ( c == 'r' ) {
+				flags |= REST;
+			} else if ( c == '#' ) {
+				alter++;
+			} else if ( c == '-' ) {
+				alter--;
+			} else if ( STEPS.indexOf( Character.toLowerCase( c ) ) >= 0 ) {
+				int s = STEPS.indexOf( Character.toLowerCase( c ) );
+				// Repeated letters raise (lowercase) or lower (uppercase) the octave.
+				step = s;
+				lower = Character.isLowerCase( c );
+				letters++;
+			}
+		}
+
+		if ( step < 0 && ( flags & REST ) == 0 ) {
+			return INVALID;
+		}
+
+		int duration = recip;
+		if ( hasDuration && recip == 0 ) {
+			duration = zeros > 1 ? LONGA : BREVE;
+		}
+
+		int code = flags | ( duration << DURATION_SHIFT ) | ( dots << DOTS_SHIFT );
+
+		if ( step >= 0 && ( flags & REST ) == 0 ) {
+			int octave = lower ? 3 + letters : 4 - letters;
+			octave = Math.max( 0, Math.min( OCTAVE_MASK, octave ) );
+			alter = Math.max( -3, Math.min( 3, alter ) );
+			code |= PITCHED | ( step << STEP_SHIFT ) | ( octave << OCTAVE_SHIFT ) | ( ( alter + 4 ) << ACCIDENTAL_SHIFT );
+		}
+
+		return code;
+	}
+
+
+	/**
+	 * Finds where the first note or rest of a token ends.
+	 *
+	 * Once a pitch or rest has been read, a space, a digit, a different letter, or a letter after an accidental begins
+	 * the next note of a chord, since the duration of a Kern note comes before its pitch.
+	 *
+	 * @since 1.1.0
+	 * @param token a Kern token
+	 * @return the index of the first character of the second note of a chord, or the length of the token
+	 */
+	private static int firstNoteEnd( String token ) {
+		boolean seen = false;
+		char prev = 0;
+		for ( int i = 0; i < token.length(); i++ ) {
+			char c = token.charAt( i );
+			boolean letter = c == 'r' || STEPS.indexOf( Character.toLowerCase( c ) ) >= 0;
+			if ( seen && ( c == ' ' || ( c >= '0' && c <= '9' ) || ( letter && c != prev ) ) ) {
+				return i;
+			}
+			seen = seen || letter;
+			prev = c;
+		}
+		return token.length();
+	}
+
+
+	/**
+	 * Determines whether a packed token has a pitch.
+	 *
+	 * @since 1.1.0
+	 * @param code a packed token
+	 * @return true if the token is a note, false if it is a rest or invalid
+	 */
+	public static boolean hasPitch( int code ) {
+		return ( code & PITCHED ) != 0;
+	}
+
+
+	/**
+	 * Determines whether a token is a chord, i.e. has more than one note, so that its packed value, which is that of
+	 * its first note, does not identify it.
+	 *
+	 * @since 1.1.0
+	 * @param token a Kern token
+	 * @return true if the token has a note after its first
+	 */
+	public static boolean isChord( String token ) {
+		return firstNoteEnd( token ) < token.trim().length();
+	}
+
+
+	/**
+	 * Determines whether a packed token is a rest.
+	 *
+	 * @since 1.1.0
+	 * @param code a packed token
+	 * @return true if the token is a rest
+	 */
+	public static boolean isRest( int code ) {
+		return ( code & REST ) != 0;
+	}
+
+
+	/**
+	 * Gets the MIDI key number of a packed token, with middle C (Kern c) as 60.
+	 *
+	 * @since 1.1.0
+	 * @param code a packed token
+	 * @return the MIDI key number, or -1 if the token has no pitch
+	 */
+	public static int midi( int code ) {
+		if ( ! hasPitch( code ) ) {
+			return -1;
+		}
+		return 12 * ( octave( code ) + 1 ) + SEMITONES[ step( code ) ] + accidental( code );
+	}
+
+
+	/**
+	 * Gets the octave of a packed token.
+	 *
+	 * @since 1.1.0
+	 * @param code a packed token
+	 * @return the octave, with the octave of middle C (Kern c) as 4
+	 */
+	public static int octave( int code ) {
+		return ( code >>> OCTAVE_SHIFT ) & OCTAVE_MASK;
+	}
+
+
+	/**
+	 * Keeps only the pitch and rest flag of a packed token.
+	 *
+	 * Two tokens have the same pitch view if they have the same spelled pitch, whatever their duration.
+	 *
+	 * @since 1.1.0
+	 * @param code a packed token
+	 * @return the pitch view of the token
+	 */
+	public static int pitchView( int code ) {
+		return code & ( PITCH_BITS | REST );
+	}
+
+
+	/**
+	 * Gets the diatonic step of a packed token.
+	 *
+	 * @since 1.1.0
+	 * @param code a packed token
+	 * @return the step, from 0 (C) to 6 (B)
+	 */
+	public static int step( int code ) {
+		return ( code >>> STEP_SHIFT ) & STEP_MASK;
+	}
+
+
+	/**
+	 * Writes a packed token as a Kern token.
+	 *
+	 * The result is the canonical form of the token: duration, dots, then pitch and accidentals, or r.
+	 *
+	 * @since 1.1.0
+	 * @param code a packed token
+	 * @return a Kern token, or an empty string if {@code code} is {@link #INVALID}
+	 */
+	public static String toString( int code ) {
+		StringBuilder sb = new StringBuilder();
+
+		int duration = duration( code );
+		if ( duration == BREVE ) {
+			sb.append( "0" );
+		} else if ( duration == LONGA ) {
+			sb.append( "00" );
+		} else if ( duration > 0 ) {
+			sb.append( duration );
+		}
+		for ( int i = 0; i < dots( code ); i++ ) {
+			sb.append( '.' );
+		}
+
+		if ( isRest( code ) ) {
+			sb.append( 'r' );
+		} else if ( hasPitch( code ) ) {
+			int octave = octave( code );
+			char letter = STEPS.charAt( step( code ) );
+			int letters = octave >= 4 ? octave - 3 : 4 - octave;
+			if ( octave < 4 ) {
+				letter = Character.toUpperCase( letter );
+			}
+			for ( int i = 0; i < letters; i++ ) {
+				sb.append( letter );
+			}
+			int alter = accidental( code );
+			for ( int i = 0; i < Math.abs( alter ); i++ ) {
+				sb.append( alter > 0 ? '#' : '-' );
+			}
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,256 @@
+package clefdemo.simplehash.humdrum;
+
+import java.util.Arrays;
+
+/**
+ * The views of a spine's tokens over which n-grams can be indexed and searched.
+ *
+ * The KERN view is the filtered tokens themselves, indexed by token id. Every other view is a sequence derived
+ * from the packed tokens (see {@link KernTokenCodec}): PITCH keeps only the pitches of the notes, RHYTHM keeps only
+ * the durations of the notes and rests, INTERVAL is the melodic intervals between consecutive notes, and CONTOUR is
+ * the direction of each interval (the Parsons code: 1 for up, -1 for down, 0 for a repeat).
+ *
+ * A view may need fewer elements than tokens to cover an n-gram: an n-gram of n notes has n - 1 melodic intervals,
+ * so the INTERVAL and CONTOUR views have an overlap of 1. N-gram sizes are always counted in tokens, so that the same
+ * QUERY_SIZE_MIN and QUERY_SIZE_MAX apply to every view. Likewise, every element of a view has the offset of a token
+ * (see {@link #offsets(int[])}), so that positions are reported in tokens whatever the view.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public enum SpineView {
+
+	KERN( "kern", 0 ),
+	INTERVAL( "interval", 1 ),
+	PITCH( "pitch", 0 ),
+	RHYTHM( "rhythm", 0 ),
+	CONTOUR( "contour", 1 );
+
+	private final String name;
+	private final int overlap;
+
+	private SpineView( String name, int overlap ) {
+		this.name = name;
+		this.overlap = overlap;
+	}
+
+
+	/**
+	 * Derives the sequence of this view from packed tokens.
+	 *
+	 * For the KERN view the packed tokens are returned unchanged; note that the index stores token ids for this view.
+	 * Rests and tokens that cannot be packed are skipped by the INTERVAL, CONTOUR and PITCH views, so that intervals
+	 * are between consecutive notes; tokens that cannot be packed are skipped by the RHYTHM view.
+	 *
+	 * @since 1.1.0
+	 * @param codes the packed tokens of a spine or query
+	 * @return the elements of this view
+	 */
+	public int[] derive( int[] codes ) {
+		switch ( this ) {
+		case KERN:
+			return codes;
+		case PITCH:
+			return project( codes, true );
+		case RHYTHM:
+			return project( codes, false );
+		default:
+			break;
+		}
+
+		int[] midi = new int[ codes.length ];
+		int notes = 0;
+		for ( int code : codes ) {
+			if ( KernTokenCodec.hasPitch( code ) ) {
+				midi[notes++] = KernTokenCodec.midi( code );
+			}
+		}
+
+		int[] intervals = new int[ Math.max( 0, notes - 1 ) ];
+		for ( int i = 0; i < intervals.length; i++ ) {
+			intervals[i] = midi[ i + 1 ] - midi[i];
+			if ( this == CONTOUR ) {
+				intervals[i] = Integer.signum( intervals[i] );
+			}
+		}
+		return intervals;
+	}
+
+
+	/**
+	 * Projects packed tokens onto their pitch or their duration.
+	 *
+	 * @since 1.1.0
+	 * @param codes the packed tokens of a spine or query
+	 * @param pitch true to keep the pitches of the notes, false to keep the durations of the notes and rests
+	 * @return the projected tokens
+	 */
+	private static int[] project( int[] codes, boolean pitch ) {
+		int[] projected = new int[ codes.length ];
+		int n = 0;
+		for ( int code : codes ) {
+			if ( pitch && KernTokenCodec.hasPitch( code ) ) {
+				projected[n++] = KernTokenCodec.pitchView( code );
+			} else if ( ! pitch && code != KernTokenCodec.INVALID ) {
+				projected[n++] = KernTokenCodec.durationView( code );
+			}
+		}
+		return Arrays.copyOf( projected, n );
+	}
+
+
+	/**
+	 * Derives the sequence of this view from token ids.
+	 *
+	 * @since 1.1.0
+	 * @param ids the token ids of a spine
+	 * @param dict the dictionary that assigned the token ids
+	 * @return the elements of this view
+	 */
+	public int[] derive( int[] ids, TokenDictionary dict ) {
+		if ( this == KERN ) {
+			return ids;
+		}
+
+		return this.derive( codes( ids, dict ) );
+	}
+
+
+	/**
+	 * Gets the packed tokens of token ids.
+	 *
+	 * @since 1.1.0
+	 * @param ids the token ids of a spine
+	 * @param dict the dictionary that assigned the token ids
+	 * @return the packed tokens
+	 */
+	private static int[] codes( int[] ids, TokenDictionary dict ) {
+		int[] codes = new int[ ids.length ];
+		for ( int i = 0; i < ids.length; i++ ) {
+			codes[i] = dict.code( ids[i] );
+		}
+		return codes;
+	}
+
+
+	/**
+	 * Converts the elements {@code values[from]} through {@code values[to - 1]} of this view to a single string.
+	 *
+	 * @since 1.1.0
+	 * @param values the elements of this view; token ids for the KERN view
+	 * @param from the index of the first element
+	 * @param to the index after the last element
+	 * @param dict the dictionary that assigned the token ids, for the KERN view
+	 * @return the elements joined as a single string
+	 */
+	public String format( int[] values, int from, int to, TokenDictionary dict ) {
+		StringBuilder sb = new StringBuilder();
+		for ( int i = from; i < to; i++ ) {
+			if ( this == KERN ) {
+				sb.append( dict.token( values[i] ) );
+			} else if ( this == PITCH || this == RHYTHM ) {
+				if ( i > from ) {
+					sb.append( ' ' );
+				}
+				sb.append( KernTokenCodec.toString( values[i] ) );
+			} else if ( this == CONTOUR ) {
+				sb.append( values[i] > 0 ? 'U' : values[i] < 0 ? 'D' : 'R' );
+			} else {
+				if ( i > from ) {
+					sb.append( ' ' );
+				}
+				sb.append( values[i] > 0 ? "+" + values[i] : String.valueOf( values[i] ) );
+			}
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * Gets the view with the given name.
+	 *
+	 * @since 1.1.0
+	 * @param name the name of a view, case-insensitive
+	 * @return the view, or null if there is no view with that name
+	 */
+	public static SpineView fromName( String name ) {
+		for ( SpineView view : values() ) {
+			if ( view.name.equalsIgnoreCase( name.trim() ) ) {
+				return view;
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Gets the name of this view, as stored in the gram_view column and passed in the view query parameter.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+
+	/**
+	 * Maps the elements of this view, as from {@link #derive(int[])}, to the offsets of the tokens from which they 
+	 * were derived.
+	 *
+	 * The offset of an element of the PITCH or RHYTHM view is that of its note or rest; that of a melodic interval 
+	 * is the offset of its first note. Rests skipped by a view are thus counted, so that an n-gram of any view is 
+	 * found at the offset of its first token.
+	 *
+	 * @since 1.1.0
+	 * @param codes the packed tokens of a spine or query
+	 * @return the token offset of each element of this view
+	 */
+	public int[] offsets( int[] codes ) {
+		int[] offsets = new int[ codes.length ];
+		int n = 0;
+		for ( int i = 0; i < codes.length; i++ ) {
+			if ( this == KERN || ( this == RHYTHM ? codes[i] != KernTokenCodec.INVALID : KernTokenCodec.hasPitch( codes[i] ) ) ) {
+				offsets[n++] = i;
+			}
+		}
+		return Arrays.copyOf( offsets, Math.max( 0, n - this.overlap ) );
+	}
+
+
+	/**
+	 * Maps the elements of this view, as from {@link #derive(int[], TokenDictionary)}, to the offsets of the tokens 
+	 * from which they were derived.
+	 *
+	 * @since 1.1.0
+	 * @param ids the token ids of a spine
+	 * @param dict the dictionary that assigned the token ids
+	 * @return the token offset of each element of this view
+	 */
+	public int[] offsets( int[] ids, TokenDictionary dict ) {
+		return this.offsets( this == KERN ? ids : codes( ids, dict ) );
+	}
+
+
+	/**
+	 * Gets the number of tokens of an n-gram beyond the number of elements of this view that cover it.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int overlap() {
+		return this.overlap;
+	}
+
+
+	/**
+	 * Gets the number of elements of this view that cover an n-gram of {@code gramSize} tokens.
+	 *
+	 * @since 1.1.0
+	 * @param gramSize the size of an n-gram in tokens
+	 * @return the number of elements
+	 */
+	public int span( int gramSize ) {
+		return gramSize - this.overlap;
+	}
+}
@@ -0,0 +1,200 @@
+package clefdemo.simplehash.humdrum;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class assigns each distinct filtered Kern token a stable int id.
+ *
+ * Tokens are compared by their packed value (see {@link KernTokenCodec}), so tokens that differ only in ways the
+ * codec ignores, such as an explicit natural sign, share an id. Tokens that cannot be packed, and chords, which are
+ * packed as their first note, are compared as strings.
+ * Ids are assigned in order of first appearance, starting at 0, and never change once assigned. The dictionary
+ * is persisted alongside the n-gram index so that queries are mapped to the same ids as the source data.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class TokenDictionary {
+
+	/**
+	 * The id returned for a token that is not in the dictionary.
+	 */
+	public static final int UNKNOWN = -1;
+
+	private Map<Integer, Integer> byCode;
+	private Map<String, Integer> byToken;
+	private List<String> tokens;
+	private int[] codes;
+
+
+	/**
+	 * @since 1.1.0
+	 */
+	public TokenDictionary() {
+		this.byCode = new HashMap<Integer, Integer>();
+		this.byToken = new HashMap<String, Integer>();
+		this.tokens = new ArrayList<String>();
+		this.codes = new int[64];
+	}
+
+
+	/**
+	 * Adds a token with a known id, as when loading a persisted dictionary.
+	 *
+	 * @since 1.1.0
+	 * @param id the id of the token
+	 * @param token the filtered Kern token
+	 */
+	public synchronized void add( int id, String token ) {
+		while ( this.tokens.size() <= id ) {
+			this.tokens.add( null );
+		}
+		this.put( id, token );
+	}
+
+
+	/**
+	 * Gets the id of a token, assigning a new id if the token has not been seen before.
+	 *
+	 * @since 1.1.0
+	 * @param token the filtered Kern token
+	 * @return the id of the token
+	 */
+	public synchronized int assign( String token ) {
+		int id = this.lookup( token );
+		if ( id == UNKNOWN ) {
+			id = this.tokens.size();
+			this.tokens.add( null );
+			this.put( id, token );
+		}
+		return id;
+	}
+
+
+	/**
+	 * Gets the ids of a list of tokens, assigning new ids to any tokens not seen before.
+	 *
+	 * @since 1.1.0
+	 * @param tokens a list of filtered Kern tokens
+	 * @return the ids of the tokens, in the same order
+	 */
+	public int[] assignAll( List<String> tokens ) {
+		int[] ids = new int[ tokens.size() ];
+		int i = 0;
+		for ( String token : tokens ) {
+			ids[i++] = this.assign( token );
+		}
+		return ids;
+	}
+
+
+	/**
+	 * Gets the id of a token without assigning one.
+	 *
+	 * @since 1.1.0
+	 * @param token the filtered Kern token
+	 * @return the id of the token, or {@link #UNKNOWN} if it is not in the dictionary
+	 */
+	public synchronized int lookup( String token ) {
+		int code = KernTokenCodec.encode( token );
+		Integer id = isPacked( token, code ) ? this.byCode.get( code ) : this.byToken.get( token );
+		return id == null ? UNKNOWN : id;
+	}
+
+
+	/**
+	 * Determines whether a token is identified by its packed value.
+	 *
+	 * @since 1.1.0
+	 * @param token the filtered Kern token
+	 * @param code the packed value of the token
+	 * @return false if the token cannot be packed or is a chord
+	 */
+	private static boolean isPacked( String token, int code ) {
+		return code != KernTokenCodec.INVALID && ! KernTokenCodec.isChord( token );
+	}
+
+
+	/**
+	 * Gets the ids of a list of tokens without assigning any.
+	 *
+	 * @since 1.1.0
+	 * @param tokens a list of filtered Kern tokens
+	 * @return the ids of the tokens, in the same order; tokens not in the dictionary are {@link #UNKNOWN}
+	 */
+	public int[] lookupAll( List<String> tokens ) {
+		int[] ids = new int[ tokens.size() ];
+		int i = 0;
+		for ( String token : tokens ) {
+			ids[i++] = this.lookup( token );
+		}
+		return ids;
+	}
+
+
+	/**
+	 * Gets the packed value of the token with the given id.
+	 *
+	 * @since 1.1.0
+	 * @param id a token id
+	 * @return the packed token, or {@link KernTokenCodec#INVALID} if the token cannot be packed or no token has that id
+	 */
+	public synchronized int code( int id ) {
+		if ( id < 0 || id >= this.tokens.size() ) {
+			return KernTokenCodec.INVALID;
+		}
+		return this.codes[id];
+	}
+
+
+	/**
+	 * Stores a token under the given id, which must be less than the number of tokens.
+	 *
+	 * @since 1.1.0
+	 * @param id the id of the token
+	 * @param token the filtered Kern token
+	 */
+	private void put( int id, String token ) {
+		int code = KernTokenCodec.encode( token );
+		if ( id >= this.codes.length ) {
+			this.codes = Arrays.copyOf( this.codes, Math.max( id + 1, this.codes.length * 2 ) );
+		}
+		this.codes[id] = code;
+		this.tokens.set( id, token );
+		if ( isPacked( token, code ) ) {
+			this.byCode.put( code, id );
+		} else {
+			this.byToken.put( token, id );
+		}
+	}
+
+
+	/**
+	 * Gets the number of distinct tokens in this dictionary.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public synchronized int size() {
+		return this.tokens.size();
+	}
+
+
+	/**
+	 * Gets the token with the given id.
+	 *
+	 * @since 1.1.0
+	 * @param id a token id
+	 * @return the filtered Kern token, or null if no token has that id
+	 */
+	public synchronized String token( int id ) {
+		if ( id < 0 || id >= this.tokens.size() ) {
+			return null;
+		}
+		return this.tokens.get( id );
+	}
+}
@@ -0,0 +1,136 @@
+package clefdemo.simplehash.index;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class is a Bloom filter over int hashes.
+ *
+ * A filter for n hashes with a false-positive rate p has m = -n ln p / (ln 2)^2 bits and sets k = (m / n) ln 2 bits 
+ * per hash, chosen by double hashing: bit i of a hash h is h1 + i * h2 modulo m, where h1 and h2 are two mixes of h. A 
+ * filter never reports that a hash it holds is absent, so a negative answer is definite.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class BloomFilter {
+
+	private final long[] words;
+	private final int numHashes;
+	private final long numBits;
+
+
+	/**
+	 * @since 1.1.0
+	 * @param words the bits of the filter
+	 * @param numHashes the number of bits set per hash
+	 */
+	private BloomFilter( long[] words, int numHashes ) {
+		this.words = words;
+		this.numHashes = numHashes;
+		this.numBits = (long) words.length * 64;
+	}
+
+
+	/**
+	 * Adds a hash to this filter.
+	 *
+	 * @since 1.1.0
+	 * @param hash a hash
+	 */
+	public void add( int hash ) {
+		long h1 = mix( hash ) & 0xFFFFFFFFL;
+		long h2 = mix( hash ^ 0x5BD1E995 ) | 1;
+		for ( int i = 0; i < this.numHashes; i++ ) {
+			long bit = Math.floorMod( h1 + i * h2, this.numBits );
+			this.words[ (int) ( bit >>> 6 ) ] |= 1L << bit;
+		}
+	}
+
+
+	/**
+	 * Creates an empty filter sized for a number of hashes and a false-positive rate.
+	 *
+	 * @since 1.1.0
+	 * @param expected the number of distinct hashes to be added
+	 * @param fpp the false-positive rate, between 0 and 1
+	 * @return the filter
+	 */
+	public static BloomFilter create( int expected, double fpp ) {
+		int n = Math.max( 1, expected );
+		double p = Math.min( 0.5, Math.max( 1e-9, fpp ) );
+		long bits = (long) Math.ceil( -n * Math.log( p ) / ( Math.log( 2 ) * Math.log( 2 ) ) );
+		int words = (int) Math.max( 1, ( bits + 63 ) / 64 );
+		int numHashes = (int) Math.max( 1, Math.round( (double) words * 64 / n * Math.log( 2 ) ) );
+		return new BloomFilter( new long[ words ], numHashes );
+	}
+
+
+	/**
+	 * Reads a filter written by {@link #serialize()}.
+	 *
+	 * @since 1.1.0
+	 * @param bytes the serialized filter
+	 * @return the filter
+	 */
+	public static BloomFilter deserialize( byte[] bytes ) {
+		ByteBuffer buf = ByteBuffer.wrap( bytes );
+		int numHashes = buf.getInt();
+		long[] words = new long[ buf.getInt() ];
+		buf.asLongBuffer().get( words );
+		return new BloomFilter( words, numHashes );
+	}
+
+
+	/**
+	 * Determines whether a hash may have been added to this filter.
+	 *
+	 * @since 1.1.0
+	 * @param hash a hash
+	 * @return false if the hash was certainly not added; true if it probably was
+	 */
+	public boolean mightContain( int hash ) {
+		long h1 = mix( hash ) & 0xFFFFFFFFL;
+		long h2 = mix( hash ^ 0x5BD1E995 ) | 1;
+		for ( int i = 0; i < this.numHashes; i++ ) {
+			long bit = Math.floorMod( h1 + i * h2, this.numBits );
+			if ( ( this.words[ (int) ( bit >>> 6 ) ] & ( 1L << bit ) ) == 0 ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Mixes the bits of a hash, so that hashes differing in few bits set unrelated bits of the filter.
+	 *
+	 * @since 1.1.0
+	 * @param h a hash
+	 * @return the mixed hash
+	 */
+	private static int mix( int h ) {
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+
+	/**
+	 * Writes this filter as bytes: the number of bits set per hash, the number of words, then the words.
+	 *
+	 * @since 1.1.0
+	 * @return the serialized filter
+	 */
+	public byte[] serialize() {
+		ByteBuffer buf = ByteBuffer.allocate( 8 + this.words.length * 8 );
+		buf.putInt( this.numHashes );
+		buf.putInt( this.words.length );
+		for ( long word : this.words ) {
+			buf.putLong( word );
+		}
+		return buf.array();
+	}
+}
@@ -0,0 +1,49 @@
+package clefdemo.simplehash.index;
+
+/**
+ * This class is a fixed-length array of ints held on the Java heap, split into chunks of 2^20 ints so that it may 
+ * hold more ints than a single Java array.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class HeapIntArray implements IntArray {
+
+	private static final int CHUNK_BITS = 20;
+	private static final int CHUNK_MASK = ( 1 << CHUNK_BITS ) - 1;
+
+	private final int[][] chunks;
+	private final long length;
+
+
+	/**
+	 * @since 1.1.0
+	 * @param length the number of ints
+	 */
+	public HeapIntArray( long length ) {
+		this.length = length;
+		int n = (int) ( ( length + CHUNK_MASK ) >>> CHUNK_BITS );
+		this.chunks = new int[n][];
+		for ( int i = 0; i < n; i++ ) {
+			this.chunks[i] = new int[ (int) Math.min( 1L << CHUNK_BITS, length - ( (long) i << CHUNK_BITS ) ) ];
+		}
+	}
+
+
+	@Override
+	public int get( long i ) {
+		return this.chunks[ (int) ( i >>> CHUNK_BITS ) ][ (int) ( i & CHUNK_MASK ) ];
+	}
+
+
+	@Override
+	public long length() {
+		return this.length;
+	}
+
+
+	@Override
+	public void set( long i, int value ) {
+		this.chunks[ (int) ( i >>> CHUNK_BITS ) ][ (int) ( i & CHUNK_MASK ) ] = value;
+	}
+}
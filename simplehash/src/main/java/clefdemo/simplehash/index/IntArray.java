@@ -0,0 +1,40 @@
+package clefdemo.simplehash.index;
+
+/**
+ * A fixed-length array of ints that may hold more than 2^31 elements, wherever its elements are stored.
+ *
+ * Every element is 0 until set.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public interface IntArray {
+
+	/**
+	 * Gets an element.
+	 *
+	 * @since 1.1.0
+	 * @param i the index of the element
+	 * @return the element
+	 */
+	public int get( long i );
+
+
+	/**
+	 * Gets the number of elements.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public long length();
+
+
+	/**
+	 * Sets an element.
+	 *
+	 * @since 1.1.0
+	 * @param i the index of the element
+	 * @param value the new value of the element
+	 */
+	public void set( long i, int value );
+}
@@ -0,0 +1,166 @@
+package clefdemo.simplehash.index;
+
+import java.util.Arrays;
+
+/**
+ * This class counts occurrences of long keys without boxing them.
+ *
+ * It is an open-addressing hash table with linear probing, which doubles in size when it is more than half full.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class LongIntCounter {
+
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private long[] keys;
+	private int[] counts;
+	private int size;
+
+
+	/**
+	 * @since 1.1.0
+	 * @param expected the number of distinct keys expected
+	 */
+	public LongIntCounter( int expected ) {
+		int capacity = Integer.highestOneBit( Math.max( 16, expected * 2 ) - 1 ) << 1;
+		this.keys = new long[ capacity ];
+		this.counts = new int[ capacity ];
+		Arrays.fill( this.keys, EMPTY );
+	}
+
+
+	/**
+	 * Adds {@code delta} to the count of {@code key}.
+	 *
+	 * @since 1.1.0
+	 * @param key any key except Long.MIN_VALUE
+	 * @param delta the amount to add
+	 * @return the new count of the key
+	 */
+	public int add( long key, int delta ) {
+		int slot = this.slot( key );
+		if ( this.keys[slot] == EMPTY ) {
+			this.keys[slot] = key;
+			this.size++;
+			if ( this.size * 2 > this.keys.length ) {
+				this.counts[slot] = delta;
+				this.grow();
+				return delta;
+			}
+		}
+		this.counts[slot] += delta;
+		return this.counts[slot];
+	}
+
+
+	/**
+	 * Gets the count of {@code key}.
+	 *
+	 * @since 1.1.0
+	 * @param key a key
+	 * @return the count of the key, or 0 if it has not been added
+	 */
+	public int get( long key ) {
+		int slot = this.slot( key );
+		return this.keys[slot] == EMPTY ? 0 : this.counts[slot];
+	}
+
+
+	/**
+	 * Gets the key stored in the given slot, for iterating over the counter.
+	 *
+	 * @since 1.1.0
+	 * @param slot a slot from 0 to {@link #capacity()} - 1
+	 * @return the key, or Long.MIN_VALUE if the slot is empty
+	 */
+	public long keyAt( int slot ) {
+		return this.keys[slot];
+	}
+
+
+	/**
+	 * Gets the count stored in the given slot, for iterating over the counter.
+	 *
+	 * @since 1.1.0
+	 * @param slot a slot from 0 to {@link #capacity()} - 1
+	 * @return the count, or 0 if the slot is empty
+	 */
+	public int countAt( int slot ) {
+		return this.counts[slot];
+	}
+
+
+	/**
+	 * Gets the number of slots, for iterating over the counter.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int capacity() {
+		return this.keys.length;
+	}
+
+
+	/**
+	 * Determines whether a slot holds a key.
+	 *
+	 * @since 1.1.0
+	 * @param slot a slot from 0 to {@link #capacity()} - 1
+	 * @return true if the slot holds a key
+	 */
+	public boolean isOccupied( int slot ) {
+		return this.keys[slot] != EMPTY;
+	}
+
+
+	/**
+	 * Gets the number of distinct keys counted.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int size() {
+		return this.size;
+	}
+
+
+	/**
+	 * Doubles the number of slots and re-inserts every key.
+	 *
+	 * @since 1.1.0
+	 */
+	private void grow() {
+		long[] oldKeys = this.keys;
+		int[] oldCounts = this.counts;
+		this.keys = new long[ oldKeys.length * 2 ];
+		this.counts = new int[ oldCounts.length * 2 ];
+		Arrays.fill( this.keys, EMPTY );
+		for ( int i = 0; i < oldKeys.length; i++ ) {
+			if ( oldKeys[i] != EMPTY ) {
+				int slot = this.slot( oldKeys[i] );
+				this.keys[slot] = oldKeys[i];
+				this.counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+
+	/**
+	 * Finds the slot holding {@code key}, or the empty slot where it would be inserted.
+	 *
+	 * @since 1.1.0
+	 * @param key a key
+	 * @return the slot
+	 */
+	private int slot( long key ) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		int mask = this.keys.length - 1;
+		int slot = (int) ( h ^ ( h >>> 32 ) ) & mask;
+		while ( this.keys[slot] != EMPTY && this.keys[slot] != key ) {
+			slot = ( slot + 1 ) & mask;
+		}
+		return slot;
+	}
+}
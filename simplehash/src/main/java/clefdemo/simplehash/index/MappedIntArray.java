@@ -0,0 +1,89 @@
+package clefdemo.simplehash.index;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class is a fixed-length array of ints memory-mapped from a file.
+ *
+ * Like {@link OffHeapIntArray}, the array is outside the Java heap, but its pages are backed by the file rather 
+ * than by memory, so the operating system may evict them under memory pressure and read them back on demand.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class MappedIntArray extends OffHeapIntArray {
+
+	private final Path file;
+	private final MappedByteBuffer[] maps;
+
+
+	/**
+	 * Maps an array onto a file, extending the file as needed.
+	 *
+	 * @since 1.1.0
+	 * @param file the file to map
+	 * @param length the number of ints
+	 * @throws IOException thrown if the file could not be mapped
+	 */
+	public MappedIntArray( Path file, long length ) throws IOException {
+		this( file, length, map( file, length ) );
+	}
+
+
+	private MappedIntArray( Path file, long length, MappedByteBuffer[] maps ) {
+		super( length, maps );
+		this.file = file;
+		this.maps = maps;
+	}
+
+
+	/**
+	 * Maps the chunks of an array onto consecutive regions of a file.
+	 *
+	 * @since 1.1.0
+	 * @param file the file to map
+	 * @param length the number of ints
+	 * @return the mapped chunks
+	 * @throws IOException thrown if the file could not be mapped
+	 */
+	private static MappedByteBuffer[] map( Path file, long length ) throws IOException {
+		int[] sizes = chunkBytes( length );
+		MappedByteBuffer[] maps = new MappedByteBuffer[ sizes.length ];
+		// The mappings remain valid after the channel is closed.
+		try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE ) ) {
+			long position = 0;
+			for ( int i = 0; i < sizes.length; i++ ) {
+				maps[i] = channel.map( FileChannel.MapMode.READ_WRITE, position, sizes[i] );
+				position += sizes[i];
+			}
+		}
+		return maps;
+	}
+
+
+	/**
+	 * Writes any changes to the array to its file.
+	 *
+	 * @since 1.1.0
+	 */
+	public void force() {
+		for ( MappedByteBuffer map : this.maps ) {
+			map.force();
+		}
+	}
+
+
+	/**
+	 * Gets the file onto which the array is mapped.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public Path getFile() {
+		return this.file;
+	}
+}
@@ -0,0 +1,99 @@
+package clefdemo.simplehash.index;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * This class is a fixed-length array of ints held outside the Java heap, in direct byte buffers.
+ *
+ * The array is split into chunks of 2^26 ints (256 MB), so that it may hold more ints than a single buffer can 
+ * address. Its contents are never scanned or moved by the garbage collector, and every element is 0 until set.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class OffHeapIntArray implements IntArray {
+
+	private static final int CHUNK_BITS = 26;
+	private static final int CHUNK_MASK = ( 1 << CHUNK_BITS ) - 1;
+
+	private final IntBuffer[] chunks;
+	private final long length;
+
+
+	/**
+	 * @since 1.1.0
+	 * @param length the number of ints
+	 */
+	public OffHeapIntArray( long length ) {
+		this( length, allocate( length ) );
+	}
+
+
+	/**
+	 * Creates an array over the given buffers.
+	 *
+	 * @since 1.1.0
+	 * @param length the number of ints
+	 * @param buffers direct buffers of the sizes given by {@link #chunkBytes(long)}
+	 */
+	protected OffHeapIntArray( long length, ByteBuffer[] buffers ) {
+		this.length = length;
+		this.chunks = new IntBuffer[ buffers.length ];
+		for ( int i = 0; i < buffers.length; i++ ) {
+			this.chunks[i] = buffers[i].order( ByteOrder.nativeOrder() ).asIntBuffer();
+		}
+	}
+
+
+	/**
+	 * Allocates the direct buffers of an array.
+	 *
+	 * @since 1.1.0
+	 * @param length the number of ints
+	 * @return the buffers
+	 */
+	private static ByteBuffer[] allocate( long length ) {
+		int[] sizes = chunkBytes( length );
+		ByteBuffer[] buffers = new ByteBuffer[ sizes.length ];
+		for ( int i = 0; i < sizes.length; i++ ) {
+			buffers[i] = ByteBuffer.allocateDirect( sizes[i] );
+		}
+		return buffers;
+	}
+
+
+	/**
+	 * Gets the size of each chunk of an array.
+	 *
+	 * @since 1.1.0
+	 * @param length the number of ints
+	 * @return the size of each chunk in bytes; every chunk but the last holds 2^26 ints
+	 */
+	protected static int[] chunkBytes( long length ) {
+		int[] sizes = new int[ (int) ( ( length + CHUNK_MASK ) >>> CHUNK_BITS ) ];
+		for ( int i = 0; i < sizes.length; i++ ) {
+			sizes[i] = (int) Math.min( 1L << CHUNK_BITS, length - ( (long) i << CHUNK_BITS ) ) * 4;
+		}
+		return sizes;
+	}
+
+
+	@Override
+	public int get( long i ) {
+		return this.chunks[ (int) ( i >>> CHUNK_BITS ) ].get( (int) ( i & CHUNK_MASK ) );
+	}
+
+
+	@Override
+	public long length() {
+		return this.length;
+	}
+
+
+	@Override
+	public void set( long i, int value ) {
+		this.chunks[ (int) ( i >>> CHUNK_BITS ) ].put( (int) ( i & CHUNK_MASK ), value );
+	}
+}
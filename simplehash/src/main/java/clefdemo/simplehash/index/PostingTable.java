@@ -0,0 +1,202 @@
+package clefdemo.simplehash.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+import clefdemo.simplehash.db.Posting;
+import clefdemo.simplehash.humdrum.SpineView;
+
+/**
+ * This class holds the posting lists of the stored n-grams in two arrays of ints.
+ *
+ * The first array is an open-addressing hash table with linear probing, of four ints per slot: the hash, the n-gram 
+ * size and view, the index of the n-gram's first posting, and its number of postings (0 for an empty slot). The 
+ * second holds the postings of each n-gram contiguously, as two ints each: the number of the spine and the offset 
+ * within it. The arrays may be on the heap, off the heap or memory-mapped (see {@link IntArray}); only the names of 
+ * the spines are always kept on the heap, so that off the heap, heap usage depends on the number of spines but not 
+ * on the number of n-grams or occurrences.
+ *
+ * The table is filled once, n-gram by n-gram, through {@link #append(int, int, SpineView, int, int)}, and is then 
+ * read-only and safe to share between threads.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class PostingTable {
+
+	private final IntArray table;
+	private final IntArray postings;
+	private final long mask;
+
+	private final List<String[]> spineNames = new ArrayList<String[]>();
+	private final List<Integer> spineIndexes = new ArrayList<Integer>();
+	private final Map<String, Integer> spineIds = new HashMap<String, Integer>();
+
+	private long size;
+	private long grams;
+	private long slot = -1;
+	private int lastHash;
+	private int lastKey;
+
+
+	/**
+	 * Creates an empty table.
+	 *
+	 * @since 1.1.0
+	 * @param grams the number of distinct n-grams, i.e. of distinct hashes, n-gram sizes and views, to be appended
+	 * @param occurrences the total number of postings to be appended
+	 * @param allocator allocates an array of ints of a given length, e.g. {@code HeapIntArray::new}
+	 */
+	public PostingTable( long grams, long occurrences, LongFunction<IntArray> allocator ) {
+		long slots = Long.highestOneBit( Math.max( 16, grams * 2 ) - 1 ) << 1;
+		this.table = allocator.apply( slots * 4 );
+		this.postings = allocator.apply( Math.max( 1, occurrences * 2 ) );
+		this.mask = slots - 1;
+	}
+
+
+	/**
+	 * Appends a posting. The postings of each n-gram must be appended consecutively.
+	 *
+	 * @since 1.1.0
+	 * @param hash the hashed n-gram
+	 * @param gramSize the size of the n-gram, in tokens
+	 * @param view the view over which the n-gram was taken
+	 * @param spine the number of the spine, from {@link #spineId(String, String, String, int)}
+	 * @param offset the offset of the occurrence within the view of the spine
+	 */
+	public void append( int hash, int gramSize, SpineView view, int spine, int offset ) {
+		int key = key( gramSize, view );
+		if ( this.slot < 0 || hash != this.lastHash || key != this.lastKey ) {
+			// Start the postings of a new n-gram.
+			this.slot = this.find( hash, key );
+			this.table.set( this.slot * 4, hash );
+			this.table.set( this.slot * 4 + 1, key );
+			this.table.set( this.slot * 4 + 2, (int) this.size );
+			this.lastHash = hash;
+			this.lastKey = key;
+			this.grams++;
+		}
+		this.postings.set( this.size * 2, spine );
+		this.postings.set( this.size * 2 + 1, offset );
+		this.table.set( this.slot * 4 + 3, this.table.get( this.slot * 4 + 3 ) + 1 );
+		this.size++;
+	}
+
+
+	/**
+	 * Finds the slot holding an n-gram, or the empty slot where it would be inserted.
+	 *
+	 * @since 1.1.0
+	 * @param hash the hashed n-gram
+	 * @param key the n-gram size and view
+	 * @return the slot
+	 */
+	private long find( int hash, int key ) {
+		long h = ( hash * 31L + key ) * 0x9E3779B97F4A7C15L;
+		long slot = ( h ^ ( h >>> 32 ) ) & this.mask;
+		while ( this.table.get( slot * 4 + 3 ) != 0 && ( this.table.get( slot * 4 ) != hash || this.table.get( slot * 4 + 1 ) != key ) ) {
+			slot = ( slot + 1 ) & this.mask;
+		}
+		return slot;
+	}
+
+
+	/**
+	 * Packs an n-gram size and a view into one int.
+	 *
+	 * @since 1.1.0
+	 * @param gramSize the size of an n-gram, in tokens
+	 * @param view the view over which the n-gram was taken
+	 * @return the packed key
+	 */
+	private static int key( int gramSize, SpineView view ) {
+		return ( gramSize << 8 ) | view.ordinal();
+	}
+
+
+	/**
+	 * Selects the individual occurrences of a given hash among n-grams of a given size.
+	 *
+	 * @since 1.1.0
+	 * @param hash a hashed n-gram to select
+	 * @param gramSize the size of the n-gram that was hashed, in tokens
+	 * @param view the view over which the n-gram was taken
+	 * @return a list of {@code Posting} objects in the order in which they were appended, empty if there are none
+	 */
+	public List<Posting> select( int hash, int gramSize, SpineView view ) {
+		long slot = this.find( hash, key( gramSize, view ) );
+		int count = this.table.get( slot * 4 + 3 );
+		long start = this.table.get( slot * 4 + 2 ) & 0xFFFFFFFFL;
+
+		List<Posting> found = new ArrayList<Posting>( count );
+		for ( long i = start; i < start + count; i++ ) {
+			int spine = this.postings.get( i * 2 );
+			String[] names = this.spineNames.get( spine );
+			found.add( new Posting( names[0], names[1], names[2], this.spineIndexes.get( spine ), this.postings.get( i * 2 + 1 ) ) );
+		}
+		return found;
+	}
+
+
+	/**
+	 * Writes any changes to memory-mapped arrays to their files.
+	 *
+	 * @since 1.1.0
+	 */
+	public void force() {
+		for ( IntArray array : new IntArray[] { this.table, this.postings } ) {
+			if ( array instanceof MappedIntArray ) {
+				( (MappedIntArray) array ).force();
+			}
+		}
+	}
+
+
+	/**
+	 * Gets the number of distinct n-grams in this table.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public long numGrams() {
+		return this.grams;
+	}
+
+
+	/**
+	 * Gets the number of postings in this table.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public long size() {
+		return this.size;
+	}
+
+
+	/**
+	 * Gets the number of a spine, numbering it if it has not been seen before.
+	 *
+	 * @since 1.1.0
+	 * @param datasetName the name of the dataset to which the file belongs
+	 * @param filename the name of the Humdrum file
+	 * @param partname the name of the part within the Humdrum file
+	 * @param spineIndex the index of the spine of the part within the Humdrum file
+	 * @return the number of the spine
+	 */
+	public int spineId( String datasetName, String filename, String partname, int spineIndex ) {
+		String key = datasetName + "\t" + filename + "\t" + spineIndex;
+		Integer id = this.spineIds.get( key );
+		if ( id == null ) {
+			id = this.spineNames.size();
+			this.spineIds.put( key, id );
+			this.spineNames.add( new String[] { datasetName, filename, partname } );
+			this.spineIndexes.add( spineIndex );
+		}
+		return id;
+	}
+}
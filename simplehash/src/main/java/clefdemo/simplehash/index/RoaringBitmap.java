@@ -0,0 +1,538 @@
+package clefdemo.simplehash.index;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class is a compressed set of non-negative ints, in the style of a Roaring bitmap.
+ *
+ * The ints are split by their high 16 bits into chunks of up to 65536 values. A chunk of at most 4096 values is 
+ * stored as a sorted array of its low 16 bits; a larger chunk is stored as a plain bitmap of 1024 longs. Either way 
+ * no chunk takes more than 8 KB, and a sparse set takes about two bytes per value. AND, OR and ANDNOT work chunk by 
+ * chunk, and never touch the chunks that only one operand has, where they can be skipped.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class RoaringBitmap {
+
+	/**
+	 * The largest number of values stored as a sorted array rather than a bitmap.
+	 */
+	private static final int ARRAY_MAX = 4096;
+
+	private static final int WORDS = 1024;
+
+	private char[] keys;
+	private Container[] containers;
+	private int size;
+
+
+	/**
+	 * Creates an empty set.
+	 *
+	 * @since 1.1.0
+	 */
+	public RoaringBitmap() {
+		this.keys = new char[4];
+		this.containers = new Container[4];
+	}
+
+
+	/**
+	 * Adds a value to this set.
+	 *
+	 * @since 1.1.0
+	 * @param value a non-negative int
+	 */
+	public void add( int value ) {
+		char key = (char) ( value >>> 16 );
+		int i = this.indexOf( key );
+		if ( i < 0 ) {
+			i = -i - 1;
+			this.insert( i, key, new ArrayContainer( new char[4], 0 ) );
+		}
+		this.containers[i] = this.containers[i].add( (char) value );
+	}
+
+
+	/**
+	 * Intersects two sets.
+	 *
+	 * @since 1.1.0
+	 * @param a a set
+	 * @param b another set
+	 * @return a new set of the values in both {@code a} and {@code b}
+	 */
+	public static RoaringBitmap and( RoaringBitmap a, RoaringBitmap b ) {
+		RoaringBitmap result = new RoaringBitmap();
+		int i = 0;
+		int j = 0;
+		while ( i < a.size && j < b.size ) {
+			if ( a.keys[i] < b.keys[j] ) {
+				i++;
+			} else if ( a.keys[i] > b.keys[j] ) {
+				j++;
+			} else {
+				result.append( a.keys[i], and( a.containers[i], b.containers[j] ) );
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Subtracts one set from another.
+	 *
+	 * @since 1.1.0
+	 * @param a a set
+	 * @param b the set to subtract
+	 * @return a new set of the values in {@code a} but not in {@code b}
+	 */
+	public static RoaringBitmap andNot( RoaringBitmap a, RoaringBitmap b ) {
+		RoaringBitmap result = new RoaringBitmap();
+		int j = 0;
+		for ( int i = 0; i < a.size; i++ ) {
+			while ( j < b.size && b.keys[j] < a.keys[i] ) {
+				j++;
+			}
+			if ( j < b.size && b.keys[j] == a.keys[i] ) {
+				result.append( a.keys[i], andNot( a.containers[i], b.containers[j] ) );
+			} else {
+				result.append( a.keys[i], a.containers[i].copy() );
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Gets the number of values in this set.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int cardinality() {
+		int cardinality = 0;
+		for ( int i = 0; i < this.size; i++ ) {
+			cardinality += this.containers[i].cardinality();
+		}
+		return cardinality;
+	}
+
+
+	/**
+	 * Determines whether this set contains a value.
+	 *
+	 * @since 1.1.0
+	 * @param value an int
+	 * @return true if the value is in this set
+	 */
+	public boolean contains( int value ) {
+		int i = this.indexOf( (char) ( value >>> 16 ) );
+		return value >= 0 && i >= 0 && this.containers[i].contains( (char) value );
+	}
+
+
+	/**
+	 * Reads a set written by {@link #serialize()}.
+	 *
+	 * @since 1.1.0
+	 * @param bytes the serialized set
+	 * @return the set
+	 */
+	public static RoaringBitmap deserialize( byte[] bytes ) {
+		ByteBuffer buf = ByteBuffer.wrap( bytes );
+		RoaringBitmap result = new RoaringBitmap();
+		int n = buf.getInt();
+		for ( int i = 0; i < n; i++ ) {
+			char key = buf.getChar();
+			int cardinality = buf.getChar() + 1;
+			if ( cardinality <= ARRAY_MAX ) {
+				char[] values = new char[ cardinality ];
+				buf.asCharBuffer().get( values );
+				buf.position( buf.position() + cardinality * 2 );
+				result.append( key, new ArrayContainer( values, cardinality ) );
+			} else {
+				long[] words = new long[ WORDS ];
+				buf.asLongBuffer().get( words );
+				buf.position( buf.position() + WORDS * 8 );
+				result.append( key, new BitmapContainer( words, cardinality ) );
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Determines whether this set is empty.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+
+	/**
+	 * Unites two sets.
+	 *
+	 * @since 1.1.0
+	 * @param a a set
+	 * @param b another set
+	 * @return a new set of the values in either {@code a} or {@code b}
+	 */
+	public static RoaringBitmap or( RoaringBitmap a, RoaringBitmap b ) {
+		RoaringBitmap result = new RoaringBitmap();
+		int i = 0;
+		int j = 0;
+		while ( i < a.size || j < b.size ) {
+			if ( j == b.size || ( i < a.size && a.keys[i] < b.keys[j] ) ) {
+				result.append( a.keys[i], a.containers[i].copy() );
+				i++;
+			} else if ( i == a.size || a.keys[i] > b.keys[j] ) {
+				result.append( b.keys[j], b.containers[j].copy() );
+				j++;
+			} else {
+				result.append( a.keys[i], or( a.containers[i], b.containers[j] ) );
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Writes this set as bytes: the number of chunks, then for each chunk its high 16 bits, its number of values 
+	 * less one, and either its sorted values or its 1024-word bitmap.
+	 *
+	 * @since 1.1.0
+	 * @return the serialized set
+	 */
+	public byte[] serialize() {
+		int length = 4;
+		for ( int i = 0; i < this.size; i++ ) {
+			length += 4 + ( this.containers[i] instanceof ArrayContainer ? this.containers[i].cardinality() * 2 : WORDS * 8 );
+		}
+
+		ByteBuffer buf = ByteBuffer.allocate( length );
+		buf.putInt( this.size );
+		for ( int i = 0; i < this.size; i++ ) {
+			Container c = this.containers[i];
+			buf.putChar( this.keys[i] );
+			buf.putChar( (char) ( c.cardinality() - 1 ) );
+			if ( c instanceof ArrayContainer ) {
+				ArrayContainer ac = (ArrayContainer) c;
+				for ( int k = 0; k < ac.cardinality; k++ ) {
+					buf.putChar( ac.values[k] );
+				}
+			} else {
+				for ( long word : ( (BitmapContainer) c ).words ) {
+					buf.putLong( word );
+				}
+			}
+		}
+		return buf.array();
+	}
+
+
+	/**
+	 * Gets the values in this set.
+	 *
+	 * @since 1.1.0
+	 * @return the values in ascending order
+	 */
+	public int[] toArray() {
+		int[] values = new int[ this.cardinality() ];
+		int n = 0;
+		for ( int i = 0; i < this.size; i++ ) {
+			int high = this.keys[i] << 16;
+			for ( char low : this.containers[i].values() ) {
+				values[n++] = high | low;
+			}
+		}
+		return values;
+	}
+
+
+	/**
+	 * Appends a chunk whose key is greater than every key in this set, unless it is empty.
+	 *
+	 * @since 1.1.0
+	 * @param key the high 16 bits of the values of the chunk
+	 * @param c the chunk, or null if it is empty
+	 */
+	private void append( char key, Container c ) {
+		if ( c != null && c.cardinality() > 0 ) {
+			this.insert( this.size, key, c );
+		}
+	}
+
+
+	/**
+	 * Finds the chunk with the given key.
+	 *
+	 * @since 1.1.0
+	 * @param key the high 16 bits of a value
+	 * @return the index of the chunk, or -(insertion point) - 1 if there is none
+	 */
+	private int indexOf( char key ) {
+		return Arrays.binarySearch( this.keys, 0, this.size, key );
+	}
+
+
+	/**
+	 * Inserts a chunk at the given index.
+	 *
+	 * @since 1.1.0
+	 * @param i the index
+	 * @param key the high 16 bits of the values of the chunk
+	 * @param c the chunk
+	 */
+	private void insert( int i, char key, Container c ) {
+		if ( this.size == this.keys.length ) {
+			this.keys = Arrays.copyOf( this.keys, this.size * 2 );
+			this.containers = Arrays.copyOf( this.containers, this.size * 2 );
+		}
+		System.arraycopy( this.keys, i, this.keys, i + 1, this.size - i );
+		System.arraycopy( this.containers, i, this.containers, i + 1, this.size - i );
+		this.keys[i] = key;
+		this.containers[i] = c;
+		this.size++;
+	}
+
+
+	/**
+	 * Intersects two chunks.
+	 */
+	private static Container and( Container a, Container b ) {
+		if ( a instanceof ArrayContainer || b instanceof ArrayContainer ) {
+			// Keep the values of the array chunk that the other chunk contains.
+			ArrayContainer small = (ArrayContainer) ( a instanceof ArrayContainer ? a : b );
+			Container other = small == a ? b : a;
+			char[] values = new char[ small.cardinality ];
+			int n = 0;
+			for ( int k = 0; k < small.cardinality; k++ ) {
+				if ( other.contains( small.values[k] ) ) {
+					values[n++] = small.values[k];
+				}
+			}
+			return new ArrayContainer( values, n );
+		}
+		long[] words = ( (BitmapContainer) a ).words.clone();
+		long[] other = ( (BitmapContainer) b ).words;
+		for ( int k = 0; k < WORDS; k++ ) {
+			words[k] &= other[k];
+		}
+		return fromWords( words );
+	}
+
+
+	/**
+	 * Subtracts one chunk from another.
+	 */
+	private static Container andNot( Container a, Container b ) {
+		if ( a instanceof ArrayContainer ) {
+			ArrayContainer ac = (ArrayContainer) a;
+			char[] values = new char[ ac.cardinality ];
+			int n = 0;
+			for ( int k = 0; k < ac.cardinality; k++ ) {
+				if ( ! b.contains( ac.values[k] ) ) {
+					values[n++] = ac.values[k];
+				}
+			}
+			return new ArrayContainer( values, n );
+		}
+		long[] words = ( (BitmapContainer) a ).words.clone();
+		long[] other = b.words();
+		for ( int k = 0; k < WORDS; k++ ) {
+			words[k] &= ~other[k];
+		}
+		return fromWords( words );
+	}
+
+
+	/**
+	 * Unites two chunks.
+	 */
+	private static Container or( Container a, Container b ) {
+		long[] words = a.words();
+		if ( a instanceof BitmapContainer ) {
+			words = words.clone();
+		}
+		long[] other = b.words();
+		for ( int k = 0; k < WORDS; k++ ) {
+			words[k] |= other[k];
+		}
+		return fromWords( words );
+	}
+
+
+	/**
+	 * Makes a chunk from a bitmap, as an array if it has few enough values.
+	 */
+	private static Container fromWords( long[] words ) {
+		int cardinality = 0;
+		for ( long word : words ) {
+			cardinality += Long.bitCount( word );
+		}
+		BitmapContainer bc = new BitmapContainer( words, cardinality );
+		if ( cardinality > ARRAY_MAX ) {
+			return bc;
+		}
+		return new ArrayContainer( bc.values(), cardinality );
+	}
+
+
+	/**
+	 * A chunk of up to 65536 values sharing their high 16 bits.
+	 */
+	private static abstract class Container {
+
+		abstract Container add( char value );
+
+		abstract int cardinality();
+
+		abstract boolean contains( char value );
+
+		abstract Container copy();
+
+		/**
+		 * Gets the values of this chunk in ascending order.
+		 */
+		abstract char[] values();
+
+		/**
+		 * Gets this chunk as a bitmap; the bitmap of a bitmap chunk is not copied.
+		 */
+		abstract long[] words();
+	}
+
+
+	/**
+	 * A chunk of at most {@link RoaringBitmap#ARRAY_MAX} values, stored sorted.
+	 */
+	private static class ArrayContainer extends Container {
+
+		private char[] values;
+		private int cardinality;
+
+		private ArrayContainer( char[] values, int cardinality ) {
+			this.values = values;
+			this.cardinality = cardinality;
+		}
+
+		@Override
+		Container add( char value ) {
+			int i = Arrays.binarySearch( this.values, 0, this.cardinality, value );
+			if ( i >= 0 ) {
+				return this;
+			}
+			if ( this.cardinality == ARRAY_MAX ) {
+				long[] words = this.words();
+				words[ value >>> 6 ] |= 1L << value;
+				return new BitmapContainer( words, this.cardinality + 1 );
+			}
+			i = -i - 1;
+			if ( this.cardinality == this.values.length ) {
+				this.values = Arrays.copyOf( this.values, Math.min( ARRAY_MAX, this.cardinality * 2 ) );
+			}
+			System.arraycopy( this.values, i, this.values, i + 1, this.cardinality - i );
+			this.values[i] = value;
+			this.cardinality++;
+			return this;
+		}
+
+		@Override
+		int cardinality() {
+			return this.cardinality;
+		}
+
+		@Override
+		boolean contains( char value ) {
+			return Arrays.binarySearch( this.values, 0, this.cardinality, value ) >= 0;
+		}
+
+		@Override
+		Container copy() {
+			return new ArrayContainer( this.values(), this.cardinality );
+		}
+
+		@Override
+		char[] values() {
+			return Arrays.copyOf( this.values, this.cardinality );
+		}
+
+		@Override
+		long[] words() {
+			long[] words = new long[ WORDS ];
+			for ( int k = 0; k < this.cardinality; k++ ) {
+				words[ this.values[k] >>> 6 ] |= 1L << this.values[k];
+			}
+			return words;
+		}
+	}
+
+
+	/**
+	 * A chunk of more than {@link RoaringBitmap#ARRAY_MAX} values, stored as a bitmap.
+	 */
+	private static class BitmapContainer extends Container {
+
+		private final long[] words;
+		private int cardinality;
+
+		private BitmapContainer( long[] words, int cardinality ) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+
+		@Override
+		Container add( char value ) {
+			long bit = 1L << value;
+			if ( ( this.words[ value >>> 6 ] & bit ) == 0 ) {
+				this.words[ value >>> 6 ] |= bit;
+				this.cardinality++;
+			}
+			return this;
+		}
+
+		@Override
+		int cardinality() {
+			return this.cardinality;
+		}
+
+		@Override
+		boolean contains( char value ) {
+			return ( this.words[ value >>> 6 ] & ( 1L << value ) ) != 0;
+		}
+
+		@Override
+		Container copy() {
+			return new BitmapContainer( this.words.clone(), this.cardinality );
+		}
+
+		@Override
+		char[] values() {
+			char[] values = new char[ this.cardinality ];
+			int n = 0;
+			for ( int k = 0; k < WORDS; k++ ) {
+				long word = this.words[k];
+				while ( word != 0 ) {
+					values[n++] = (char) ( k * 64 + Long.numberOfTrailingZeros( word ) );
+					word &= word - 1;
+				}
+			}
+			return values;
+		}
+
+		@Override
+		long[] words() {
+			return this.words;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package clefdemo.simplehash.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import clefdemo.simplehash.db.Posting;
+import clefdemo.simplehash.db.SpineRecord;
+
+/**
+ * This class indexes the token ids of every spine in a single suffix array, for exact search at any query length.
+ *
+ * The spines are concatenated, each followed by a separator that is not a token id, so that no match spans two 
+ * spines. Unlike the n-gram index, the size of this index does not depend on QUERY_SIZE_MIN and QUERY_SIZE_MAX: it 
+ * holds four ints per token, however long the queries.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class SpineIndex {
+
+	private static final int SEPARATOR = -1;
+
+	private final List<SpineRecord> spines;
+	private final int[] starts;
+	private final SuffixArray sa;
+
+
+	/**
+	 * @since 1.1.0
+	 * @param spines the spines to index
+	 */
+	public SpineIndex( List<SpineRecord> spines ) {
+		this.spines = new ArrayList<SpineRecord>( spines );
+		this.starts = new int[ this.spines.size() ];
+
+		int length = 0;
+		for ( SpineRecord spine : this.spines ) {
+			length += spine.getTokenIds().length + 1;
+		}
+
+		int[] text = new int[ length ];
+		int pos = 0;
+		for ( int i = 0; i < this.starts.length; i++ ) {
+			int[] ids = this.spines.get( i ).getTokenIds();
+			this.starts[i] = pos;
+			System.arraycopy( ids, 0, text, pos, ids.length );
+			pos += ids.length;
+			text[ pos++ ] = SEPARATOR;
+		}
+
+		this.sa = new SuffixArray( text );
+	}
+
+
+	/**
+	 * Finds every occurrence of the token ids {@code ids[from]} through {@code ids[to - 1]}.
+	 *
+	 * @since 1.1.0
+	 * @param ids token ids
+	 * @param from the index of the first token id to find
+	 * @param to the index after the last token id to find
+	 * @return a list of {@code Posting} objects ordered by spine and offset, empty if there are no occurrences
+	 */
+	public List<Posting> find( int[] ids, int from, int to ) {
+		List<Posting> postings = new ArrayList<Posting>();
+		if ( to <= from ) {
+			return postings;
+		}
+
+		int[] found = this.sa.find( ids, from, to );
+		Arrays.sort( found );
+		for ( int pos : found ) {
+			// Find the spine in which the occurrence starts.
+			int i = Arrays.binarySearch( this.starts, pos );
+			if ( i < 0 ) {
+				i = -i - 2;
+			}
+			SpineRecord spine = this.spines.get( i );
+			postings.add( new Posting( spine.getDatasetName(), spine.getFilename(), spine.getPartname(), spine.getSpineIndex(), pos - this.starts[i] ) );
+		}
+		return postings;
+	}
+
+
+	/**
+	 * Gets the number of tokens indexed, including one separator per spine.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int size() {
+		return this.sa.size();
+	}
+}
@@ -0,0 +1,233 @@
+package clefdemo.simplehash.index;
+
+import java.util.Arrays;
+
+/**
+ * This class is a suffix array, with its LCP array, over a sequence of ints.
+ *
+ * The suffixes are sorted by prefix doubling: each round sorts them by the ranks of their first 2k elements, given the 
+ * ranks of their first k elements, using two passes of counting sort, so construction takes O(n log n) time. The LCP 
+ * array is then computed in O(n) time with Kasai's algorithm. All occurrences of a pattern of length m are found by 
+ * a binary search for the first of them, in O(m log n) time, followed by a scan of the LCP array for the rest.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ */
+public class SuffixArray {
+
+	private final int[] text;
+	private final int[] sa;
+	private final int[] lcp;
+
+
+	/**
+	 * @since 1.1.0
+	 * @param text the sequence to index; it is not copied, and must not be changed afterwards
+	 */
+	public SuffixArray( int[] text ) {
+		this.text = text;
+		this.sa = sort( text );
+		this.lcp = kasai( text, this.sa );
+	}
+
+
+	/**
+	 * Compares the suffix starting at {@code pos} with a pattern, up to the length of the pattern.
+	 *
+	 * @since 1.1.0
+	 * @param pos the start of a suffix
+	 * @param pattern the pattern
+	 * @param from the index of the first element of the pattern
+	 * @param to the index after the last element of the pattern
+	 * @return a negative number, zero or a positive number as the suffix sorts before, starts with or sorts after the pattern
+	 */
+	private int compare( int pos, int[] pattern, int from, int to ) {
+		for ( int i = from; i < to; i++, pos++ ) {
+			if ( pos == this.text.length ) {
+				return -1;
+			}
+			if ( this.text[pos] != pattern[i] ) {
+				return this.text[pos] < pattern[i] ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+
+	/**
+	 * Finds every occurrence of {@code pattern[from]} through {@code pattern[to - 1]}.
+	 *
+	 * @since 1.1.0
+	 * @param pattern the pattern to find
+	 * @param from the index of the first element of the pattern
+	 * @param to the index after the last element of the pattern; must be greater than {@code from}
+	 * @return the start of every occurrence within the text, in no particular order
+	 */
+	public int[] find( int[] pattern, int from, int to ) {
+		int m = to - from;
+
+		// Binary search for the first suffix that does not sort before the pattern.
+		int lo = 0;
+		int hi = this.sa.length;
+		while ( lo < hi ) {
+			int mid = ( lo + hi ) >>> 1;
+			if ( this.compare( this.sa[mid], pattern, from, to ) < 0 ) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		if ( lo == this.sa.length || this.compare( this.sa[lo], pattern, from, to ) != 0 ) {
+			return new int[0];
+		}
+
+		// The following suffixes start with the pattern for as long as they share at least m elements with the previous one.
+		int end = lo + 1;
+		while ( end < this.sa.length && this.lcp[end] >= m ) {
+			end++;
+		}
+		return Arrays.copyOfRange( this.sa, lo, end );
+	}
+
+
+	/**
+	 * Computes the LCP array, where {@code lcp[i]} is the length of the longest common prefix of the suffixes at 
+	 * {@code sa[i - 1]} and {@code sa[i]}, and {@code lcp[0]} is 0.
+	 *
+	 * @since 1.1.0
+	 * @param text the indexed sequence
+	 * @param sa the suffix array of the sequence
+	 * @return the LCP array
+	 */
+	private static int[] kasai( int[] text, int[] sa ) {
+		int n = text.length;
+		int[] rank = new int[n];
+		for ( int i = 0; i < n; i++ ) {
+			rank[ sa[i] ] = i;
+		}
+
+		int[] lcp = new int[n];
+		int h = 0;
+		for ( int i = 0; i < n; i++ ) {
+			if ( rank[i] == 0 ) {
+				h = 0;
+				continue;
+			}
+			int j = sa[ rank[i] - 1 ];
+			while ( i + h < n && j + h < n && text[ i + h ] == text[ j + h ] ) {
+				h++;
+			}
+			lcp[ rank[i] ] = h;
+			// The next suffix shares at least one element fewer with its predecessor.
+			if ( h > 0 ) {
+				h--;
+			}
+		}
+		return lcp;
+	}
+
+
+	/**
+	 * Gets the length of the indexed sequence.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public int size() {
+		return this.text.length;
+	}
+
+
+	/**
+	 * Sorts the suffixes of a sequence by prefix doubling.
+	 *
+	 * @since 1.1.0
+	 * @param text the sequence
+	 * @return the starts of the suffixes in sorted order
+	 */
+	private static int[] sort( int[] text ) {
+		int n = text.length;
+		int[] sa = new int[n];
+		int[] rank = new int[n];
+		int[] tmp = new int[n];
+		if ( n == 0 ) {
+			return sa;
+		}
+
+		// Rank the suffixes by their first element, from 1; rank 0 stands for the end of the text.
+		int[] distinct = text.clone();
+		Arrays.sort( distinct );
+		int ranks = 0;
+		for ( int i = 0; i < n; i++ ) {
+			if ( i == 0 || distinct[i] != distinct[ i - 1 ] ) {
+				distinct[ ranks++ ] = distinct[i];
+			}
+		}
+		for ( int i = 0; i < n; i++ ) {
+			rank[i] = Arrays.binarySearch( distinct, 0, ranks, text[i] ) + 1;
+			sa[i] = i;
+		}
+
+		int[] counts = new int[ n + 2 ];
+		// Sort at least once, even if every element is distinct.
+		for ( int k = 1; ; k <<= 1 ) {
+
+			// Sort by the rank of the second half, then stably by the rank of the first half.
+			countingSort( sa, tmp, rank, k, counts );
+			countingSort( tmp, sa, rank, 0, counts );
+
+			// Re-rank: suffixes share a rank only if both halves do.
+			tmp[ sa[0] ] = 1;
+			for ( int i = 1; i < n; i++ ) {
+				int a = sa[ i - 1 ];
+				int b = sa[i];
+				boolean same = rank[a] == rank[b] && rankAt( rank, a + k ) == rankAt( rank, b + k );
+				tmp[b] = tmp[a] + ( same ? 0 : 1 );
+			}
+			System.arraycopy( tmp, 0, rank, 0, n );
+			ranks = rank[ sa[ n - 1 ] ];
+			if ( ranks == n ) {
+				break;
+			}
+		}
+
+		return sa;
+	}
+
+
+	/**
+	 * Stably sorts suffixes by the rank of the suffix {@code shift} elements further on.
+	 *
+	 * @since 1.1.0
+	 * @param in the suffixes to sort
+	 * @param out the sorted suffixes
+	 * @param rank the current ranks, from 1 to at most n
+	 * @param shift the distance to the suffix whose rank is the sort key
+	 * @param counts scratch space of at least n + 2 elements
+	 */
+	private static void countingSort( int[] in, int[] out, int[] rank, int shift, int[] counts ) {
+		Arrays.fill( counts, 0 );
+		for ( int pos : in ) {
+			counts[ rankAt( rank, pos + shift ) + 1 ]++;
+		}
+		for ( int i = 1; i < counts.length; i++ ) {
+			counts[i] += counts[ i - 1 ];
+		}
+		for ( int pos : in ) {
+			out[ counts[ rankAt( rank, pos + shift ) ]++ ] = pos;
+		}
+	}
+
+
+	/**
+	 * Gets the rank of the suffix at {@code pos}, or 0 past the end of the text.
+	 *
+	 * @since 1.1.0
+	 * @param rank the current ranks
+	 * @param pos the start of a suffix
+	 * @return the rank of the suffix
+	 */
+	private static int rankAt( int[] rank, int pos ) {
+		return pos < rank.length ? rank[pos] : 0;
+	}
+}
@@ -0,0 +1,143 @@
+package clefdemo.simplehash.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * This class keeps the {@code k} highest-scoring items offered to it, using a bounded min-heap.
+ *
+ * Offering n items costs O(n log k), and the items that do not make the cut are never sorted or kept. Ties are
+ * broken in favor of the item offered first.
+ *
+ * @author Max DeCurtins
+ * @since 1.1.0
+ * @param <T> the type of the items
+ */
+public class TopK<T> {
+
+	private final int k;
+	private final PriorityQueue<Entry<T>> heap;
+	private long sequence;
+	private long offered;
+
+
+	/**
+	 * @since 1.1.0
+	 * @param k the number of items to keep
+	 */
+	public TopK( int k ) {
+		this.k = Math.max( 0, k );
+		this.heap = new PriorityQueue<Entry<T>>( Math.max( 1, Math.min( this.k, 1024 ) ) );
+	}
+
+
+	/**
+	 * Offers an item.
+	 *
+	 * @since 1.1.0
+	 * @param item the item
+	 * @param score the score of the item; higher is better
+	 * @return true if the item is among the highest-scoring items so far
+	 */
+	public boolean offer( T item, long score ) {
+		this.offered++;
+		if ( this.k == 0 ) {
+			return false;
+		}
+		Entry<T> entry = new Entry<T>( item, score, this.sequence++ );
+		if ( this.heap.size() < this.k ) {
+			this.heap.add( entry );
+			return true;
+		}
+		if ( entry.compareTo( this.heap.peek() ) > 0 ) {
+			this.heap.poll();
+			this.heap.add( entry );
+			return true;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Gets the number of items offered, whether kept or not.
+	 *
+	 * @since 1.1.0
+	 * @return
+	 */
+	public long offered() {
+		return this.offered;
+	}
+
+
+	/**
+	 * Passes the kept items after the first {@code offset} to an action, highest score first, i.e. the items of a 
+	 * page of the ranking.
+	 *
+	 * @since 1.1.0
+	 * @param offset the number of best items to skip
+	 * @param action the action to which each item of the page is passed, in turn
+	 */
+	public void page( int offset, Consumer<T> action ) {
+		List<T> items = this.toList();
+		for ( T item : items.subList( Math.min( offset, items.size() ), items.size() ) ) {
+			action.accept( item );
+		}
+	}
+
+
+	/**
+	 * Gets the lowest score an item must beat to be kept, once {@code k} items are kept.
+	 *
+	 * @since 1.1.0
+	 * @return the lowest kept score, or Long.MIN_VALUE if fewer than {@code k} items are kept
+	 */
+	public long threshold() {
+		return this.heap.size() < this.k ? Long.MIN_VALUE : this.heap.peek().score;
+	}
+
+
+	/**
+	 * Gets the kept items, highest score first.
+	 *
+	 * @since 1.1.0
+	 * @return the kept items
+	 */
+	public List<T> toList() {
+		List<Entry<T>> entries = new ArrayList<Entry<T>>( this.heap );
+		Collections.sort( entries, Collections.reverseOrder() );
+		List<T> items = new ArrayList<T>( entries.size() );
+		for ( Entry<T> entry : entries ) {
+			items.add( entry.item );
+		}
+		return items;
+	}
+
+
+	/**
+	 * An item with its score, ordered by score and then by the order in which it was offered.
+	 */
+	private static class Entry<T> implements Comparable<Entry<T>> {
+
+		private final T item;
+		private final long score;
+		private final long sequence;
+
+		private Entry( T item, long score, long sequence ) {
+			this.item = item;
+			this.score = score;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo( Entry<T> other ) {
+			if ( this.score != other.score ) {
+				return Long.compare( this.score, other.score );
+			}
+			// An earlier item ranks higher than a later item with the same score.
+			return Long.compare( other.sequence, this.sequence );
+		}
+	}
+}